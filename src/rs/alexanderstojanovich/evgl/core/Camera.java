@@ -32,6 +32,7 @@ public class Camera { // is 3D looking camera
 
     protected Vector3f pos; // is camera position in space; it's uniform
     protected final Matrix4f viewMatrix = new Matrix4f(); // is view matrix as uniform
+    protected final Frustum frustum = new Frustum(); // view frustum (for culling)
 
     public static final Vector3f X_AXIS = new Vector3f(1.0f, 0.0f, 0.0f);
     public static final Vector3f Y_AXIS = new Vector3f(0.0f, 1.0f, 0.0f);
@@ -97,6 +98,17 @@ public class Camera { // is 3D looking camera
         viewMatrix.setLookAt(pos, pos.sub(front, temp), up);
     }
 
+    /**
+     * Extract frustum planes from current projection & view matrix. Call once
+     * per frame, before culling.
+     *
+     * @return updated frustum
+     */
+    public Frustum updateFrustum() {
+        frustum.update(PerspectiveRenderer.PROJECTION_MATRIX, viewMatrix);
+        return frustum;
+    }
+
     public void updateCameraPosition(ShaderProgram shaderProgram) {
         shaderProgram.updateUniform(pos, "cameraPos");
     }
@@ -149,6 +161,17 @@ public class Camera { // is 3D looking camera
         calcViewMatrix();
     }
 
+    /**
+     * Move camera by displacement.
+     *
+     * @param displacement displacement vector
+     */
+    public void moveBy(Vector3f displacement) {
+        Vector3f temp = new Vector3f();
+        pos = pos.add(displacement, temp);
+        calcViewMatrix();
+    }
+
     /**
      * Turn left specified by angle from the game.
      *
@@ -257,6 +280,10 @@ public class Camera { // is 3D looking camera
         return viewMatrix;
     }
 
+    public Frustum getFrustum() {
+        return frustum;
+    }
+
     public Vector3f getFront() {
         return front;
     }
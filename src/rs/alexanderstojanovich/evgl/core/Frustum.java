@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.core;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * View frustum (six planes) extracted from projection & view matrix. Planes
+ * are updated once per frame, tests against axis aligned boxes don't allocate.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class Frustum {
+
+    public static final int OUTSIDE = 0; // box is completely outside
+    public static final int INTERSECT = 1; // box straddles one or more planes
+    public static final int INSIDE = 2; // box is completely inside
+
+    private final Matrix4f projViewMatrix = new Matrix4f();
+    private final FrustumIntersection planes = new FrustumIntersection();
+
+    /**
+     * Extract the planes from projection & view matrix.
+     *
+     * @param projectionMatrix projection matrix
+     * @param viewMatrix view matrix
+     */
+    public void update(Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+        projectionMatrix.mul(viewMatrix, projViewMatrix);
+        planes.set(projViewMatrix, false);
+    }
+
+    /**
+     * Test axis aligned box against the frustum.
+     *
+     * @param minX min x-coord
+     * @param minY min y-coord
+     * @param minZ min z-coord
+     * @param maxX max x-coord
+     * @param maxY max y-coord
+     * @param maxZ max z-coord
+     * @return OUTSIDE, INTERSECT or INSIDE
+     */
+    public int intersect(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int result = planes.intersectAab(minX, minY, minZ, maxX, maxY, maxZ);
+        if (result == FrustumIntersection.INSIDE) {
+            return INSIDE;
+        } else if (result == FrustumIntersection.INTERSECT) {
+            return INTERSECT;
+        }
+        return OUTSIDE;
+    }
+
+    /**
+     * Is box (of block or so) at least partially inside the frustum.
+     *
+     * @param pos box center
+     * @param halfWidth half of the box width (x-axis)
+     * @param halfHeight half of the box height (y-axis)
+     * @param halfDepth half of the box depth (z-axis)
+     * @return is (partially) visible
+     */
+    public boolean contains(Vector3f pos, float halfWidth, float halfHeight, float halfDepth) {
+        return planes.testAab(pos.x - halfWidth, pos.y - halfHeight, pos.z - halfDepth,
+                pos.x + halfWidth, pos.y + halfHeight, pos.z + halfDepth);
+    }
+
+    public Matrix4f getProjViewMatrix() {
+        return projViewMatrix;
+    }
+
+}
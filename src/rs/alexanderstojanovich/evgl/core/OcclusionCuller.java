@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.core;
+
+import java.util.Arrays;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
+
+/**
+ * Software (CPU) occlusion culler. Exposed faces of the solid blocks nearest
+ * to the camera are rasterized into low resolution depth buffer, which is then
+ * eroded by one pixel (so partly covered pixels don't occlude), bounding
+ * boxes are then tested against it. Depth is stored as 1/w (view depth
+ * reciprocal, which is linear in screen space), zero being infinitely far.
+ * Pure Java, doesn't require GL context.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class OcclusionCuller {
+
+    public static final int WIDTH = 128;
+    public static final int HEIGHT = 64;
+    // occluders are taken from the cube of this radius (in blocks) around the camera, nearest first
+    public static final int OCCLUDER_RADIUS = 16;
+    public static final int MAX_OCCLUDERS = 4096;
+    // points closer than this (in view depth) are not projected
+    public static final float NEAR_W = 0.05f;
+    // box must be this much (relatively) behind occluder to be occluded
+    public static final float DEPTH_BIAS = 1E-3f;
+
+    private final float[] depth = new float[WIDTH * HEIGHT];
+    private final float[] scratch = new float[WIDTH * HEIGHT];
+    private final Matrix4f projViewMatrix = new Matrix4f();
+
+    // screen x, y & 1/w of the projected points (reused)
+    private final float[] sx = new float[8];
+    private final float[] sy = new float[8];
+    private final float[] sw = new float[8];
+
+    private int occluders = 0;
+    private int culledBlocks = 0;
+    private int lastCulledBlocks = 0;
+
+    /**
+     * Clear depth buffer and rasterize occluders. Call once per frame, before
+     * any test.
+     *
+     * @param projViewMatrix projection x view matrix of the camera
+     * @param camPos camera position
+     * @param solidMap map of all the solid blocks (with neighbor bits)
+     */
+    public void rasterize(Matrix4f projViewMatrix, Vector3f camPos, VoxelMap solidMap) {
+        this.projViewMatrix.set(projViewMatrix);
+        Arrays.fill(depth, 0.0f);
+        lastCulledBlocks = culledBlocks;
+        culledBlocks = 0;
+        occluders = 0;
+
+        final int ci = Math.round(camPos.x / 2.0f);
+        final int cj = Math.round(camPos.y / 2.0f);
+        final int ck = Math.round(camPos.z / 2.0f);
+        // shells (cube surfaces) of growing radius, so nearest blocks are taken first
+        SHELLS:
+        for (int r = 0; r <= OCCLUDER_RADIUS; r++) {
+            for (int i = -r; i <= r; i++) {
+                for (int j = -r; j <= r; j++) {
+                    // inside of the shell only the two caps on z are walked
+                    final boolean side = (i == -r || i == r || j == -r || j == r);
+                    final int kStep = (side || r == 0) ? 1 : 2 * r;
+                    for (int k = -r; k <= r; k += kStep) {
+                        if (rasterizeBlock(ci + i, cj + j, ck + k, camPos, solidMap)
+                                && ++occluders >= MAX_OCCLUDERS) {
+                            break SHELLS;
+                        }
+                    }
+                }
+            }
+        }
+        erode();
+    }
+
+    // rasterize exposed faces of the block in the cell, false if there's nothing to rasterize
+    private boolean rasterizeBlock(int i, int j, int k, Vector3f camPos, VoxelMap solidMap) {
+        int value = solidMap.get(VoxelMap.key(2 * i, 2 * j, 2 * k));
+        if (value == VoxelMap.NONE) {
+            return false;
+        }
+        int neighborBits = VoxelMap.neighborBits(value);
+        if (neighborBits == 63) {
+            return false; // all faces are hidden
+        }
+        for (int face = 0; face < 6; face++) {
+            if ((neighborBits & (1 << face)) == 0) {
+                rasterizeFace(2 * i, 2 * j, 2 * k, face, camPos);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Erode the depth buffer by one pixel (minimum of 3x3 neighborhood, out of
+     * the screen is empty). Triangles are sampled at the pixel centers, so
+     * pixels on the occluder silhouettes are only partly covered; after the
+     * erosion no such pixel is left occluding (nor too near on depth steps).
+     */
+    private void erode() {
+        // horizontal pass into the scratch, vertical back into the depth
+        for (int py = 0; py < HEIGHT; py++) {
+            final int row = py * WIDTH;
+            for (int px = 0; px < WIDTH; px++) {
+                float min = depth[row + px];
+                min = (px > 0) ? Math.min(min, depth[row + px - 1]) : 0.0f;
+                min = (px < WIDTH - 1) ? Math.min(min, depth[row + px + 1]) : 0.0f;
+                scratch[row + px] = min;
+            }
+        }
+        for (int py = 0; py < HEIGHT; py++) {
+            final int row = py * WIDTH;
+            for (int px = 0; px < WIDTH; px++) {
+                float min = scratch[row + px];
+                min = (py > 0) ? Math.min(min, scratch[row - WIDTH + px]) : 0.0f;
+                min = (py < HEIGHT - 1) ? Math.min(min, scratch[row + WIDTH + px]) : 0.0f;
+                depth[row + px] = min;
+            }
+        }
+    }
+
+    // project point into slot of the screen arrays, false if it's too near (or behind)
+    private boolean project(int slot, float x, float y, float z) {
+        final Matrix4f m = projViewMatrix;
+        float w = m.m03() * x + m.m13() * y + m.m23() * z + m.m33();
+        if (w <= NEAR_W) {
+            return false;
+        }
+        float cx = m.m00() * x + m.m10() * y + m.m20() * z + m.m30();
+        float cy = m.m01() * x + m.m11() * y + m.m21() * z + m.m31();
+        sx[slot] = (cx / w * 0.5f + 0.5f) * WIDTH;
+        sy[slot] = (cy / w * 0.5f + 0.5f) * HEIGHT;
+        sw[slot] = 1.0f / w;
+        return true;
+    }
+
+    /**
+     * Rasterize the face of block (centered at x, y, z, 2 units wide) if it's
+     * turned towards the camera.
+     */
+    private void rasterizeFace(int x, int y, int z, int face, Vector3f camPos) {
+        final int axis = face >> 1;
+        final float sign = ((face & 1) != 0) ? 1.0f : -1.0f;
+        final float camCoord = (axis == 0) ? camPos.x : ((axis == 1) ? camPos.y : camPos.z);
+        final float center = (axis == 0) ? x : ((axis == 1) ? y : z);
+        if ((camCoord - (center + sign)) * sign <= 0.0f) {
+            return; // back face
+        }
+        for (int c = 0; c < 4; c++) {
+            float du = ((c & 1) != 0) ? 1.0f : -1.0f;
+            float dv = ((c & 2) != 0) ? 1.0f : -1.0f;
+            boolean ok;
+            switch (axis) {
+                case 0:
+                    ok = project(c, x + sign, y + du, z + dv);
+                    break;
+                case 1:
+                    ok = project(c, x + du, y + sign, z + dv);
+                    break;
+                default:
+                    ok = project(c, x + du, y + dv, z + sign);
+                    break;
+            }
+            if (!ok) {
+                return; // not clipped, skipping occluder is safe
+            }
+        }
+        // corners 0, 1, 3, 2 go around the face
+        rasterizeTriangle(0, 1, 3);
+        rasterizeTriangle(0, 3, 2);
+    }
+
+    private void rasterizeTriangle(int a, int b, int c) {
+        float area = (sx[b] - sx[a]) * (sy[c] - sy[a]) - (sy[b] - sy[a]) * (sx[c] - sx[a]);
+        if (area == 0.0f) {
+            return;
+        }
+        int minX = Math.max(0, (int) Math.floor(Math.min(sx[a], Math.min(sx[b], sx[c]))));
+        int maxX = Math.min(WIDTH - 1, (int) Math.ceil(Math.max(sx[a], Math.max(sx[b], sx[c]))));
+        int minY = Math.max(0, (int) Math.floor(Math.min(sy[a], Math.min(sy[b], sy[c]))));
+        int maxY = Math.min(HEIGHT - 1, (int) Math.ceil(Math.max(sy[a], Math.max(sy[b], sy[c]))));
+        final float invArea = 1.0f / area;
+        for (int py = minY; py <= maxY; py++) {
+            float cy = py + 0.5f;
+            for (int px = minX; px <= maxX; px++) {
+                float cx = px + 0.5f;
+                // barycentric weights (same sign as area when inside)
+                float wa = ((sx[c] - sx[b]) * (cy - sy[b]) - (sy[c] - sy[b]) * (cx - sx[b])) * invArea;
+                float wb = ((sx[a] - sx[c]) * (cy - sy[c]) - (sy[a] - sy[c]) * (cx - sx[c])) * invArea;
+                float wc = 1.0f - wa - wb;
+                if (wa < 0.0f || wb < 0.0f || wc < 0.0f) {
+                    continue;
+                }
+                float invW = wa * sw[a] + wb * sw[b] + wc * sw[c];
+                int index = py * WIDTH + px;
+                if (invW > depth[index]) {
+                    depth[index] = invW;
+                }
+            }
+        }
+    }
+
+    /**
+     * Is axis aligned box completely hidden behind rasterized occluders.
+     * Boxes reaching the near plane or out of the screen are not occluded.
+     *
+     * @param minX min x-coord
+     * @param minY min y-coord
+     * @param minZ min z-coord
+     * @param maxX max x-coord
+     * @param maxY max y-coord
+     * @param maxZ max z-coord
+     * @return is occluded
+     */
+    public boolean isOccluded(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        for (int c = 0; c < 8; c++) {
+            if (!project(c, ((c & 1) != 0) ? maxX : minX, ((c & 2) != 0) ? maxY : minY, ((c & 4) != 0) ? maxZ : minZ)) {
+                return false;
+            }
+        }
+        float rectMinX = sx[0], rectMaxX = sx[0], rectMinY = sy[0], rectMaxY = sy[0], nearest = sw[0];
+        for (int c = 1; c < 8; c++) {
+            rectMinX = Math.min(rectMinX, sx[c]);
+            rectMaxX = Math.max(rectMaxX, sx[c]);
+            rectMinY = Math.min(rectMinY, sy[c]);
+            rectMaxY = Math.max(rectMaxY, sy[c]);
+            nearest = Math.max(nearest, sw[c]);
+        }
+        if (rectMinX < 0.0f || rectMinY < 0.0f || rectMaxX > WIDTH || rectMaxY > HEIGHT) {
+            return false; // partially off the screen, can't tell
+        }
+        final float threshold = nearest * (1.0f + DEPTH_BIAS);
+        int x0 = (int) Math.floor(rectMinX);
+        int x1 = Math.min(WIDTH - 1, (int) Math.ceil(rectMaxX));
+        int y0 = (int) Math.floor(rectMinY);
+        int y1 = Math.min(HEIGHT - 1, (int) Math.ceil(rectMaxY));
+        for (int py = y0; py <= y1; py++) {
+            for (int px = x0; px <= x1; px++) {
+                if (depth[py * WIDTH + px] <= threshold) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // count blocks which were culled by this culler (for stats)
+    public void countCulled(int blocks) {
+        culledBlocks += blocks;
+    }
+
+    // blocks culled in the last (complete) frame
+    public int getCulledBlocks() {
+        return lastCulledBlocks;
+    }
+
+    // occluders rasterized this frame
+    public int getOccluders() {
+        return occluders;
+    }
+
+    public float[] getDepth() {
+        return depth;
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.core;
+
+import org.joml.Vector3f;
+import rs.alexanderstojanovich.evgl.models.Block;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
+
+/**
+ * Ray cast through the block grid (3D DDA). Ray marches cell by cell and
+ * looks up each one in the voxel map, so cost depends only on the distance
+ * (not on the block count) and chunk borders don't matter. Blocks are 2 units
+ * wide, centered at even coordinates. Cell of the ray origin is skipped (block
+ * the camera is in can't be picked). Result is kept in this object.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class VoxelRay {
+
+    // ray state (per axis)
+    private final float[] o = new float[3];
+    private final float[] d = new float[3];
+    private final int[] cell = new int[3];
+    private final int[] step = new int[3];
+    private final float[] tMax = new float[3];
+    private final float[] tDelta = new float[3];
+
+    // result of the last cast
+    private boolean hit = false;
+    private int face = -1;
+    private float distance = 0.0f;
+    private final int[] hitCell = new int[3];
+    private final int[] freeCell = new int[3];
+
+    // cell containing the coordinate
+    private static int cellOf(float x) {
+        return (int) Math.floor((x + 1.0f) * 0.5f);
+    }
+
+    /**
+     * Cast the ray against the blocks of the voxel map.
+     *
+     * @param map voxel map (solid or fluid)
+     * @param origin ray origin
+     * @param dir ray direction (doesn't need to be normalized)
+     * @param maxDistance max distance along the ray
+     * @return is there hit (details are in getters)
+     */
+    public boolean cast(VoxelMap map, Vector3f origin, Vector3f dir, float maxDistance) {
+        hit = false;
+        face = -1;
+        distance = 0.0f;
+
+        final float len = dir.length();
+        if (len == 0.0f || !Float.isFinite(len)) {
+            return false;
+        }
+
+        o[0] = origin.x;
+        o[1] = origin.y;
+        o[2] = origin.z;
+        d[0] = dir.x / len;
+        d[1] = dir.y / len;
+        d[2] = dir.z / len;
+        for (int a = 0; a < 3; a++) {
+            cell[a] = cellOf(o[a]);
+            freeCell[a] = cell[a];
+            if (d[a] > 0.0f) {
+                step[a] = 1;
+                tMax[a] = (2.0f * cell[a] + 1.0f - o[a]) / d[a];
+                tDelta[a] = 2.0f / d[a];
+            } else if (d[a] < 0.0f) {
+                step[a] = -1;
+                tMax[a] = (2.0f * cell[a] - 1.0f - o[a]) / d[a];
+                tDelta[a] = -2.0f / d[a];
+            } else {
+                step[a] = 0;
+                tMax[a] = Float.POSITIVE_INFINITY;
+                tDelta[a] = Float.POSITIVE_INFINITY;
+            }
+        }
+
+        while (true) {
+            int axis = (tMax[0] < tMax[1])
+                    ? ((tMax[0] < tMax[2]) ? 0 : 2)
+                    : ((tMax[1] < tMax[2]) ? 1 : 2);
+            float t = tMax[axis];
+            if (t > maxDistance) {
+                return false;
+            }
+            freeCell[0] = cell[0];
+            freeCell[1] = cell[1];
+            freeCell[2] = cell[2];
+            cell[axis] += step[axis];
+            tMax[axis] += tDelta[axis];
+            if (map.containsKey(VoxelMap.key(2 * cell[0], 2 * cell[1], 2 * cell[2]))) {
+                hit = true;
+                distance = t;
+                hitCell[0] = cell[0];
+                hitCell[1] = cell[1];
+                hitCell[2] = cell[2];
+                // ray enters through the face opposite to the step
+                face = 2 * axis + (step[axis] > 0 ? 0 : 1);
+                return true;
+            }
+        }
+    }
+
+    public boolean isHit() {
+        return hit;
+    }
+
+    // face of the hit block ray entered through [LEFT, RIGHT, BOTTOM, TOP, BACK, FRONT]
+    public int getFace() {
+        return face;
+    }
+
+    // distance along the ray to the hit face
+    public float getDistance() {
+        return distance;
+    }
+
+    // position of the hit block
+    public Vector3f getHitPos(Vector3f dest) {
+        return dest.set(2 * hitCell[0], 2 * hitCell[1], 2 * hitCell[2]);
+    }
+
+    // position of the free cell in front of the hit face (where block could be placed)
+    public Vector3f getAdjacentPos(Vector3f dest) {
+        return dest.set(2 * freeCell[0], 2 * freeCell[1], 2 * freeCell[2]);
+    }
+
+    /**
+     * Position next to the hit block on the given face.
+     *
+     * @param faceNum face number [LEFT, RIGHT, BOTTOM, TOP, BACK, FRONT]
+     * @param dest destination vector
+     * @return dest
+     */
+    public Vector3f getAdjacentPos(int faceNum, Vector3f dest) {
+        getHitPos(dest);
+        switch (faceNum) {
+            case Block.LEFT:
+                dest.x -= 2.0f;
+                break;
+            case Block.RIGHT:
+                dest.x += 2.0f;
+                break;
+            case Block.BOTTOM:
+                dest.y -= 2.0f;
+                break;
+            case Block.TOP:
+                dest.y += 2.0f;
+                break;
+            case Block.BACK:
+                dest.z -= 2.0f;
+                break;
+            case Block.FRONT:
+                dest.z += 2.0f;
+                break;
+            default:
+                break;
+        }
+        return dest;
+    }
+
+}
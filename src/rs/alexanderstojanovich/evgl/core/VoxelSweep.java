@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.core;
+
+import org.joml.Vector3f;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
+
+/**
+ * Swept axis aligned box against the block grid (3D DDA). Leading face of the
+ * moving box walks from one grid boundary to the next, only the cells that
+ * face enters are tested. Blocks are 2 units wide, centered at even
+ * coordinates. Result (hit, time of impact & contact normal) is kept in this
+ * object, nothing is allocated while sweeping. One instance per thread.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class VoxelSweep {
+
+    // tolerance for boundaries (touching box is not inside next cell)
+    public static final float EPSILON = 1E-4f;
+    // distance kept from the contact face after the hit
+    public static final float SKIN = 1E-3f;
+    // max sweeps in slide (one per axis is enough)
+    public static final int MAX_SLIDES = 3;
+
+    // sweep state (per axis)
+    private final float[] pos = new float[3];
+    private final float[] half = new float[3];
+    private final float[] delta = new float[3];
+    private final int[] step = new int[3];
+    private final int[] lead = new int[3];
+    private final float[] tNext = new float[3];
+    private final float[] tDelta = new float[3];
+    // cell range of the box at time t (used for the slab test)
+    private final int[] lo = new int[3];
+    private final int[] hi = new int[3];
+
+    // result of the last sweep
+    private boolean hit = false;
+    private float toi = 1.0f;
+    private int normalAxis = -1;
+    private int normalSign = 0;
+    private final int[] hitCell = new int[3];
+
+    // cell containing the coordinate (min edge, touching boundary is in upper cell)
+    private static int cellOfMin(float x) {
+        return (int) Math.floor((x + 1.0f) * 0.5f + EPSILON);
+    }
+
+    // cell containing the coordinate (max edge, touching boundary is in lower cell)
+    private static int cellOfMax(float x) {
+        return (int) Math.floor((x + 1.0f) * 0.5f - EPSILON);
+    }
+
+    // cell range [lo, hi] covered by the box moved for t
+    private void boxCells(float t) {
+        for (int a = 0; a < 3; a++) {
+            float c = pos[a] + delta[a] * t;
+            lo[a] = cellOfMin(c - half[a]);
+            hi[a] = cellOfMax(c + half[a]);
+        }
+    }
+
+    // is any cell in [lo, hi] solid (first one found is stored in hitCell)
+    private boolean anySolid(VoxelMap solidMap) {
+        for (int i = lo[0]; i <= hi[0]; i++) {
+            for (int j = lo[1]; j <= hi[1]; j++) {
+                for (int k = lo[2]; k <= hi[2]; k++) {
+                    if (solidMap.containsKey(VoxelMap.key(2 * i, 2 * j, 2 * k))) {
+                        hitCell[0] = i;
+                        hitCell[1] = j;
+                        hitCell[2] = k;
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sweep the box by the displacement against solid blocks. If box is
+     * already inside of block, only the end position is tested (so it can
+     * move out).
+     *
+     * @param solidMap map of the solid blocks
+     * @param px box center x
+     * @param py box center y
+     * @param pz box center z
+     * @param hx half width
+     * @param hy half height
+     * @param hz half depth
+     * @param dx displacement x
+     * @param dy displacement y
+     * @param dz displacement z
+     * @return is there hit (details are in getters)
+     */
+    public boolean sweep(VoxelMap solidMap, float px, float py, float pz, float hx, float hy, float hz, float dx, float dy, float dz) {
+        pos[0] = px;
+        pos[1] = py;
+        pos[2] = pz;
+        half[0] = hx;
+        half[1] = hy;
+        half[2] = hz;
+        delta[0] = dx;
+        delta[1] = dy;
+        delta[2] = dz;
+        hit = false;
+        toi = 1.0f;
+        normalAxis = -1;
+        normalSign = 0;
+
+        boxCells(0.0f);
+        if (anySolid(solidMap)) {
+            // embedded at start, allow only moves which end outside
+            boxCells(1.0f);
+            if (anySolid(solidMap)) {
+                hit = true;
+                toi = 0.0f;
+            }
+            return hit;
+        }
+
+        for (int a = 0; a < 3; a++) {
+            if (delta[a] > 0.0f) {
+                float edge = pos[a] + half[a];
+                step[a] = 1;
+                lead[a] = cellOfMax(edge);
+                tNext[a] = (2.0f * lead[a] + 1.0f - edge) / delta[a];
+                tDelta[a] = 2.0f / delta[a];
+            } else if (delta[a] < 0.0f) {
+                float edge = pos[a] - half[a];
+                step[a] = -1;
+                lead[a] = cellOfMin(edge);
+                tNext[a] = (2.0f * lead[a] - 1.0f - edge) / delta[a];
+                tDelta[a] = -2.0f / delta[a];
+            } else {
+                step[a] = 0;
+                tNext[a] = Float.POSITIVE_INFINITY;
+            }
+        }
+
+        while (true) {
+            int axis = (tNext[0] < tNext[1])
+                    ? ((tNext[0] < tNext[2]) ? 0 : 2)
+                    : ((tNext[1] < tNext[2]) ? 1 : 2);
+            float t = tNext[axis];
+            if (t > 1.0f) {
+                return false;
+            }
+            lead[axis] += step[axis];
+            tNext[axis] += tDelta[axis];
+            // slab of cells which leading face enters
+            boxCells(t);
+            lo[axis] = hi[axis] = lead[axis];
+            if (anySolid(solidMap)) {
+                hit = true;
+                toi = Math.max(t, 0.0f);
+                normalAxis = axis;
+                normalSign = -step[axis];
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Move the box by the displacement, sliding along the hit faces. On hit
+     * box is moved to the contact, motion along the contact normal is removed
+     * and the rest is swept again.
+     *
+     * @param solidMap map of the solid blocks
+     * @param boxPos box center
+     * @param hx half width
+     * @param hy half height
+     * @param hz half depth
+     * @param displacement wanted displacement, replaced by the possible one
+     * @return was motion reduced by collision
+     */
+    public boolean slide(VoxelMap solidMap, Vector3f boxPos, float hx, float hy, float hz, Vector3f displacement) {
+        float px = boxPos.x, py = boxPos.y, pz = boxPos.z;
+        float dx = displacement.x, dy = displacement.y, dz = displacement.z;
+        boolean collided = false;
+        if (!Float.isFinite(dx) || !Float.isFinite(dy) || !Float.isFinite(dz)) {
+            displacement.zero(); // broken input is no motion
+            return false;
+        }
+        for (int i = 0; i < MAX_SLIDES; i++) {
+            if (dx == 0.0f && dy == 0.0f && dz == 0.0f) {
+                break;
+            }
+            if (!sweep(solidMap, px, py, pz, hx, hy, hz, dx, dy, dz)) {
+                px += dx;
+                py += dy;
+                pz += dz;
+                break;
+            }
+            collided = true;
+            if (normalAxis == -1) {
+                break; // stuck (embedded)
+            }
+            px += dx * toi;
+            py += dy * toi;
+            pz += dz * toi;
+            float rest = 1.0f - toi;
+            dx *= rest;
+            dy *= rest;
+            dz *= rest;
+            switch (normalAxis) {
+                case 0:
+                    px += normalSign * SKIN;
+                    dx = 0.0f;
+                    break;
+                case 1:
+                    py += normalSign * SKIN;
+                    dy = 0.0f;
+                    break;
+                default:
+                    pz += normalSign * SKIN;
+                    dz = 0.0f;
+                    break;
+            }
+        }
+        displacement.set(px - boxPos.x, py - boxPos.y, pz - boxPos.z);
+        return collided;
+    }
+
+    public boolean isHit() {
+        return hit;
+    }
+
+    // time of impact, fraction of the displacement [0, 1]
+    public float getToi() {
+        return toi;
+    }
+
+    // axis of the contact normal (0 - x, 1 - y, 2 - z), -1 if there's no normal
+    public int getNormalAxis() {
+        return normalAxis;
+    }
+
+    // sign of the contact normal (points out of the hit block)
+    public int getNormalSign() {
+        return normalSign;
+    }
+
+    // contact normal component (-1, 0 or 1)
+    public int getNormal(int axis) {
+        return (axis == normalAxis) ? normalSign : 0;
+    }
+
+    // position of the hit block
+    public Vector3f getHitBlockPos(Vector3f dest) {
+        return dest.set(2 * hitCell[0], 2 * hitCell[1], 2 * hitCell[2]);
+    }
+
+}
@@ -177,4 +177,20 @@ public interface Critter { // interface for Observer, Player and NPC
      */
     public Vector3f getPredictor();
 
+    /**
+     * Gets position of this critter (center of its collision box).
+     *
+     * @return critter position
+     */
+    public Vector3f getPos();
+
+    /**
+     * Move this critter by displacement (what's left of the wanted movement
+     * after collision response). Also to move critter has to have given
+     * control (set to true).
+     *
+     * @param displacement displacement vector
+     */
+    public void moveBy(Vector3f displacement);
+
 }
@@ -91,6 +91,14 @@ public class ModelCritter implements Critter {
         }
     }
 
+    @Override
+    public void moveBy(Vector3f displacement) {
+        if (givenControl) {
+            Vector3f temp = new Vector3f();
+            model.pos = model.pos.add(displacement, temp);
+        }
+    }
+
     @Override
     public void movePredictorForward(float amount) {
         Vector3f temp1 = new Vector3f();
@@ -206,6 +214,11 @@ public class ModelCritter implements Critter {
         return predictor;
     }
 
+    @Override
+    public Vector3f getPos() {
+        return model.pos;
+    }
+
     public Vector3f getFront() {
         return front;
     }
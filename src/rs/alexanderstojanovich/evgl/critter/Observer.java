@@ -63,6 +63,13 @@ public class Observer implements Critter {
         }
     }
 
+    @Override
+    public void moveBy(Vector3f displacement) {
+        if (givenControl) {
+            camera.moveBy(displacement);
+        }
+    }
+
     //--------------------------------------------------------------------------
     @Override
     public void movePredictorForward(float amount) {
@@ -154,6 +161,11 @@ public class Observer implements Critter {
         return predictor;
     }
 
+    @Override
+    public Vector3f getPos() {
+        return camera.getPos();
+    }
+
     public Camera getCamera() {
         return camera;
     }
@@ -157,6 +157,15 @@ public class Player extends ModelCritter {
         }
     }
 
+    @Override
+    public void moveBy(Vector3f displacement) {
+        if (givenControl) {
+            super.moveBy(displacement);
+            camera.moveBy(displacement);
+            linkDirectionVectors();
+        }
+    }
+
     @Override
     public void setPitch(float pitch) {
         super.setPitch(pitch);
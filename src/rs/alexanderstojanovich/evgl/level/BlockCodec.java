@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.level;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.joml.Vector3f;
+import org.magicwerk.brownies.collections.GapList;
+import rs.alexanderstojanovich.evgl.models.Block;
+import rs.alexanderstojanovich.evgl.texture.Texture;
+import rs.alexanderstojanovich.evgl.util.DSLogger;
+import rs.alexanderstojanovich.evgl.util.Vector3fColors;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
+
+/**
+ * Compact encoding of block lists (used by region files and chunk cache).
+ * Layout is:
+ * <pre>
+ * count (varint), color dictionary size (varint), colors (12 B each),
+ * position keys sorted ascending as varint deltas,
+ * texture ids (1 B each, index in the world texture atlas),
+ * colors as tokens (varint): even = run of white blocks (length = token / 2),
+ * odd = one block with dictionary color (index = token / 2)
+ * </pre> Optionally whole payload is framed with Deflate. Decoding gives
+ * plain 29 B block records.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class BlockCodec {
+
+    public static final int FLAG_COMPACT = 0x01;
+    public static final int FLAG_DEFLATE = 0x02;
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0L) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0L;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void writeFloat(ByteArrayOutputStream out, float value) {
+        int bits = Float.floatToIntBits(value);
+        out.write(bits);
+        out.write(bits >> 8);
+        out.write(bits >> 16);
+        out.write(bits >> 24);
+    }
+
+    /**
+     * Encode the blocks. Blocks are written in position key order.
+     *
+     * @param blocks blocks to encode
+     * @param deflate use deflate framing
+     * @return encoded bytes
+     */
+    public static byte[] encode(List<Block> blocks, boolean deflate) {
+        final int num = blocks.size();
+        // sort block indices by position key
+        long[] keys = new long[num];
+        Integer[] order = new Integer[num];
+        for (int i = 0; i < num; i++) {
+            keys[i] = VoxelMap.key(blocks.get(i).getPos());
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        // color dictionary (white is not in the dictionary)
+        Map<Vector3f, Integer> colorIndex = new HashMap<>();
+        List<Vector3f> colors = new GapList<>();
+        for (Block block : blocks) {
+            Vector3f color = block.getPrimaryColor();
+            if (!color.equals(Vector3fColors.WHITE) && !colorIndex.containsKey(color)) {
+                colorIndex.put(color, colors.size());
+                colors.add(color);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + 4 * num);
+        writeVarLong(out, num);
+        writeVarLong(out, colors.size());
+        for (Vector3f color : colors) {
+            writeFloat(out, color.x);
+            writeFloat(out, color.y);
+            writeFloat(out, color.z);
+        }
+
+        long prevKey = 0L;
+        for (int i = 0; i < num; i++) {
+            long key = keys[order[i]];
+            writeVarLong(out, key - prevKey);
+            prevKey = key;
+        }
+
+        for (int i = 0; i < num; i++) {
+            out.write(blocks.get(order[i]).getTexId());
+        }
+
+        int whiteRun = 0;
+        for (int i = 0; i < num; i++) {
+            Vector3f color = blocks.get(order[i]).getPrimaryColor();
+            Integer index = colorIndex.get(color);
+            if (index == null) {
+                whiteRun++;
+            } else {
+                if (whiteRun > 0) {
+                    writeVarLong(out, (long) whiteRun << 1);
+                    whiteRun = 0;
+                }
+                writeVarLong(out, ((long) index << 1) | 1L);
+            }
+        }
+        if (whiteRun > 0) {
+            writeVarLong(out, (long) whiteRun << 1);
+        }
+
+        byte[] result = out.toByteArray();
+        return deflate ? deflate(result) : result;
+    }
+
+    /**
+     * Decode blocks to plain 29 B block records.
+     *
+     * @param data source bytes
+     * @param offset offset in the source
+     * @param length length of the encoded data
+     * @param deflated is data framed with deflate
+     * @return block records
+     */
+    public static byte[] decodeToRecords(byte[] data, int offset, int length, boolean deflated) {
+        if (deflated) {
+            data = inflate(data, offset, length);
+            offset = 0;
+            length = data.length;
+        }
+        ByteBuffer in = ByteBuffer.wrap(data, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+        final int num = (int) readVarLong(in);
+        final int dictSize = (int) readVarLong(in);
+        float[] dict = new float[3 * dictSize];
+        for (int i = 0; i < dict.length; i++) {
+            dict[i] = in.getFloat();
+        }
+
+        ByteBuffer records = ByteBuffer.allocate(num * LevelDecoder.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long key = 0L;
+        for (int i = 0; i < num; i++) {
+            key += readVarLong(in);
+            int recOff = i * LevelDecoder.RECORD_SIZE;
+            records.putFloat(recOff + 5, VoxelMap.unpackX(key));
+            records.putFloat(recOff + 9, VoxelMap.unpackY(key));
+            records.putFloat(recOff + 13, VoxelMap.unpackZ(key));
+        }
+
+        for (int i = 0; i < num; i++) {
+            byte[] texName = Texture.TEX_WORLD[in.get() & 0xFF].getBytes(StandardCharsets.ISO_8859_1);
+            int recOff = i * LevelDecoder.RECORD_SIZE;
+            for (int k = 0; k < 5; k++) {
+                records.put(recOff + k, texName[k]);
+            }
+        }
+
+        int i = 0;
+        while (i < num) {
+            long token = readVarLong(in);
+            if ((token & 1L) == 0L) {
+                for (long run = token >>> 1; run > 0 && i < num; run--, i++) {
+                    int recOff = i * LevelDecoder.RECORD_SIZE;
+                    records.putFloat(recOff + 17, 1.0f);
+                    records.putFloat(recOff + 21, 1.0f);
+                    records.putFloat(recOff + 25, 1.0f);
+                }
+            } else {
+                int index = (int) (token >>> 1);
+                int recOff = i * LevelDecoder.RECORD_SIZE;
+                records.putFloat(recOff + 17, dict[3 * index]);
+                records.putFloat(recOff + 21, dict[3 * index + 1]);
+                records.putFloat(recOff + 25, dict[3 * index + 2]);
+                i++;
+            }
+        }
+
+        return records.array();
+    }
+
+    //--------------------------------------------------------------------------
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+        // uncompressed length first, so inflate knows the size
+        writeVarLong(out, data.length);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int len = deflater.deflate(chunk);
+            out.write(chunk, 0, len);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data, int offset, int length) {
+        ByteBuffer in = ByteBuffer.wrap(data, offset, length);
+        int size = (int) readVarLong(in);
+        byte[] result = new byte[size];
+        Inflater inflater = new Inflater();
+        inflater.setInput(data, in.position(), offset + length - in.position());
+        try {
+            int pos = 0;
+            while (pos < size && !inflater.finished()) {
+                int len = inflater.inflate(result, pos, size - pos);
+                if (len == 0 && inflater.needsInput()) {
+                    break;
+                }
+                pos += len;
+            }
+        } catch (DataFormatException ex) {
+            DSLogger.reportError(ex.getMessage(), ex);
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+}
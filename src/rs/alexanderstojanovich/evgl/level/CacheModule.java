@@ -16,31 +16,79 @@
  */
 package rs.alexanderstojanovich.evgl.level;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import org.joml.Vector3f;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.magicwerk.brownies.collections.GapList;
+import rs.alexanderstojanovich.evgl.main.Configuration;
 import rs.alexanderstojanovich.evgl.main.Game;
 import rs.alexanderstojanovich.evgl.models.Block;
 import rs.alexanderstojanovich.evgl.models.Chunk;
 import rs.alexanderstojanovich.evgl.models.Chunks;
 import rs.alexanderstojanovich.evgl.models.Tuple;
 import rs.alexanderstojanovich.evgl.util.DSLogger;
-import rs.alexanderstojanovich.evgl.util.Vector3fUtils;
 
 /**
+ * Chunk cache (invisible chunks are stored to the memory tier and then to the
+ * disk). Disk tier is single append only file with in-memory index. Writing
+ * and reading is done on background I/O thread, only putting decoded blocks
+ * into the chunks is done by the caller (under the lock).
  *
  * @author Alexander Stojanovich <coas91@rocketmail.com>
  */
 public class CacheModule {
 
-    private static final byte[] MEMORY = new byte[0x1000000]; // 16 MB
+    private static final byte[] MEMORY = new byte[0x1000000]; // 16 MB (used only from I/O thread)
     private static int pos = 0;
+    // chunk id (i32), block count (i32), flags (u8), then compact payload
+    public static final int HEADER_SIZE = 9;
+
+    // chunk files are written and read on single background thread (in submit order)
+    private static final ExecutorService IO_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Cache I/O");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // chunks being written (key -> block count), these count as cached
+    private static final Map<Long, Integer> WRITING = new ConcurrentHashMap<>();
+    // chunks being read (key -> block count), these count as cached
+    private static final Map<Long, Integer> LOADING = new ConcurrentHashMap<>();
+    // decoded chunks waiting to be swapped in (key -> blocks sorted by morton code)
+    private static final Map<Long, Block[]> READY = new ConcurrentHashMap<>();
+
+    // memory tier - encoded chunks (off-heap) in LRU order, victims spill to disk
+    public static final long MEMORY_TIER_BUDGET = (long) Configuration.getInstance().getCacheMemory() << 20;
+    private static final LinkedHashMap<Long, ByteBuffer> MEMORY_TIER = new LinkedHashMap<>(16, 0.75f, true);
+    private static long memoryTierBytes = 0L;
+
+    // disk tier - single append only store file with in-memory index
+    public static final String STORE_NAME = "chunks.cache";
+    // directory of the store file (game cache directory)
+    private static File cacheDir = new File(Game.CACHE);
+    public static final long COMPACT_THRESHOLD = 0x100000L; // 1 MB of dead entries
+    // key -> [offset, length, block count]
+    private static final Map<Long, long[]> INDEX = new ConcurrentHashMap<>();
+    private static RandomAccessFile store = null;
+    private static long storeLength = 0L;
+    private static long deadBytes = 0L;
+    private static volatile int hits = 0;
+    private static volatile int misses = 0;
     private final LevelContainer levelContainer;
 
     public CacheModule(LevelContainer levelContainer) {
@@ -54,9 +102,7 @@ public class CacheModule {
                     ? this.levelContainer.solidChunks.getChunk(id)
                     : this.levelContainer.fluidChunks.getChunk(id);
             if (chunk != null) {
-                for (Tuple tuple : chunk.getTupleList()) {
-                    size += tuple.getBlockList().size();
-                }
+                size = chunk.size();
             }
         }
         return size;
@@ -65,115 +111,175 @@ public class CacheModule {
     public static int loadedSize(Chunk chunk) {
         int size = 0;
         if (!CacheModule.isCached(chunk.getId(), chunk.isSolid())) {
-            for (Tuple tuple : chunk.getTupleList()) {
-                size += tuple.getBlockList().size();
-            }
+            size = chunk.size();
         }
         return size;
     }
 
     public static int cachedSize(int id, boolean solid) { // for debugging purposes
         int size = 0;
-        if (CacheModule.isCached(id, solid)) {
-            try {
-                FileInputStream fos = new FileInputStream(getFileName(id, solid));
-                byte[] bytes = new byte[3];
-                fos.read(bytes, 0, 3);
-                size = ((bytes[2] & 0xFF) << 8) | (bytes[1] & 0xFF);
-            } catch (FileNotFoundException ex) {
-                DSLogger.reportError(ex.getMessage(), ex);
-            } catch (IOException ex) {
-                DSLogger.reportError(ex.getMessage(), ex);
+        Long key = cacheKey(id, solid);
+        Integer pendingSize = LOADING.containsKey(key) ? LOADING.get(key) : WRITING.get(key);
+        Block[] ready = READY.get(key);
+        ByteBuffer entry;
+        synchronized (MEMORY_TIER) {
+            entry = MEMORY_TIER.get(key);
+        }
+        if (pendingSize != null) {
+            size = pendingSize;
+        } else if (ready != null) {
+            size = ready.length;
+        } else if (entry != null) {
+            size = (entry.get(7) & 0xFF) << 24 | (entry.get(6) & 0xFF) << 16
+                    | (entry.get(5) & 0xFF) << 8 | (entry.get(4) & 0xFF);
+        } else {
+            long[] indexEntry = INDEX.get(key);
+            if (indexEntry != null) {
+                size = (int) indexEntry[2];
             }
         }
         return size;
     }
 
-    // total loaded + cached size
-    public int totalSize(boolean solid) {
-        int result = 0;
-        for (int id = 0; id < Chunk.CHUNK_NUM; id++) {
-            Chunk chunk;
-            if (CacheModule.isCached(id, solid)) {
-                result += CacheModule.cachedSize(id, solid);
-            } else {
-                chunk = (solid)
-                        ? levelContainer.solidChunks.getChunk(id)
-                        : levelContainer.fluidChunks.getChunk(id);
-                if (chunk != null) {
-                    result += loadedSize(id, solid);
-                }
+    /**
+     * Ids of the chunks which are cached (in any of the tiers or in transit).
+     *
+     * @param solid solid or fluid chunks
+     * @return cached chunk ids
+     */
+    public static List<Integer> cachedIds(boolean solid) {
+        Set<Long> keys = new HashSet<>();
+        keys.addAll(WRITING.keySet());
+        keys.addAll(LOADING.keySet());
+        keys.addAll(READY.keySet());
+        synchronized (MEMORY_TIER) {
+            keys.addAll(MEMORY_TIER.keySet());
+        }
+        keys.addAll(INDEX.keySet());
+        List<Integer> result = new GapList<>();
+        for (long key : keys) {
+            if (((key & 1L) != 0L) == solid) {
+                result.add((int) (key >> 1));
             }
         }
         return result;
     }
 
+    // total loaded + cached size
+    public int totalSize(boolean solid) {
+        int result = totalSize(solid ? levelContainer.solidChunks : levelContainer.fluidChunks, solid);
+        result += levelContainer.pendingSize(solid);
+        return result;
+    }
+
     // total loaded + cached size
     public static int totalSize(Chunks chunks, boolean solid) {
         int result = 0;
-        for (int id = 0; id < Chunk.CHUNK_NUM; id++) {
-            Chunk chunk;
-            if (CacheModule.isCached(id, solid)) {
-                result += CacheModule.cachedSize(id, solid);
-            } else {
-                chunk = chunks.getChunk(id);
-                if (chunk != null) {
-                    result += loadedSize(chunk);
-                }
-            }
+        for (Chunk chunk : chunks.getChunkList()) {
+            result += loadedSize(chunk);
+        }
+        for (int id : cachedIds(solid)) {
+            result += CacheModule.cachedSize(id, solid);
         }
         return result;
     }
 
     //--------------------------------------------------------------------------
-    private void saveMemToDisk(String filename) {
-        BufferedOutputStream bos = null;
-        File file = new File(filename);
-        if (file.exists()) {
-            file.delete();
+    // store is used only from I/O thread
+    private static RandomAccessFile openStore() throws IOException {
+        if (store == null) {
+            if (!cacheDir.exists()) {
+                cacheDir.mkdir();
+            }
+            store = new RandomAccessFile(getStoreFile(), "rw");
+            store.setLength(0L);
+            storeLength = 0L;
+            deadBytes = 0L;
         }
+        return store;
+    }
+
+    // append memory content to the store file (it's indexed under the key)
+    private static void saveMemToDisk(Long key) {
         try {
-            bos = new BufferedOutputStream(new FileOutputStream(file));
-            bos.write(MEMORY, 0, pos);
-        } catch (FileNotFoundException ex) {
-            DSLogger.reportFatalError(ex.getMessage(), ex);
+            RandomAccessFile raf = openStore();
+            raf.seek(storeLength);
+            raf.write(MEMORY, 0, pos);
+            INDEX.put(key, new long[]{storeLength, pos, readInt(MEMORY, 4)});
+            storeLength += pos;
         } catch (IOException ex) {
             DSLogger.reportFatalError(ex.getMessage(), ex);
         }
-        if (bos != null) {
+    }
+
+    // read indexed entry from the store file into memory (entry becomes dead), returns entry length
+    private static int loadDiskToMem(Long key) {
+        int length = 0;
+        long[] entry = INDEX.get(key);
+        if (entry != null) {
+            length = (int) entry[1];
             try {
-                bos.close();
+                RandomAccessFile raf = openStore();
+                raf.seek(entry[0]);
+                raf.readFully(MEMORY, 0, length);
             } catch (IOException ex) {
                 DSLogger.reportFatalError(ex.getMessage(), ex);
             }
+            INDEX.remove(key);
+            deadBytes += length;
         }
+        return length;
     }
 
-    private void loadDiskToMem(String filename) {
-        File file = new File(filename);
-        if (file.exists()) {
-            BufferedInputStream bis = null;
-            try {
-                bis = new BufferedInputStream(new FileInputStream(file));
-                bis.read(MEMORY);
-            } catch (FileNotFoundException ex) {
-                DSLogger.reportFatalError(ex.getMessage(), ex);
-            } catch (IOException ex) {
-                DSLogger.reportFatalError(ex.getMessage(), ex);
-            }
-            if (bis != null) {
-                try {
-                    bis.close();
-                } catch (IOException ex) {
-                    DSLogger.reportFatalError(ex.getMessage(), ex);
+    // rewrite store file with live entries only (if it's mostly dead)
+    // uses memory buffer, so call it only when it's content is no longer needed
+    private static void compactStore() {
+        if (store == null || deadBytes < COMPACT_THRESHOLD || deadBytes < storeLength / 2L) {
+            return;
+        }
+        File storeFile = getStoreFile();
+        File tmpFile = new File(storeFile.getPath() + ".tmp");
+        long offset = 0L;
+        try {
+            try (RandomAccessFile tmp = new RandomAccessFile(tmpFile, "rw")) {
+                tmp.setLength(0L);
+                for (Map.Entry<Long, long[]> indexEntry : INDEX.entrySet()) {
+                    long[] entry = indexEntry.getValue();
+                    int length = (int) entry[1];
+                    store.seek(entry[0]);
+                    store.readFully(MEMORY, 0, length);
+                    tmp.write(MEMORY, 0, length);
+                    INDEX.put(indexEntry.getKey(), new long[]{offset, length, entry[2]});
+                    offset += length;
                 }
             }
-            file.delete();
+            store.close();
+            store = null;
+            storeFile.delete();
+            tmpFile.renameTo(storeFile);
+            store = new RandomAccessFile(storeFile, "rw");
+            storeLength = offset;
+            deadBytes = 0L;
+        } catch (IOException ex) {
+            DSLogger.reportFatalError(ex.getMessage(), ex);
         }
     }
 
-    private static String getFileName(int id, boolean solid) {
-        return Game.CACHE + File.separator + (solid ? "s" : "f") + "chnk" + (id < 0 ? "m" + (-id) : id) + ".cache";
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset + 3] & 0xFF) << 24 | (bytes[offset + 2] & 0xFF) << 16
+                | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset] & 0xFF);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        bytes[offset + 2] = (byte) (value >> 16);
+        bytes[offset + 3] = (byte) (value >> 24);
+    }
+
+    // chunk id (signed) & solid bit
+    static Long cacheKey(int id, boolean solid) {
+        return ((long) id << 1) | (solid ? 1L : 0L);
     }
 
     public void saveToDisk(int id, boolean solid) {
@@ -197,99 +303,253 @@ public class CacheModule {
                 chunk.getTupleList().clear();
 
                 if (solid) {
-                    this.levelContainer.solidChunks.getChunkList().remove(chunk);
+                    this.levelContainer.solidChunks.removeChunk(chunk);
                 } else {
-                    this.levelContainer.fluidChunks.getChunkList().remove(chunk);
+                    this.levelContainer.fluidChunks.removeChunk(chunk);
                 }
             }
-            // SAVE OPERATIONS
+            // SAVE OPERATIONS (serialized and written on I/O thread)
             if (blocks != null) {
-                pos = 0;
-                MEMORY[pos++] = (byte) id;
-                MEMORY[pos++] = (byte) blocks.size();
-                MEMORY[pos++] = (byte) (blocks.size() >> 8);
-                for (Block block : blocks) {
-                    byte[] texName = block.getTexName().getBytes();
-                    System.arraycopy(texName, 0, MEMORY, pos, 5);
-                    pos += 5;
-                    byte[] somePos = Vector3fUtils.vec3fToByteArray(block.getPos());
-                    System.arraycopy(somePos, 0, MEMORY, pos, somePos.length);
-                    pos += somePos.length;
-                    Vector3f primCol = block.getPrimaryColor();
-                    byte[] someCol = Vector3fUtils.vec3fToByteArray(primCol);
-                    System.arraycopy(someCol, 0, MEMORY, pos, someCol.length);
-                    pos += someCol.length;
-                }
+                final Long key = cacheKey(id, solid);
+                final List<Block> detached = blocks;
+                WRITING.put(key, detached.size());
+                IO_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            writeChunk(key, id, detached, LevelContainer.COMPRESS_FILES);
+                        } finally {
+                            WRITING.remove(key);
+                        }
+                    }
+                });
+            }
+        }
+    }
 
-                File cacheDir = new File(Game.CACHE);
-                if (!cacheDir.exists()) {
-                    cacheDir.mkdir();
-                }
+    // encode the chunk into the memory tier (I/O thread only)
+    static void writeChunk(Long key, int id, List<Block> blocks, boolean deflate) {
+        byte[] payload = BlockCodec.encode(blocks, deflate);
+        pos = 0;
+        writeInt(MEMORY, pos, id);
+        pos += 4;
+        writeInt(MEMORY, pos, blocks.size());
+        pos += 4;
+        MEMORY[pos++] = (byte) (BlockCodec.FLAG_COMPACT | (deflate ? BlockCodec.FLAG_DEFLATE : 0));
+        System.arraycopy(payload, 0, MEMORY, pos, payload.length);
+        pos += payload.length;
 
-                saveMemToDisk(getFileName(id, solid));
-            }
+        ByteBuffer entry = ByteBuffer.allocateDirect(pos);
+        entry.put(MEMORY, 0, pos);
+        entry.flip();
+        synchronized (MEMORY_TIER) {
+            MEMORY_TIER.put(key, entry);
+            memoryTierBytes += entry.capacity();
         }
+        spillToDisk();
     }
 
-    public void loadFromDisk(int id, boolean solid) {
-        // IF ITS NOT CACHED TO DISK
-        if (CacheModule.isCached(id, solid)) {
-            // LOAD INTO MEMORY
-            loadDiskToMem(getFileName(id, solid));
-            pos = 1;
-            // INIT BLOCK ARRAY
-            int len = ((MEMORY[pos + 1] & 0xFF) << 8) | (MEMORY[pos] & 0xFF);
-            Block[] blocks = new Block[len];
-            pos += 2;
-            // READ BLOCK ARRAY
-            for (int i = 0; i < len; i++) {
-                char[] texNameArr = new char[5];
-                for (int k = 0; k < texNameArr.length; k++) {
-                    texNameArr[k] = (char) MEMORY[pos++];
+    // least recently used chunks over the budget are written to the disk
+    private static void spillToDisk() {
+        while (true) {
+            Long victimKey;
+            ByteBuffer victim;
+            synchronized (MEMORY_TIER) {
+                if (memoryTierBytes <= MEMORY_TIER_BUDGET || MEMORY_TIER.isEmpty()) {
+                    return;
                 }
-                String texName = String.valueOf(texNameArr);
+                Map.Entry<Long, ByteBuffer> eldest = MEMORY_TIER.entrySet().iterator().next();
+                victimKey = eldest.getKey();
+                victim = eldest.getValue();
+                // in the tier until it's on the disk (so it's always cached)
+            }
 
-                byte[] blockPosArr = new byte[12];
-                System.arraycopy(MEMORY, pos, blockPosArr, 0, blockPosArr.length);
-                Vector3f blockPos = Vector3fUtils.vec3fFromByteArray(blockPosArr);
-                pos += blockPosArr.length;
+            pos = victim.limit();
+            victim.duplicate().get(MEMORY, 0, pos);
+            saveMemToDisk(victimKey);
 
-                byte[] blockPosCol = new byte[12];
-                System.arraycopy(MEMORY, pos, blockPosCol, 0, blockPosCol.length);
-                Vector3f blockCol = Vector3fUtils.vec3fFromByteArray(blockPosCol);
-                pos += blockPosCol.length;
+            synchronized (MEMORY_TIER) {
+                MEMORY_TIER.remove(victimKey);
+                memoryTierBytes -= victim.capacity();
+            }
+        }
+    }
 
-                Block block = new Block(texName, blockPos, blockCol, solid);
-                blocks[i] = block;
+    // take the chunk out of the cache & decode it (I/O thread only)
+    static Block[] readChunk(Long key, boolean solid) {
+        // LOAD INTO MEMORY (from memory tier if possible)
+        ByteBuffer entry;
+        synchronized (MEMORY_TIER) {
+            entry = MEMORY_TIER.remove(key);
+            if (entry != null) {
+                memoryTierBytes -= entry.capacity();
             }
+        }
+        int length;
+        if (entry != null) {
+            hits++;
+            length = entry.limit();
+            entry.get(MEMORY, 0, length);
+        } else {
+            misses++;
+            length = loadDiskToMem(key);
+        }
+        if (length < HEADER_SIZE) {
+            return new Block[0];
+        }
+        int len = readInt(MEMORY, 4);
+        int flags = MEMORY[8] & 0xFF;
+        // DECODE BLOCK ARRAY (only the entry payload)
+        byte[] records = BlockCodec.decodeToRecords(MEMORY, HEADER_SIZE, length - HEADER_SIZE,
+                (flags & BlockCodec.FLAG_DEFLATE) != 0);
+        // memory content is decoded, store file can be compacted now
+        compactStore();
+        Block[] blocks = LevelDecoder.decodeBlocks(records, 0, len, solid);
+        // chunk keeps blocks in this order, so the sort under the lock is cheap
+        Arrays.sort(blocks, Block.MORTON_COMP);
+        return blocks;
+    }
 
-            // PUT ALL BLOCK WHERE THEY BELONG TO
-            if (solid) {
-                for (Block block : blocks) {
-                    levelContainer.solidChunks.addBlock(block, true);
-                }
-            } else {
-                for (Block block : blocks) {
-                    levelContainer.fluidChunks.addBlock(block, true);
+    /**
+     * Start reading & decoding of the cached chunk on I/O thread (if not
+     * already started). Decoded blocks are detached, they are put into the
+     * chunks with {@link #loadFromDisk(int, boolean) }.
+     *
+     * @param id chunk id
+     * @param solid solid or fluid chunk
+     */
+    public void prefetch(int id, boolean solid) {
+        final Long key = cacheKey(id, solid);
+        if (READY.containsKey(key) || LOADING.containsKey(key)
+                || !CacheModule.isCached(id, solid)) {
+            return;
+        }
+        LOADING.put(key, CacheModule.cachedSize(id, solid));
+        IO_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    READY.put(key, readChunk(key, solid));
+                } finally {
+                    LOADING.remove(key);
                 }
             }
+        });
+    }
+
+    /**
+     * Put the decoded cached chunk into the chunks (call under the lock). If
+     * chunk is not decoded yet, reading is started in background.
+     *
+     * @param id chunk id
+     * @param solid solid or fluid chunk
+     * @return were blocks put into the chunks
+     */
+    public boolean loadFromDisk(int id, boolean solid) {
+        Block[] blocks = READY.remove(cacheKey(id, solid));
+        if (blocks == null) {
+            prefetch(id, solid);
+            return false;
         }
 
+        // PUT ALL BLOCK WHERE THEY BELONG TO
+        if (solid) {
+            levelContainer.solidChunks.addBlocks(Arrays.asList(blocks), true);
+        } else {
+            levelContainer.fluidChunks.addBlocks(Arrays.asList(blocks), true);
+        }
+        return true;
+    }
+
+    /**
+     * Wait until all the submitted chunk writes & reads are done.
+     */
+    public static void awaitIO() {
+        try {
+            IO_EXECUTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException | ExecutionException ex) {
+            DSLogger.reportError(ex.getMessage(), ex);
+        }
     }
 
     public static void deleteCache() {
-        // deleting cache
-        File cache = new File(Game.CACHE);
-        if (cache.exists()) {
-            for (File file : cache.listFiles()) {
-                file.delete(); // deleting all chunk files
-            }
-            cache.delete();
+        try {
+            // done on I/O thread after all the pending writes & reads
+            IO_EXECUTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    READY.clear();
+                    INDEX.clear();
+                    synchronized (MEMORY_TIER) {
+                        MEMORY_TIER.clear();
+                        memoryTierBytes = 0L;
+                    }
+                    if (store != null) {
+                        try {
+                            store.close();
+                        } catch (IOException ex) {
+                            DSLogger.reportError(ex.getMessage(), ex);
+                        }
+                        store = null;
+                    }
+                    // deleting cache
+                    if (cacheDir.exists()) {
+                        for (File file : cacheDir.listFiles()) {
+                            file.delete(); // deleting store file (and old chunk files)
+                        }
+                        cacheDir.delete();
+                    }
+                }
+            }).get();
+        } catch (InterruptedException | ExecutionException ex) {
+            DSLogger.reportError(ex.getMessage(), ex);
         }
     }
 
     public static boolean isCached(int chunkId, boolean solid) {
-        File file = new File(getFileName(chunkId, solid));
-        return file.exists();
+        Long key = cacheKey(chunkId, solid);
+        if (WRITING.containsKey(key) || LOADING.containsKey(key) || READY.containsKey(key)) {
+            return true;
+        }
+        synchronized (MEMORY_TIER) {
+            if (MEMORY_TIER.containsKey(key)) {
+                return true;
+            }
+        }
+        return INDEX.containsKey(key);
+    }
+
+    // memory tier hits (chunk read without the disk)
+    public static int getHits() {
+        return hits;
+    }
+
+    // memory tier misses (chunk read from the disk)
+    public static int getMisses() {
+        return misses;
+    }
+
+    public static File getStoreFile() {
+        return new File(cacheDir, STORE_NAME);
+    }
+
+    /**
+     * Set directory of the store file (game cache directory by default). Call
+     * before anything is cached.
+     *
+     * @param dir cache directory (deleted with the cache)
+     */
+    static void setCacheDir(File dir) {
+        cacheDir = dir;
+    }
+
+    public static long getMemoryTierBytes() {
+        synchronized (MEMORY_TIER) {
+            return memoryTierBytes;
+        }
     }
 }
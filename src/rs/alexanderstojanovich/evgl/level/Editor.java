@@ -19,12 +19,14 @@ package rs.alexanderstojanovich.evgl.level;
 import org.joml.Vector3f;
 import rs.alexanderstojanovich.evgl.audio.AudioFile;
 import rs.alexanderstojanovich.evgl.core.Camera;
+import rs.alexanderstojanovich.evgl.core.VoxelRay;
 import rs.alexanderstojanovich.evgl.main.GameObject;
 import rs.alexanderstojanovich.evgl.models.Block;
 import rs.alexanderstojanovich.evgl.models.Chunk;
-import rs.alexanderstojanovich.evgl.models.Model;
+import rs.alexanderstojanovich.evgl.models.Chunks;
 import rs.alexanderstojanovich.evgl.texture.Texture;
 import rs.alexanderstojanovich.evgl.util.Vector3fColors;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
 
 /**
  *
@@ -47,6 +49,10 @@ public class Editor {
     private static Block selectedNewWireFrame = null;
     private static Block selectedCurrWireFrame = null;
 
+    // picking is done only from the update thread
+    private static final VoxelRay PICKER = new VoxelRay();
+    private static final Vector3f pickPos = new Vector3f();
+
     public static void selectNew(GameObject gameObject) {
         deselect();
         if (loaded == null) // first time it's null
@@ -75,69 +81,42 @@ public class Editor {
         gameObject.getSoundFXPlayer().play(AudioFile.BLOCK_SELECT, selectedNew.getPos());
     }
 
-    public static void selectCurrSolid(GameObject gameObject) {
-        deselect();
-        Vector3f cameraPos = gameObject.getLevelContainer().levelActors.mainCamera().getPos();
-        Vector3f cameraFront = gameObject.getLevelContainer().levelActors.mainCamera().getFront();
-        float minDistanceOfSolid = Chunk.VISION;
-        int currChunkId = Chunk.chunkFunc(cameraPos);
-        Chunk currSolidChunk = gameObject.getLevelContainer().getSolidChunks().getChunk(currChunkId);
-
-        int solidTargetIndex = -1;
-        if (currSolidChunk != null) {
-            int solidBlkIndex = 0;
-            for (Block solidBlock : currSolidChunk.getBlockList()) {
-                if (Block.intersectsRay(solidBlock.getPos(), cameraFront, cameraPos)) {
-                    float distance = Vector3f.distance(cameraPos.x, cameraPos.y, cameraPos.z,
-                            solidBlock.getPos().x, solidBlock.getPos().y, solidBlock.getPos().z);
-                    if (distance < minDistanceOfSolid
-                            && !Model.intersectsEqually(cameraPos, 2.0f, 2.0f, 2.0f, solidBlock.getPos(), 2.0f, 2.0f, 2.0f)) {
-                        minDistanceOfSolid = distance;
-                        solidTargetIndex = solidBlkIndex;
-                    }
-                }
-                solidBlkIndex++;
-            }
+    /**
+     * Pick the block camera is looking at (ray is marched through the position
+     * map, so blocks across the chunk border are found as well).
+     *
+     * @param gameObject game object
+     * @param solid pick solid (true) or fluid (false) block
+     * @return picked block (null if nothing is hit)
+     */
+    private static Block pick(GameObject gameObject, boolean solid) {
+        Camera camera = gameObject.getLevelContainer().levelActors.mainCamera();
+        VoxelMap map = solid ? LevelContainer.ALL_SOLID_MAP : LevelContainer.ALL_FLUID_MAP;
+        if (PICKER.cast(map, camera.getPos(), camera.getFront(), Chunk.VISION)) {
+            Chunks chunks = solid ? gameObject.getLevelContainer().getSolidChunks() : gameObject.getLevelContainer().getFluidChunks();
+            return chunks.getBlock(PICKER.getHitPos(pickPos));
+        }
+        return null;
+    }
 
-            if (solidTargetIndex != -1) {
-                selectedCurr = currSolidChunk.getBlockList().get(solidTargetIndex);
-                selectedCurrIndex = solidBlkIndex;
-                selectedCurrWireFrame = new Block("decal", new Vector3f(selectedCurr.getPos()), Vector3fColors.YELLOW, false);
-            }
+    private static void selectCurr(GameObject gameObject, boolean solid) {
+        deselect();
+        Block target = pick(gameObject, solid);
+        if (target != null) {
+            selectedCurr = target;
+            Chunks chunks = solid ? gameObject.getLevelContainer().getSolidChunks() : gameObject.getLevelContainer().getFluidChunks();
+            Chunk chunk = chunks.getChunk(Chunk.chunkFunc(target.getPos()));
+            selectedCurrIndex = (chunk != null) ? chunk.indexOf(target) : -1;
+            selectedCurrWireFrame = new Block("decal", new Vector3f(selectedCurr.getPos()), Vector3fColors.YELLOW, false);
         }
+    }
 
+    public static void selectCurrSolid(GameObject gameObject) {
+        selectCurr(gameObject, true);
     }
 
     public static void selectCurrFluid(GameObject gameObject) {
-        deselect();
-        Vector3f cameraPos = gameObject.getLevelContainer().levelActors.mainCamera().getPos();
-        Vector3f cameraFront = gameObject.getLevelContainer().levelActors.mainCamera().getFront();
-        float minDistanceOfFluid = Chunk.VISION;
-        int currChunkId = Chunk.chunkFunc(cameraPos);
-        Chunk currFluidChunk = gameObject.getLevelContainer().getFluidChunks().getChunk(currChunkId);
-
-        int fluidTargetIndex = -1;
-        if (currFluidChunk != null) {
-            int fluidBlkIndex = 0;
-            for (Block fluidBlock : currFluidChunk.getBlockList()) {
-                if (Block.intersectsRay(fluidBlock.getPos(), cameraFront, cameraPos)) {
-                    float distance = Vector3f.distance(cameraPos.x, cameraPos.y, cameraPos.z,
-                            fluidBlock.getPos().x, fluidBlock.getPos().y, fluidBlock.getPos().z);
-                    if (distance < minDistanceOfFluid
-                            && !Model.intersectsEqually(cameraPos, 2.0f, 2.0f, 2.0f, fluidBlock.getPos(), 2.0f, 2.0f, 2.0f)) {
-                        minDistanceOfFluid = distance;
-                        fluidTargetIndex = fluidBlkIndex;
-                    }
-                }
-                fluidBlkIndex++;
-            }
-
-            if (fluidTargetIndex != -1) {
-                selectedCurr = currFluidChunk.getBlockList().get(fluidTargetIndex);
-                selectedCurrIndex = fluidBlkIndex;
-                selectedCurrWireFrame = new Block("decal", new Vector3f(selectedCurr.getPos()), Vector3fColors.YELLOW, false);
-            }
-        }
+        selectCurr(gameObject, false);
     }
 
     public static void deselect() {
@@ -147,9 +126,16 @@ public class Editor {
         selectedCurrWireFrame = null;
     }
 
-    public static void selectAdjacentSolid(GameObject gameObject, int position) {
-        deselect();
-        selectCurrSolid(gameObject);
+    /**
+     * Select new block next to the picked one. Position of the new block comes
+     * from the same ray cast as the picked block.
+     *
+     * @param gameObject game object
+     * @param solid pick solid (true) or fluid (false) block
+     * @param position face of the picked block
+     */
+    private static void selectAdjacent(GameObject gameObject, boolean solid, int position) {
+        selectCurr(gameObject, solid);
         if (selectedCurr != null) {
             if (loaded == null) // first time it's null
             {
@@ -157,92 +143,41 @@ public class Editor {
                 selectLoadedTexture();
             }
             selectedNew = loaded;
-            selectedNew.getPos().x = selectedCurr.getPos().x;
-            selectedNew.getPos().y = selectedCurr.getPos().y;
-            selectedNew.getPos().z = selectedCurr.getPos().z;
-
-            switch (position) {
-                case Block.LEFT:
-                    selectedNew.getPos().x -= selectedCurr.getWidth() / 2.0f + selectedNew.getWidth() / 2.0f;
-                    break;
-                case Block.RIGHT:
-                    selectedNew.getPos().x += selectedCurr.getWidth() / 2.0f + selectedNew.getWidth() / 2.0f;
-                    break;
-                case Block.BOTTOM:
-                    selectedNew.getPos().y -= selectedCurr.getHeight() / 2.0f + selectedNew.getHeight() / 2.0f;
-                    break;
-                case Block.TOP:
-                    selectedNew.getPos().y += selectedCurr.getHeight() / 2.0f + selectedNew.getHeight() / 2.0f;
-                    break;
-                case Block.BACK:
-                    selectedNew.getPos().z -= selectedCurr.getDepth() / 2.0f + selectedNew.getDepth() / 2.0f;
-                    break;
-                case Block.FRONT:
-                    selectedNew.getPos().z += selectedCurr.getDepth() / 2.0f + selectedNew.getDepth() / 2.0f;
-                    break;
-                default:
-                    break;
-            }
+            PICKER.getAdjacentPos(position, selectedNew.getPos());
 
             if (!cannotPlace(gameObject)) {
-                selectedNewWireFrame = new Block("decal", new Vector3f(selectedNew.getPos()), Vector3fColors.BLUE, true);
+                selectedNewWireFrame = new Block("decal", new Vector3f(selectedNew.getPos()), Vector3fColors.BLUE, solid);
             }
         }
     }
 
-    public static void selectAdjacentFluid(GameObject gameObject, int position) {
-        deselect();
-        selectCurrFluid(gameObject);
-        if (selectedCurr != null) {
-            if (loaded == null) // first time it's null
-            {
-                loaded = new Block("crate");
-                selectLoadedTexture();
-            }
-            selectedNew = loaded;
-            selectedNew.getPos().x = selectedCurr.getPos().x;
-            selectedNew.getPos().y = selectedCurr.getPos().y;
-            selectedNew.getPos().z = selectedCurr.getPos().z;
+    public static void selectAdjacentSolid(GameObject gameObject, int position) {
+        selectAdjacent(gameObject, true, position);
+    }
 
-            switch (position) {
-                case Block.LEFT:
-                    selectedNew.getPos().x -= selectedCurr.getWidth() / 2.0f + selectedNew.getWidth() / 2.0f;
-                    break;
-                case Block.RIGHT:
-                    selectedNew.getPos().x += selectedCurr.getWidth() / 2.0f + selectedNew.getWidth() / 2.0f;
-                    break;
-                case Block.BOTTOM:
-                    selectedNew.getPos().y -= selectedCurr.getHeight() / 2.0f + selectedNew.getHeight() / 2.0f;
-                    break;
-                case Block.TOP:
-                    selectedNew.getPos().y += selectedCurr.getHeight() / 2.0f + selectedNew.getHeight() / 2.0f;
-                    break;
-                case Block.BACK:
-                    selectedNew.getPos().z -= selectedCurr.getDepth() / 2.0f + selectedNew.getDepth() / 2.0f;
-                    break;
-                case Block.FRONT:
-                    selectedNew.getPos().z += selectedCurr.getDepth() / 2.0f + selectedNew.getDepth() / 2.0f;
-                    break;
-                default:
-                    break;
-            }
+    public static void selectAdjacentFluid(GameObject gameObject, int position) {
+        selectAdjacent(gameObject, false, position);
+    }
 
-            if (!cannotPlace(gameObject)) {
-                selectedNewWireFrame = new Block("decal", new Vector3f(selectedNew.getPos()), Vector3fColors.BLUE, false);
-            }
-        }
+    // is position center of the grid cell (even coordinates)
+    private static boolean isOnGrid(Vector3f pos) {
+        return pos.x == 2.0f * Math.round(pos.x / 2.0f)
+                && pos.y == 2.0f * Math.round(pos.y / 2.0f)
+                && pos.z == 2.0f * Math.round(pos.z / 2.0f);
     }
 
     private static boolean cannotPlace(GameObject gameObject) {
         boolean cant = false;
         boolean placeOccupied = LevelContainer.ALL_SOLID_MAP.containsKey(selectedNew.pos)
                 || LevelContainer.ALL_FLUID_MAP.containsKey(selectedNew.pos);
+        // on the block grid position map is exact, otherwise blocks are scanned
+        final boolean onGrid = isOnGrid(selectedNew.getPos());
         //----------------------------------------------------------------------
         boolean intsSolid = false;
         int currChunkId = Chunk.chunkFunc(selectedNew.getPos());
         Chunk currSolidChunk = gameObject.getLevelContainer().getSolidChunks().getChunk(currChunkId);
-        if (currSolidChunk != null) {
-            for (Block solidBlock : currSolidChunk.getBlockList()) {
+        if (!onGrid && currSolidChunk != null) {
+            for (Block solidBlock : currSolidChunk.blocks()) {
                 intsSolid = selectedNew.intersectsExactly(solidBlock);
                 if (intsSolid) {
                     break;
@@ -251,10 +186,10 @@ public class Editor {
         }
         //----------------------------------------------------------------------
         boolean intsFluid = false;
-        if (!intsSolid) {
+        if (!onGrid && !intsSolid) {
             Chunk currFluidChunk = gameObject.getLevelContainer().getFluidChunks().getChunk(currChunkId);
             if (currFluidChunk != null) {
-                for (Block fluidBlock : currFluidChunk.getBlockList()) {
+                for (Block fluidBlock : currFluidChunk.blocks()) {
                     intsFluid = selectedNew.intersectsExactly(fluidBlock);
                     if (intsFluid) {
                         break;
@@ -265,9 +200,9 @@ public class Editor {
         //----------------------------------------------------------------------
         boolean leavesSkybox = !LevelContainer.SKYBOX.intersectsEqually(selectedNew);
         if (selectedNew.isSolid()) {
-            cant = gameObject.getLevelContainer().maxSolidReached() || placeOccupied || intsSolid || intsFluid || leavesSkybox;
+            cant = placeOccupied || intsSolid || intsFluid || leavesSkybox;
         } else {
-            cant = gameObject.getLevelContainer().maxFluidReached() || placeOccupied || intsSolid || intsFluid || leavesSkybox;
+            cant = placeOccupied || intsSolid || intsFluid || leavesSkybox;
         }
         if (cant) {
             selectedNewWireFrame = new Block("decal", new Vector3f(selectedNew.getPos()), Vector3fColors.RED, false);
@@ -285,6 +220,7 @@ public class Editor {
                     gameObject.getLevelContainer().getFluidChunks().addBlock(selectedNew, true);
 //                    gameObject.getLevelContainer().getFluidChunks().updateFluids();
                 }
+                gameObject.getLevelContainer().markEdited(Chunk.chunkFunc(selectedNew.getPos()));
                 gameObject.getSoundFXPlayer().play(AudioFile.BLOCK_ADD, selectedNew.getPos());
                 loaded = new Block(Texture.TEX_WORLD[texValue]);
             }
@@ -301,6 +237,7 @@ public class Editor {
                 gameObject.getLevelContainer().getFluidChunks().removeBlock(selectedCurr, true);
 //                gameObject.getLevelContainer().getFluidChunks().updateFluids();
             }
+            gameObject.getLevelContainer().markEdited(Chunk.chunkFunc(selectedCurr.getPos()));
             gameObject.getSoundFXPlayer().play(AudioFile.BLOCK_REMOVE, selectedCurr.getPos());
         }
         deselect();
@@ -311,7 +248,6 @@ public class Editor {
             String texName = Texture.TEX_WORLD[texValue];
             loaded.setTexName(texName);
             loaded.setSolid(!texName.equals("water"));
-            Block.deepCopyTo(loaded.getVertices(), Texture.TEX_WORLD[texValue]);
             loaded.unbuffer();
         }
     }
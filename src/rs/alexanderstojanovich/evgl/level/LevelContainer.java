@@ -17,38 +17,45 @@
 package rs.alexanderstojanovich.evgl.level;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Queue;
-import java.util.function.Predicate;
+import java.util.Set;
+import java.util.TreeSet;
 import org.joml.Vector3f;
 import rs.alexanderstojanovich.evgl.audio.AudioFile;
 import rs.alexanderstojanovich.evgl.audio.AudioPlayer;
 import rs.alexanderstojanovich.evgl.core.Camera;
+import rs.alexanderstojanovich.evgl.core.Frustum;
+import rs.alexanderstojanovich.evgl.core.OcclusionCuller;
+import rs.alexanderstojanovich.evgl.core.VoxelSweep;
 import rs.alexanderstojanovich.evgl.core.Window;
 import rs.alexanderstojanovich.evgl.critter.Critter;
 import rs.alexanderstojanovich.evgl.critter.ModelCritter;
+import rs.alexanderstojanovich.evgl.main.Configuration;
 import rs.alexanderstojanovich.evgl.main.Game;
 import rs.alexanderstojanovich.evgl.main.GameObject;
 import rs.alexanderstojanovich.evgl.models.Block;
 import rs.alexanderstojanovich.evgl.models.Chunk;
 import rs.alexanderstojanovich.evgl.models.Chunks;
 import rs.alexanderstojanovich.evgl.models.Model;
+import rs.alexanderstojanovich.evgl.models.Tuple;
 import rs.alexanderstojanovich.evgl.shaders.ShaderProgram;
+import rs.alexanderstojanovich.evgl.texture.Texture;
 import rs.alexanderstojanovich.evgl.util.DSLogger;
 import rs.alexanderstojanovich.evgl.util.Pair;
 import rs.alexanderstojanovich.evgl.util.Vector3fUtils;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
 
 /**
  *
@@ -102,8 +109,8 @@ public class LevelContainer implements GravityEnviroment {
     public static final float SKYBOX_WIDTH = 2.0f * SKYBOX_SCALE;
     public static final Vector3f SKYBOX_COLOR = new Vector3f(0.25f, 0.5f, 0.75f); // cool bluish color for SKYBOX
 
-    public static final int MAX_NUM_OF_SOLID_BLOCKS = 65535;
-    public static final int MAX_NUM_OF_FLUID_BLOCKS = 65535;
+    // initial capacity of the position maps, block count itself isn't capped (maps rehash)
+    public static final int INITIAL_MAP_CAPACITY = 65535;
 
     private float progress = 0.0f;
 
@@ -111,11 +118,31 @@ public class LevelContainer implements GravityEnviroment {
 
     public final LevelActors levelActors = new LevelActors();
 
-    // position of all the solid blocks to texture name & neighbors
-    public static final Map<Vector3f, Pair<String, Byte>> ALL_SOLID_MAP = new HashMap<>(MAX_NUM_OF_SOLID_BLOCKS);
+    // position of all the solid blocks to texture id & neighbors
+    public static final VoxelMap ALL_SOLID_MAP = new VoxelMap(INITIAL_MAP_CAPACITY);
 
-    // position of all the fluid blocks to texture name & neighbors
-    public static final Map<Vector3f, Pair<String, Byte>> ALL_FLUID_MAP = new HashMap<>(MAX_NUM_OF_FLUID_BLOCKS);
+    // position of all the fluid blocks to texture id & neighbors
+    public static final VoxelMap ALL_FLUID_MAP = new VoxelMap(INITIAL_MAP_CAPACITY);
+
+    // invisible chunks are kept in memory in dense (palette) storage instead of disk cache
+    public static final boolean COMPACT_CHUNKS = Configuration.getInstance().isCompactChunks();
+
+    // deflate framing on top of compact encoding for level and cache files
+    public static final boolean COMPRESS_FILES = Configuration.getInstance().isCompressFiles();
+
+    // solid chunks are rendered as greedy meshes (merged faces) instead of tuples
+    public static final boolean GREEDY_MESHING = Configuration.getInstance().isGreedyMeshing();
+
+    // chunks & tuples hidden behind the nearest solid blocks are not rendered
+    public static final boolean OCCLUSION_CULLING = Configuration.getInstance().isOcclusionCulling();
+
+    // random level chunks are generated when they become visible (unedited ones are dropped when invisible)
+    public static final boolean LAZY_GENERATION = Configuration.getInstance().isLazyGeneration();
+
+    // critters keep this distance from solid blocks (blocks are like 2.1 wide)
+    public static final float COLLISION_SKIN = 0.05f;
+    // collision box size of the observer (which has no model)
+    public static final float OBSERVER_SIZE = 0.075f;
 
     // std time to live
     public static final float STD_TTL = 30.0f * (float) Game.TICK_TIME;
@@ -124,103 +151,116 @@ public class LevelContainer implements GravityEnviroment {
 
     protected final CacheModule cacheModule;
 
-    private static byte updatePutSolidNeighbors(Vector3f vector) {
-        byte bits = 0;
+    // software occlusion culler (used if occlusion culling is on)
+    protected final OcclusionCuller occlusionCuller = new OcclusionCuller();
+
+    // swept collision of the critters against solid blocks (update thread only)
+    protected final VoxelSweep voxelSweep = new VoxelSweep();
+    protected final Vector3f displacement = new Vector3f();
+    protected final Vector3f endPos = new Vector3f();
+
+    // opened region file (chunks which are not paged in yet stay in the file)
+    protected RegionFile region = null;
+
+    // chunk provider of the lazy random level (chunks are generated when visible)
+    protected RandomLevelGenerator provider = null;
+    // chunks changed by the editor (not dropped, they're cached as usual)
+    private final Set<Integer> editedIds = new HashSet<>();
+
+    // how many chunk operation steps ahead (along camera velocity) cached chunks are prefetched
+    public static final float PREFETCH_STEPS = 8.0f;
+    private final Vector3f lastCamPos = new Vector3f();
+    private final Vector3f camVelocity = new Vector3f();
+    private final Vector3f predictedPos = new Vector3f();
+    // first sample after spawn (or teleport) has no velocity
+    private boolean skipPrefetch = true;
+
+    private static int updatePutNeighbors(VoxelMap map, long key) {
+        int bits = 0;
         for (int j = Block.LEFT; j <= Block.FRONT; j++) {
-            int mask = 1 << j;
-            Vector3f adjPos = Block.getAdjacentPos(vector, j);
-            Pair<String, Byte> adjPair = ALL_SOLID_MAP.get(adjPos);
-            if (adjPair != null) {
-                bits |= mask;
-                byte adjBits = adjPair.getValue();
-                int k = ((j & 1) == 0 ? j + 1 : j - 1);
-                int maskAdj = 1 << k;
-                adjBits |= maskAdj;
-                adjPair.setValue(adjBits);
+            long adjKey = VoxelMap.adjacentKey(key, j);
+            int k = ((j & 1) == 0 ? j + 1 : j - 1);
+            if (map.setNeighborBit(adjKey, k, true)) {
+                bits |= 1 << j;
             }
         }
         return bits;
     }
 
-    private static byte updatePutFluidNeighbors(Vector3f vector) {
-        byte bits = 0;
+    private static int updateRemNeighbors(VoxelMap map, long key) {
+        int bits = 0;
         for (int j = Block.LEFT; j <= Block.FRONT; j++) {
-            int mask = 1 << j;
-            Vector3f adjPos = Block.getAdjacentPos(vector, j);
-            Pair<String, Byte> adjPair = ALL_FLUID_MAP.get(adjPos);
-            if (adjPair != null) {
-                bits |= mask;
-                byte adjBits = adjPair.getValue();
-                int k = ((j & 1) == 0 ? j + 1 : j - 1);
-                int maskAdj = 1 << k;
-                adjBits |= maskAdj;
-                adjPair.setValue(adjBits);
+            long adjKey = VoxelMap.adjacentKey(key, j);
+            int k = ((j & 1) == 0 ? j + 1 : j - 1);
+            if (map.setNeighborBit(adjKey, k, false)) {
+                bits |= 1 << j;
             }
         }
         return bits;
     }
 
-    private static byte updateRemSolidNeighbors(Vector3f vector) {
-        byte bits = 0;
-        for (int j = Block.LEFT; j <= Block.FRONT; j++) {
-            int mask = 1 << j;
-            Vector3f adjPos = Block.getAdjacentPos(vector, j);
-            Pair<String, Byte> adjPair = ALL_SOLID_MAP.get(adjPos);
-            if (adjPair != null) {
-                bits |= mask;
-                byte adjBits = adjPair.getValue();
-                int k = ((j & 1) == 0 ? j + 1 : j - 1);
-                int maskAdj = 1 << k;
-                adjBits &= ~maskAdj & 63;
-                adjPair.setValue(adjBits);
-            }
-        }
-        return bits;
+    /**
+     * Texture id stored in position maps (index in the world texture atlas).
+     *
+     * @param texName world texture name
+     * @return texture id
+     */
+    public static int texId(String texName) {
+        return Texture.worldTexId(texName);
     }
 
-    private static byte updateRemFluidNeighbors(Vector3f vector) {
-        byte bits = 0;
-        for (int j = Block.LEFT; j <= Block.FRONT; j++) {
-            int mask = 1 << j;
-            Vector3f adjPos = Block.getAdjacentPos(vector, j);
-            Pair<String, Byte> adjPair = ALL_FLUID_MAP.get(adjPos);
-            if (adjPair != null) {
-                bits |= mask;
-                byte adjBits = adjPair.getValue();
-                int k = ((j & 1) == 0 ? j + 1 : j - 1);
-                int maskAdj = 1 << k;
-                adjBits &= ~maskAdj & 63;
-                adjPair.setValue(adjBits);
-            }
-        }
-        return bits;
+    /**
+     * Texture name of the texture id stored in position maps.
+     *
+     * @param value packed value from the position map
+     * @return world texture name
+     */
+    public static String texName(int value) {
+        return Texture.worldTexName(VoxelMap.texId(value));
     }
 
     public static void putBlock(Block block) {
-        Vector3f pos = block.getPos();
-        String str = block.getTexName();
+        long key = VoxelMap.key(block.getPos());
+        int texId = texId(block.getTexName());
         if (block.isSolid()) {
-            byte bits = updatePutSolidNeighbors(pos);
-            Pair<String, Byte> pairX = new Pair<>(str, bits);
-            ALL_SOLID_MAP.put(new Vector3f(pos), pairX);
+            int bits = updatePutNeighbors(ALL_SOLID_MAP, key);
+            ALL_SOLID_MAP.put(key, VoxelMap.value(texId, bits));
         } else {
-            byte bits = updatePutFluidNeighbors(pos);
-            Pair<String, Byte> pairX = new Pair<>(str, bits);
-            ALL_FLUID_MAP.put(new Vector3f(pos), pairX);
+            int bits = updatePutNeighbors(ALL_FLUID_MAP, key);
+            ALL_FLUID_MAP.put(key, VoxelMap.value(texId, bits));
+        }
+    }
+
+    /**
+     * Put blocks into position maps in bulk. All the keys are put first and
+     * then neighbor bits are set in one linear pass.
+     *
+     * @param blocks blocks to put
+     */
+    public static void putBlocks(Collection<Block> blocks) {
+        for (Block block : blocks) {
+            VoxelMap map = block.isSolid() ? ALL_SOLID_MAP : ALL_FLUID_MAP;
+            map.put(VoxelMap.key(block.getPos()), VoxelMap.value(texId(block.getTexName()), 0));
+        }
+        for (Block block : blocks) {
+            VoxelMap map = block.isSolid() ? ALL_SOLID_MAP : ALL_FLUID_MAP;
+            long key = VoxelMap.key(block.getPos());
+            int bits = updatePutNeighbors(map, key);
+            map.put(key, VoxelMap.value(texId(block.getTexName()), bits));
         }
     }
 
     public static void removeBlock(Block block) {
-        Vector3f pos = block.getPos();
+        long key = VoxelMap.key(block.getPos());
         if (block.isSolid()) {
-            Pair<String, Byte> pair = ALL_SOLID_MAP.remove(pos);
-            if (pair != null && pair.getValue() > 0) {
-                updateRemSolidNeighbors(pos);
+            int value = ALL_SOLID_MAP.remove(key);
+            if (value != VoxelMap.NONE && VoxelMap.neighborBits(value) > 0) {
+                updateRemNeighbors(ALL_SOLID_MAP, key);
             }
         } else {
-            Pair<String, Byte> pair = ALL_FLUID_MAP.remove(pos);
-            if (pair != null && pair.getValue() > 0) {
-                updateRemFluidNeighbors(pos);
+            int value = ALL_FLUID_MAP.remove(key);
+            if (value != VoxelMap.NONE && VoxelMap.neighborBits(value) > 0) {
+                updateRemNeighbors(ALL_FLUID_MAP, key);
             }
         }
     }
@@ -259,6 +299,16 @@ public class LevelContainer implements GravityEnviroment {
         DSLogger.reportInfo(sb.toString(), null);
     }
 
+    public void printOcclusionInfo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n");
+        sb.append("OCCLUSION CULLING (enabled = ").append(OCCLUSION_CULLING).append(")\n");
+        sb.append("occluders = ").append(occlusionCuller.getOccluders())
+                .append(" | culled blocks (last frame) = ").append(occlusionCuller.getCulledBlocks()).append("\n");
+        sb.append("---------------------------");
+        DSLogger.reportInfo(sb.toString(), null);
+    }
+
     public void printQueues() {
         StringBuilder sb = new StringBuilder();
         sb.append("\n");
@@ -286,8 +336,8 @@ public class LevelContainer implements GravityEnviroment {
         levelActors.freeze();
         gameObject.getMusicPlayer().play(AudioFile.INTERMISSION, true);
 
-        solidChunks.getChunkList().clear();
-        fluidChunks.getChunkList().clear();
+        solidChunks.clear();
+        fluidChunks.clear();
 
         ALL_SOLID_MAP.clear();
         ALL_FLUID_MAP.clear();
@@ -297,6 +347,9 @@ public class LevelContainer implements GravityEnviroment {
         LIGHT_SOURCES.lightSrcList.add(levelActors.playerLight);
 
         CacheModule.deleteCache();
+        region = null;
+        provider = null;
+        editedIds.clear();
 
         for (int i = 0; i <= 2; i++) {
             for (int j = 0; j <= 2; j++) {
@@ -316,6 +369,7 @@ public class LevelContainer implements GravityEnviroment {
         }
 
         levelActors.configureMainActor(new Vector3f(10.5f, 0.0f, -4.0f), new Vector3f(Camera.Z_AXIS), new Vector3f(Camera.Y_AXIS), new Vector3f(Camera.X_AXIS));
+        seedPrefetch();
 
         levelActors.unfreeze();
         progress = 100.0f;
@@ -337,13 +391,14 @@ public class LevelContainer implements GravityEnviroment {
         levelActors.getPlayer().getCamera().setUp(Camera.Y_AXIS);
         levelActors.getPlayer().getCamera().setRight(Camera.X_AXIS);
         levelActors.getPlayer().getCamera().calcViewMatrixPub();
+        seedPrefetch();
 
         boolean success = false;
         progress = 0.0f;
         gameObject.getMusicPlayer().play(AudioFile.RANDOM, true);
 
-        solidChunks.getChunkList().clear();
-        fluidChunks.getChunkList().clear();
+        solidChunks.clear();
+        fluidChunks.clear();
 
         ALL_SOLID_MAP.clear();
         ALL_FLUID_MAP.clear();
@@ -353,11 +408,26 @@ public class LevelContainer implements GravityEnviroment {
         LIGHT_SOURCES.lightSrcList.add(levelActors.playerLight);
 
         CacheModule.deleteCache();
+        region = null;
+        provider = null;
+        editedIds.clear();
 
-        if (numberOfBlocks > 0 && numberOfBlocks <= MAX_NUM_OF_SOLID_BLOCKS + MAX_NUM_OF_FLUID_BLOCKS) {
+        if (numberOfBlocks > 0) {
             randomLevelGenerator.setNumberOfBlocks(numberOfBlocks);
-            randomLevelGenerator.generate();
-            success = true;
+            if (LAZY_GENERATION) {
+                // only chunks around the camera are generated, the rest when they become visible
+                provider = randomLevelGenerator;
+                provider.prepareLazy();
+                Chunk.determineVisible(vChnkIdQueue, iChnkIdQueue, levelActors.mainCamera().getPos());
+                for (int chunkId : vChnkIdQueue) {
+                    provider.generateChunk(chunkId);
+                    progress += 100.0f / vChnkIdQueue.size();
+                }
+                liftOutOfTerrain();
+                success = true;
+            } else {
+                success = randomLevelGenerator.generate();
+            }
         }
 
 //        solidChunks.updateSolids(this);
@@ -370,6 +440,7 @@ public class LevelContainer implements GravityEnviroment {
         return success;
     }
 
+    @Deprecated
     private boolean storeLevelToBuffer() {
         working = true;
         boolean success = false;
@@ -411,22 +482,22 @@ public class LevelContainer implements GravityEnviroment {
         buffer[pos++] = 'I';
         buffer[pos++] = 'D';
 
-        List<Block> solidBlocks = solidChunks.getTotalList();
-        List<Block> fluidBlocks = fluidChunks.getTotalList();
+        // blocks are visited in place (not copied into one big list)
+        final int blocksNum = solidChunks.size() + fluidChunks.size();
 
         int solidNum = cacheModule.totalSize(true);
         buffer[pos++] = (byte) (solidNum);
         buffer[pos++] = (byte) (solidNum >> 8);
 
         //----------------------------------------------------------------------
-        for (Block solidBlock : solidBlocks) {
+        for (Block solidBlock : solidChunks.blocks()) {
             if (GameObject.MY_WINDOW.shouldClose()) {
                 break;
             }
             byte[] byteArraySolid = solidBlock.toByteArray();
             System.arraycopy(byteArraySolid, 0, buffer, pos, 29);
             pos += 29;
-            progress += 100.0f / (solidBlocks.size() + fluidBlocks.size());
+            progress += 100.0f / blocksNum;
         }
 
         buffer[pos++] = 'F';
@@ -439,14 +510,14 @@ public class LevelContainer implements GravityEnviroment {
         buffer[pos++] = (byte) (fluidNum);
         buffer[pos++] = (byte) (fluidNum >> 8);
 
-        for (Block fluidBlock : fluidBlocks) {
+        for (Block fluidBlock : fluidChunks.blocks()) {
             if (GameObject.MY_WINDOW.shouldClose()) {
                 break;
             }
             byte[] byteArrayFluid = fluidBlock.toByteArray();
             System.arraycopy(byteArrayFluid, 0, buffer, pos, 29);
             pos += 29;
-            progress += 100.0f / (solidBlocks.size() + fluidBlocks.size());
+            progress += 100.0f / blocksNum;
         }
 
         buffer[pos++] = 'E';
@@ -475,8 +546,8 @@ public class LevelContainer implements GravityEnviroment {
         gameObject.getMusicPlayer().play(AudioFile.INTERMISSION, true);
         pos = 0;
         if (buffer[0] == 'D' && buffer[1] == 'S') {
-            solidChunks.getChunkList().clear();
-            fluidChunks.getChunkList().clear();
+            solidChunks.clear();
+            fluidChunks.clear();
 
             ALL_SOLID_MAP.clear();
             ALL_FLUID_MAP.clear();
@@ -486,6 +557,9 @@ public class LevelContainer implements GravityEnviroment {
             LIGHT_SOURCES.lightSrcList.add(levelActors.playerLight);
 
             CacheModule.deleteCache();
+            region = null;
+            provider = null;
+            editedIds.clear();
 
             pos += 2;
             byte[] posArr = new byte[12];
@@ -509,6 +583,7 @@ public class LevelContainer implements GravityEnviroment {
             pos += rightArr.length;
 
             levelActors.configureMainActor(campos, camfront, camup, camright);
+            seedPrefetch();
 
             char[] solid = new char[5];
             for (int i = 0; i < solid.length; i++) {
@@ -519,14 +594,9 @@ public class LevelContainer implements GravityEnviroment {
             if (strSolid.equals("SOLID")) {
                 int solidNum = ((buffer[pos + 1] & 0xFF) << 8) | (buffer[pos] & 0xFF);
                 pos += 2;
-                for (int i = 0; i < solidNum && !GameObject.MY_WINDOW.shouldClose(); i++) {
-                    byte[] byteArraySolid = new byte[29];
-                    System.arraycopy(buffer, pos, byteArraySolid, 0, 29);
-                    Block solidBlock = Block.fromByteArray(byteArraySolid, true);
-                    solidChunks.addBlock(solidBlock, true);
-                    pos += 29;
-                    progress += 50.0f / solidNum;
-                }
+                LevelDecoder.decode(buffer, pos, solidNum, solidChunks, true);
+                pos += solidNum * LevelDecoder.RECORD_SIZE;
+                progress += 50.0f;
 
 //                solidChunks.updateSolids();
                 char[] fluid = new char[5];
@@ -538,14 +608,9 @@ public class LevelContainer implements GravityEnviroment {
                 if (strFluid.equals("FLUID")) {
                     int fluidNum = ((buffer[pos + 1] & 0xFF) << 8) | (buffer[pos] & 0xFF);
                     pos += 2;
-                    for (int i = 0; i < fluidNum && !GameObject.MY_WINDOW.shouldClose(); i++) {
-                        byte[] byteArrayFluid = new byte[29];
-                        System.arraycopy(buffer, pos, byteArrayFluid, 0, 29);
-                        Block fluidBlock = Block.fromByteArray(byteArrayFluid, false);
-                        fluidChunks.addBlock(fluidBlock, true);
-                        pos += 29;
-                        progress += 50.0f / fluidNum;
-                    }
+                    LevelDecoder.decode(buffer, pos, fluidNum, fluidChunks, false);
+                    pos += fluidNum * LevelDecoder.RECORD_SIZE;
+                    progress += 50.0f;
 
 //                    fluidChunks.updateFluids();
                     char[] end = new char[3];
@@ -568,36 +633,231 @@ public class LevelContainer implements GravityEnviroment {
         return success;
     }
 
+    /**
+     * Page in (load) chunks from the opened region file.
+     *
+     * @param ids chunk ids
+     * @return was anything loaded
+     */
+    private boolean pageIn(Collection<Integer> ids) {
+        boolean changed = false;
+        if (region != null) {
+            byte[] solidRecords = region.readRecords(ids, true);
+            if (solidRecords.length > 0) {
+                LevelDecoder.decode(solidRecords, 0, solidRecords.length / LevelDecoder.RECORD_SIZE, solidChunks, true);
+                changed = true;
+            }
+            byte[] fluidRecords = region.readRecords(ids, false);
+            if (fluidRecords.length > 0) {
+                LevelDecoder.decode(fluidRecords, 0, fluidRecords.length / LevelDecoder.RECORD_SIZE, fluidChunks, false);
+                changed = true;
+            }
+            // everything is paged in, file content is no longer needed
+            if (!region.hasPending()) {
+                region = null;
+            }
+        }
+        return changed;
+    }
+
+    // page in all the remaining chunks of the region file
+    private void pageInAll() {
+        if (region != null) {
+            Set<Integer> ids = new TreeSet<>(region.pendingIds(true));
+            ids.addAll(region.pendingIds(false));
+            pageIn(ids);
+            region = null;
+        }
+    }
+
+    // page in all the chunks evicted to the cache (after pending cache writes are done)
+    private void pageInCached() {
+        CacheModule.awaitIO();
+        List<Integer> solidIds = CacheModule.cachedIds(true);
+        List<Integer> fluidIds = CacheModule.cachedIds(false);
+        for (int id : solidIds) {
+            cacheModule.prefetch(id, true);
+        }
+        for (int id : fluidIds) {
+            cacheModule.prefetch(id, false);
+        }
+        CacheModule.awaitIO();
+        for (int id : solidIds) {
+            cacheModule.loadFromDisk(id, true);
+        }
+        for (int id : fluidIds) {
+            cacheModule.loadFromDisk(id, false);
+        }
+    }
+
+    // lazy terrain doesn't avoid the player (it depends only on the seed), so player spawned inside is lifted up
+    private void liftOutOfTerrain() {
+        Camera camera = levelActors.getPlayer().getCamera();
+        Model model = levelActors.getPlayer().getModel();
+        final float halfWidth = model.getWidth() / 2.0f + COLLISION_SKIN;
+        final float halfHeight = model.getHeight() / 2.0f + COLLISION_SKIN;
+        final float halfDepth = model.getDepth() / 2.0f + COLLISION_SKIN;
+        Vector3f pos = new Vector3f(camera.getPos());
+        // zero displacement sweep hits only if box is embedded
+        while (pos.y < Chunk.BOUND
+                && voxelSweep.sweep(ALL_SOLID_MAP, pos.x, pos.y, pos.z, halfWidth, halfHeight, halfDepth, 0.0f, 0.0f, 0.0f)) {
+            pos.y += 2.0f;
+        }
+        camera.setPos(pos);
+        camera.calcViewMatrixPub();
+        seedPrefetch();
+    }
+
+    // chunks of the level file are kept, lazy random level never generates (or drops) them
+    private void keepChunks(Collection<Integer> ids) {
+        if (provider != null) {
+            for (int chunkId : ids) {
+                provider.markGenerated(chunkId);
+                editedIds.add(chunkId);
+            }
+        }
+    }
+
+    /**
+     * Drop chunk of the lazy random level, it's generated again when visible.
+     * Blocks are removed from the position maps too (so there's no collision
+     * with dropped blocks and generated again chunk is complete).
+     *
+     * @param chunks solid or fluid chunks
+     * @param chunkId chunk id
+     */
+    private void dropChunk(Chunks chunks, int chunkId) {
+        Chunk chunk = chunks.getChunk(chunkId);
+        if (chunk != null) {
+            chunk.unbuffer();
+            for (Block block : chunk.getBlockList()) {
+                removeBlock(block);
+            }
+            for (Tuple tuple : chunk.getTupleList()) {
+                tuple.getBlockList().clear();
+            }
+            chunk.getTupleList().clear();
+            chunks.removeChunk(chunk);
+        }
+    }
+
+    /**
+     * Mark chunk as edited, so lazy random level keeps (caches) it instead of
+     * dropping it.
+     *
+     * @param chunkId chunk id
+     */
+    public void markEdited(int chunkId) {
+        if (provider != null) {
+            editedIds.add(chunkId);
+        }
+    }
+
+    // number of blocks in the region file which are not paged in yet
+    public int pendingSize(boolean solid) {
+        return (region == null) ? 0 : region.pendingSize(solid);
+    }
+
+    private boolean loadLevelFromRegion(File file) {
+        working = true;
+        boolean success = false;
+        if (progress > 0.0f) {
+            return false;
+        }
+        progress = 0.0f;
+        levelActors.freeze();
+        gameObject.getMusicPlayer().play(AudioFile.INTERMISSION, true);
+
+        RegionFile newRegion = RegionFile.open(file);
+        if (newRegion != null) {
+            solidChunks.clear();
+            fluidChunks.clear();
+
+            ALL_SOLID_MAP.clear();
+            ALL_FLUID_MAP.clear();
+
+            LIGHT_SOURCES.lightSrcList.clear();
+            LIGHT_SOURCES.lightSrcList.add(SUNLIGHT);
+            LIGHT_SOURCES.lightSrcList.add(levelActors.playerLight);
+
+            CacheModule.deleteCache();
+            region = newRegion;
+            provider = null;
+            editedIds.clear();
+            if (region.getGeneratedBlocks() > 0) {
+                // lazy random level, chunks which are not in the file are generated from the seed
+                provider = new RandomLevelGenerator(this, region.getGeneratedBlocks());
+                provider.setSeed(region.getSeed());
+                provider.prepareLazy();
+            }
+
+            levelActors.configureMainActor(region.getCamPos(), region.getCamFront(), region.getCamUp(), region.getCamRight());
+            seedPrefetch();
+
+            if (region.getVersion() < 3 || region.getChunkSize() != Chunk.CHUNK_SIZE) {
+                // chunk ids in the file don't match the current grid, load everything
+                pageInAll();
+                Set<Integer> ids = new TreeSet<>();
+                for (Chunk chunk : solidChunks.getChunkList()) {
+                    ids.add(chunk.getId());
+                }
+                for (Chunk chunk : fluidChunks.getChunkList()) {
+                    ids.add(chunk.getId());
+                }
+                keepChunks(ids);
+            } else {
+                Set<Integer> ids = new TreeSet<>(region.pendingIds(true));
+                ids.addAll(region.pendingIds(false));
+                keepChunks(ids);
+                // only chunks around the camera are loaded, the rest is paged in on demand
+                Chunk.determineVisible(vChnkIdQueue, iChnkIdQueue, region.getCamPos());
+                pageIn(vChnkIdQueue);
+            }
+            success = true;
+        }
+
+        levelActors.unfreeze();
+        progress = 100.0f;
+        working = false;
+        gameObject.getMusicPlayer().stop();
+        return success;
+    }
+
+    private boolean storeLevelToRegion(File file) {
+        working = true;
+        boolean success = false;
+        if (progress > 0.0f) {
+            return false;
+        }
+        progress = 0.0f;
+        levelActors.freeze();
+        gameObject.getMusicPlayer().play(AudioFile.INTERMISSION, true);
+
+        Camera camera = levelActors.mainCamera();
+        if (camera != null) {
+            pageInAll();
+            pageInCached();
+            progress = 50.0f;
+            // unedited chunks of lazy random level are not written (they're generated from the seed)
+            success = RegionFile.write(file, camera, solidChunks, fluidChunks, provider, editedIds, COMPRESS_FILES);
+        }
+
+        levelActors.unfreeze();
+        progress = 100.0f;
+        working = false;
+        gameObject.getMusicPlayer().stop();
+        return success;
+    }
+
     public boolean saveLevelToFile(String filename) {
         if (working) {
             return false;
         }
-        boolean success = false;
         if (!filename.endsWith(".dat")) {
             filename += ".dat";
         }
-        BufferedOutputStream bos = null;
         File file = new File(filename);
-        if (file.exists()) {
-            file.delete();
-        }
-        success = storeLevelToBuffer(); // saves level to bufferVertices first
-        try {
-            bos = new BufferedOutputStream(new FileOutputStream(file));
-            bos.write(buffer, 0, pos); // save bufferVertices to file at pos mark
-        } catch (FileNotFoundException ex) {
-            DSLogger.reportFatalError(ex.getMessage(), ex);
-        } catch (IOException ex) {
-            DSLogger.reportFatalError(ex.getMessage(), ex);
-        }
-        if (bos != null) {
-            try {
-                bos.close();
-            } catch (IOException ex) {
-                DSLogger.reportFatalError(ex.getMessage(), ex);
-            }
-        }
-        return success;
+        return storeLevelToRegion(file);
     }
 
     public boolean loadLevelFromFile(String filename) {
@@ -616,6 +876,10 @@ public class LevelContainer implements GravityEnviroment {
         if (!file.exists()) {
             return false; // this prevents further fail
         }
+        if (RegionFile.isRegionFile(file)) {
+            return loadLevelFromRegion(file);
+        }
+        // old "DS" format is converted while loaded (next save writes region file)
         try {
             bis = new BufferedInputStream(new FileInputStream(file));
             bis.read(buffer);
@@ -645,13 +909,13 @@ public class LevelContainer implements GravityEnviroment {
         boolean yea = false;
         Vector3f obsCamPos = levelActors.getPlayer().getCamera().getPos();
 
-        Vector3f obsCamPosAlign = new Vector3f(
+        long obsCamKey = VoxelMap.key(
                 Math.round(obsCamPos.x + 0.5f) & 0xFFFFFFFE,
                 Math.round(obsCamPos.y + 0.5f) & 0xFFFFFFFE,
                 Math.round(obsCamPos.z + 0.5f) & 0xFFFFFFFE
         );
 
-        yea = ALL_FLUID_MAP.containsKey(obsCamPosAlign);
+        yea = ALL_FLUID_MAP.containsKey(obsCamKey);
 
         if (!yea) {
             for (int j = 0; j <= 5; j++) {
@@ -677,44 +941,21 @@ public class LevelContainer implements GravityEnviroment {
         return yea;
     }
 
+    // sweep the box from critter position to its predictor
+    private boolean sweepToPredictor(Critter critter, float halfWidth, float halfHeight, float halfDepth) {
+        Vector3f pos = critter.getPos();
+        Vector3f pred = critter.getPredictor();
+        return voxelSweep.sweep(ALL_SOLID_MAP, pos.x, pos.y, pos.z, halfWidth, halfHeight, halfDepth,
+                pred.x - pos.x, pred.y - pos.y, pred.z - pos.z);
+    }
+
     public boolean hasCollisionWithEnvironment(Critter critter) {
         boolean coll;
         coll = (!SKYBOX.containsInsideExactly(critter.getPredictor()));
 
         if (!coll) {
-            final float stepAmount = 0.05f;
-
-            Vector3f predAlign = new Vector3f(
-                    Math.round(critter.getPredictor().x + 0.5f) & 0xFFFFFFFE,
-                    Math.round(critter.getPredictor().y + 0.5f) & 0xFFFFFFFE,
-                    Math.round(critter.getPredictor().z + 0.5f) & 0xFFFFFFFE
-            );
-
-            coll = ALL_SOLID_MAP.containsKey(predAlign);
-
-            if (!coll) {
-                OUTER:
-                for (int j = 0; j <= 5; j++) {
-                    for (float amount = 0.0f; amount <= Game.AMOUNT * Game.TPS; amount += stepAmount) {
-                        Vector3f adjPos = Block.getAdjacentPos(critter.getPredictor(), j, amount);
-                        Vector3f adjAlign = new Vector3f(
-                                Math.round(adjPos.x + 0.5f) & 0xFFFFFFFE,
-                                Math.round(adjPos.y + 0.5f) & 0xFFFFFFFE,
-                                Math.round(adjPos.z + 0.5f) & 0xFFFFFFFE
-                        );
-
-                        boolean solidOnLoc = ALL_SOLID_MAP.containsKey(adjAlign);
-
-                        if (solidOnLoc) {
-                            coll = Block.containsInsideEqually(adjAlign, 2.1f, 2.1f, 2.1f, critter.getPredictor())
-                                    || Model.intersectsEqually(adjAlign, 2.1f, 2.1f, 2.1f, critter.getPredictor(), 0.075f, 0.075f, 0.075f);
-                            if (coll) {
-                                break OUTER;
-                            }
-                        }
-                    }
-                }
-            }
+            final float half = OBSERVER_SIZE / 2.0f + COLLISION_SKIN;
+            coll = sweepToPredictor(critter, half, half, half);
         }
 
         return coll;
@@ -727,45 +968,53 @@ public class LevelContainer implements GravityEnviroment {
                         livingCritter.getModel().getHeight(), livingCritter.getModel().getDepth()));
 
         if (!coll) {
-            final float stepAmount = 0.05f;
-
-            Vector3f predAlign = new Vector3f(
-                    Math.round(livingCritter.getPredictor().x + 0.5f) & 0xFFFFFFFE,
-                    Math.round(livingCritter.getPredictor().y + 0.5f) & 0xFFFFFFFE,
-                    Math.round(livingCritter.getPredictor().z + 0.5f) & 0xFFFFFFFE
-            );
-
-            coll = ALL_SOLID_MAP.containsKey(predAlign);
-
-            if (!coll) {
-                OUTER:
-                for (int j = 0; j <= 5; j++) {
-                    for (float amount = 0.0f; amount <= Game.AMOUNT * Game.TPS; amount += stepAmount) {
-                        Vector3f adjPos = Block.getAdjacentPos(livingCritter.getPredictor(), j, amount);
-                        Vector3f adjAlign = new Vector3f(
-                                Math.round(adjPos.x + 0.5f) & 0xFFFFFFFE,
-                                Math.round(adjPos.y + 0.5f) & 0xFFFFFFFE,
-                                Math.round(adjPos.z + 0.5f) & 0xFFFFFFFE
-                        );
-
-                        boolean solidOnLoc = ALL_SOLID_MAP.containsKey(adjAlign);
-
-                        if (solidOnLoc) {
-                            coll = Block.containsInsideEqually(adjAlign, 2.1f, 2.1f, 2.1f, livingCritter.getPredictor())
-                                    || livingCritter.getModel().intersectsEqually(adjAlign, 2.1f, 2.1f, 2.1f);
-
-                            if (coll) {
-                                break OUTER;
-                            }
-                        }
-                    }
-                }
-            }
+            Model model = livingCritter.getModel();
+            coll = sweepToPredictor(livingCritter, model.getWidth() / 2.0f + COLLISION_SKIN,
+                    model.getHeight() / 2.0f + COLLISION_SKIN, model.getDepth() / 2.0f + COLLISION_SKIN);
         }
 
         return coll;
     }
 
+    /**
+     * Move critter towards its predictor sliding along solid blocks. Box is
+     * swept against the blocks, on hit only motion along the hit face remains.
+     *
+     * @param critter critter (observer)
+     * @return was movement reduced by collision
+     */
+    public boolean moveWithCollision(Critter critter) {
+        final float half = OBSERVER_SIZE / 2.0f + COLLISION_SKIN;
+        displacement.set(critter.getPredictor()).sub(critter.getPos());
+        boolean coll = voxelSweep.slide(ALL_SOLID_MAP, critter.getPos(), half, half, half, displacement);
+        endPos.set(critter.getPos()).add(displacement);
+        if (!SKYBOX.containsInsideExactly(endPos)) {
+            return true;
+        }
+        critter.moveBy(displacement);
+        return coll;
+    }
+
+    /**
+     * Move model critter towards its predictor sliding along solid blocks.
+     *
+     * @param livingCritter model critter (player or npc)
+     * @return was movement reduced by collision
+     */
+    public boolean moveWithCollision(ModelCritter livingCritter) {
+        Model model = livingCritter.getModel();
+        displacement.set(livingCritter.getPredictor()).sub(livingCritter.getPos());
+        boolean coll = voxelSweep.slide(ALL_SOLID_MAP, livingCritter.getPos(), model.getWidth() / 2.0f + COLLISION_SKIN,
+                model.getHeight() / 2.0f + COLLISION_SKIN, model.getDepth() / 2.0f + COLLISION_SKIN, displacement);
+        endPos.set(livingCritter.getPos()).add(displacement);
+        if (!SKYBOX.containsInsideExactly(endPos)
+                || !SKYBOX.intersectsExactly(endPos, model.getWidth(), model.getHeight(), model.getDepth())) {
+            return true;
+        }
+        livingCritter.moveBy(displacement);
+        return coll;
+    }
+
     // thats what gravity does, object fells down if they don't have support below it (sky or other object)
     @Override
     public void gravityDo(float deltaTime) {
@@ -793,32 +1042,115 @@ public class LevelContainer implements GravityEnviroment {
     // method for determining visible chunks
     public void determineVisible() {
         Camera mainCamera = levelActors.mainCamera();
-        Chunk.determineVisible(vChnkIdQueue, iChnkIdQueue, mainCamera.getPos());
+        prefetch(mainCamera.getPos());
+        // loaded chunks (not compacted already) are candidates for eviction
+        Set<Integer> loadedIds = new HashSet<>();
+        for (Chunk chunk : solidChunks.getChunkList()) {
+            if (!chunk.isCompact()) {
+                loadedIds.add(chunk.getId());
+            }
+        }
+        for (Chunk chunk : fluidChunks.getChunkList()) {
+            if (!chunk.isCompact()) {
+                loadedIds.add(chunk.getId());
+            }
+        }
+        Chunk.determineVisible(vChnkIdQueue, iChnkIdQueue, mainCamera.getPos(), loadedIds);
+    }
+
+    // camera was placed (level load or spawn), velocity is measured from its new position
+    private void seedPrefetch() {
+        lastCamPos.set(levelActors.mainCamera().getPos());
+        camVelocity.zero();
+        skipPrefetch = true;
+    }
+
+    // start reading cached chunk which camera is heading to (before it becomes visible)
+    private void prefetch(Vector3f camPos) {
+        if (skipPrefetch) {
+            lastCamPos.set(camPos);
+            skipPrefetch = false;
+            return;
+        }
+        camPos.sub(lastCamPos, camVelocity);
+        lastCamPos.set(camPos);
+        if (camVelocity.lengthSquared() == 0.0f) {
+            return;
+        }
+        camVelocity.mul(PREFETCH_STEPS, predictedPos).add(camPos);
+        int predictedId = Chunk.chunkFunc(predictedPos);
+        if (predictedId != Chunk.chunkFunc(camPos)) {
+            cacheModule.prefetch(predictedId, true);
+            cacheModule.prefetch(predictedId, false);
+        }
     }
 
     // method for saving invisible chunks / loading visible chunks
     public boolean chunkOperations() {
         boolean changed = false;
         if (!working) {
-            Integer visibleId = vChnkIdQueue.peek();
-            if (visibleId != null) {
-                if (CacheModule.isCached(visibleId, true)) {
-                    cacheModule.loadFromDisk(visibleId, true);
+            // one visible chunk per call (current one first)
+            for (int visibleId : vChnkIdQueue) {
+                if (region != null && (region.isPending(visibleId, true) || region.isPending(visibleId, false))
+                        && pageIn(Collections.singleton(visibleId))) {
+                    changed = true;
+                }
+
+                if (provider != null && provider.generateChunk(visibleId)) {
                     changed = true;
                 }
 
+                if (CacheModule.isCached(visibleId, true)) {
+                    changed |= cacheModule.loadFromDisk(visibleId, true);
+                }
+
                 if (CacheModule.isCached(visibleId, false)) {
-                    cacheModule.loadFromDisk(visibleId, false);
+                    changed |= cacheModule.loadFromDisk(visibleId, false);
+                }
+
+                Chunk solidChunk = solidChunks.getChunk(visibleId);
+                if (solidChunk != null && solidChunk.isCompact()) {
+                    solidChunk.materialize();
+                    changed = true;
+                }
+
+                Chunk fluidChunk = fluidChunks.getChunk(visibleId);
+                if (fluidChunk != null && fluidChunk.isCompact()) {
+                    fluidChunk.materialize();
                     changed = true;
                 }
+
+                if (changed) {
+                    break;
+                }
             }
             //----------------------------------------------------------
             Integer invisibleId = iChnkIdQueue.peek();
             if (invisibleId != null) {
-                cacheModule.saveToDisk(invisibleId, true);
+                if (provider != null && provider.isGenerated(invisibleId) && !editedIds.contains(invisibleId)) {
+                    // unedited chunk is generated again, no need to keep it
+                    dropChunk(solidChunks, invisibleId);
+                    dropChunk(fluidChunks, invisibleId);
+                    provider.forget(invisibleId);
+                    changed = true;
+                } else if (COMPACT_CHUNKS) {
+                    Chunk solidChunk = solidChunks.getChunk(invisibleId);
+                    if (solidChunk != null && !solidChunk.isCompact()) {
+                        solidChunk.compact();
+                        changed = true;
+                    }
 
-                cacheModule.saveToDisk(invisibleId, false);
-                changed = true;
+                    Chunk fluidChunk = fluidChunks.getChunk(invisibleId);
+                    if (fluidChunk != null && !fluidChunk.isCompact()) {
+                        fluidChunk.compact();
+                        changed = true;
+                    }
+                } else {
+                    cacheModule.saveToDisk(invisibleId, true);
+
+                    cacheModule.saveToDisk(invisibleId, false);
+                    changed = true;
+                }
             }
         }
 
@@ -840,7 +1172,10 @@ public class LevelContainer implements GravityEnviroment {
 
     public void optimize() {
         if (!working) {
-            solidChunks.optimize(vChnkIdQueue);
+            // greedy meshes are built per chunk, so solid tuples aren't needed
+            if (!GREEDY_MESHING) {
+                solidChunks.optimize(vChnkIdQueue);
+            }
             fluidChunks.optimize(vChnkIdQueue);
         }
     }
@@ -863,21 +1198,26 @@ public class LevelContainer implements GravityEnviroment {
         }
         SUN.render(LIGHT_SOURCES, ShaderProgram.getMainShader());
 
-        Predicate<Block> predicate = new Predicate<Block>() {
-            @Override
-            public boolean test(Block t) {
-                return (t.canBeSeenBy(mainCamera.getFront(), mainCamera.getPos())
-                        && mainCamera.doesSee(t));
-            }
-        };
+        // frustum planes are extracted once per frame
+        Frustum frustum = mainCamera.updateFrustum();
+        // so are the occluders (nearest solid blocks)
+        OcclusionCuller occlusion = null;
+        if (OCCLUSION_CULLING) {
+            occlusionCuller.rasterize(frustum.getProjViewMatrix(), mainCamera.getPos(), ALL_SOLID_MAP);
+            occlusion = occlusionCuller;
+        }
 
         // only visible & uncached are in chunk list      
-        solidChunks.renderIf(vChnkIdQueue, ShaderProgram.getMainShader(), LIGHT_SOURCES, predicate);
+        if (GREEDY_MESHING) {
+            solidChunks.renderGreedy(vChnkIdQueue, ShaderProgram.getMainShader(), LIGHT_SOURCES, frustum, occlusion);
+        } else {
+            solidChunks.renderIf(vChnkIdQueue, ShaderProgram.getMainShader(), LIGHT_SOURCES, frustum, occlusion);
+        }
 
         // prepare alters tex coords based on whether or not camera is submerged in fluid
         fluidChunks.prepare(cameraInFluid);
         // only visible & uncached are in chunk list 
-        fluidChunks.renderIf(vChnkIdQueue, ShaderProgram.getMainShader(), LIGHT_SOURCES, predicate);
+        fluidChunks.renderIf(vChnkIdQueue, ShaderProgram.getMainShader(), LIGHT_SOURCES, frustum, occlusion);
 
         Block editorNew = Editor.getSelectedNew();
         if (editorNew != null) {
@@ -913,14 +1253,6 @@ public class LevelContainer implements GravityEnviroment {
 
     // -------------------------------------------------------------------------
     // -------------------------------------------------------------------------
-    public boolean maxSolidReached() {
-        return cacheModule.totalSize(true) == MAX_NUM_OF_SOLID_BLOCKS;
-    }
-
-    public boolean maxFluidReached() {
-        return cacheModule.totalSize(false) == MAX_NUM_OF_FLUID_BLOCKS;
-    }
-
     public void incProgress(float increment) {
         if (progress < 100.0f) {
             progress += increment;
@@ -943,6 +1275,10 @@ public class LevelContainer implements GravityEnviroment {
         return working || progress > 0.0f;
     }
 
+    public OcclusionCuller getOcclusionCuller() {
+        return occlusionCuller;
+    }
+
     public Chunks getSolidChunks() {
         return solidChunks;
     }
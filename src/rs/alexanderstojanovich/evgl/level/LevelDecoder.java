@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.level;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.joml.Vector3f;
+import rs.alexanderstojanovich.evgl.main.GameObject;
+import rs.alexanderstojanovich.evgl.models.Block;
+import rs.alexanderstojanovich.evgl.models.Chunk;
+import rs.alexanderstojanovich.evgl.models.Chunks;
+import rs.alexanderstojanovich.evgl.util.DSLogger;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
+
+/**
+ * Decodes block records (29 bytes each) partitioned by chunk. Records of each
+ * chunk are decoded and built into the chunk tuples in parallel on ForkJoin
+ * pool. Result is the same as serial load - blocks keep the record order
+ * within the chunk and chunks are merged in chunk id order. Closing the window
+ * cancels decoding (checked per chunk batch), nothing is added to the chunks
+ * then.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class LevelDecoder {
+
+    public static final int RECORD_SIZE = 29;
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+    private static float readFloat(byte[] buffer, int offset) {
+        int bits = (buffer[offset + 3] & 0xFF) << 24 | (buffer[offset + 2] & 0xFF) << 16
+                | (buffer[offset + 1] & 0xFF) << 8 | (buffer[offset] & 0xFF);
+        return Float.intBitsToFloat(bits);
+    }
+
+    private static Block decodeRecord(byte[] buffer, int offset, boolean solid) {
+        String texName = new String(buffer, offset, 5, StandardCharsets.ISO_8859_1);
+        Vector3f pos = new Vector3f(readFloat(buffer, offset + 5), readFloat(buffer, offset + 9), readFloat(buffer, offset + 13));
+        Vector3f color = new Vector3f(readFloat(buffer, offset + 17), readFloat(buffer, offset + 21), readFloat(buffer, offset + 25));
+        return new Block(texName, pos, color, solid);
+    }
+
+    /**
+     * Decode block records serially (used for small inputs, like chunk
+     * cache).
+     *
+     * @param buffer buffer with the records
+     * @param offset offset of the first record
+     * @param num number of records
+     * @param solid are blocks solid
+     * @return decoded blocks
+     */
+    public static Block[] decodeBlocks(byte[] buffer, int offset, int num, boolean solid) {
+        Block[] blocks = new Block[num];
+        for (int i = 0; i < num; i++) {
+            blocks[i] = decodeRecord(buffer, offset + i * RECORD_SIZE, solid);
+        }
+        return blocks;
+    }
+
+    // are all the tasks done (false if failed or window is closing)
+    private static <T> boolean invokeAll(List<Callable<T>> tasks) {
+        try {
+            for (Future<T> future : POOL.invokeAll(tasks)) {
+                future.get();
+            }
+            return !GameObject.MY_WINDOW.shouldClose();
+        } catch (InterruptedException | ExecutionException ex) {
+            DSLogger.reportError(ex.getMessage(), ex);
+            return false;
+        }
+    }
+
+    /**
+     * Decode block records and add the blocks to the chunks. Chunks are
+     * expected to be empty (level load), otherwise serial bulk insert is used.
+     *
+     * @param buffer buffer with the records
+     * @param offset offset of the first record
+     * @param num number of records
+     * @param chunks solid or fluid chunks
+     * @param solid are blocks solid
+     */
+    public static void decode(byte[] buffer, int offset, int num, Chunks chunks, boolean solid) {
+        if (num <= 0) {
+            return;
+        }
+        // 1. partition record indices by chunk id (sorted by chunk id, then index)
+        long[] order = new long[num];
+        for (int i = 0; i < num; i++) {
+            int recOff = offset + i * RECORD_SIZE;
+            int chunkId = Chunk.chunkFunc(readFloat(buffer, recOff + 5), readFloat(buffer, recOff + 13));
+            order[i] = ((long) chunkId << 32) | i;
+        }
+        Arrays.sort(order);
+
+        List<int[]> ranges = new ArrayList<>(); // [from, to) in the order array
+        int from = 0;
+        for (int i = 1; i <= num; i++) {
+            if (i == num || (order[i] >> 32) != (order[from] >> 32)) {
+                ranges.add(new int[]{from, i});
+                from = i;
+            }
+        }
+
+        // 2. decode each partition in parallel
+        final Block[] blocks = new Block[num];
+        List<Callable<Void>> decodeTasks = new ArrayList<>(ranges.size());
+        for (final int[] range : ranges) {
+            decodeTasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    if (GameObject.MY_WINDOW.shouldClose()) {
+                        return null;
+                    }
+                    for (int i = range[0]; i < range[1]; i++) {
+                        int index = (int) order[i];
+                        blocks[i] = decodeRecord(buffer, offset + index * RECORD_SIZE, solid);
+                    }
+                    return null;
+                }
+            });
+        }
+        if (!invokeAll(decodeTasks)) {
+            return;
+        }
+
+        List<Block> blockList = Arrays.asList(blocks);
+        if (!chunks.getChunkList().isEmpty()) {
+            chunks.addBlocks(blockList, true);
+            return;
+        }
+
+        // 3. position maps & lights (not thread safe, done serially)
+        LevelContainer.putBlocks(blockList);
+        if (solid) {
+            for (Block block : blocks) {
+                if (block.getTexName().equals("reflc")) {
+                    LightSource lightSource = new LightSource(block.getPos(), block.getPrimaryColor(), 32.0f);
+                    if (!LevelContainer.LIGHT_SOURCES.getLightSrcList().contains(lightSource)) {
+                        LevelContainer.LIGHT_SOURCES.getLightSrcList().add(lightSource);
+                    }
+                }
+            }
+        }
+
+        // 4. build chunk tuples in parallel (position map is only read)
+        final VoxelMap map = solid ? LevelContainer.ALL_SOLID_MAP : LevelContainer.ALL_FLUID_MAP;
+        final Chunk[] built = new Chunk[ranges.size()];
+        List<Callable<Void>> buildTasks = new ArrayList<>(ranges.size());
+        for (int r = 0; r < ranges.size(); r++) {
+            final int[] range = ranges.get(r);
+            final int slot = r;
+            buildTasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    if (GameObject.MY_WINDOW.shouldClose()) {
+                        return null;
+                    }
+                    Chunk chunk = new Chunk((int) (order[range[0]] >> 32), solid);
+                    for (int i = range[0]; i < range[1]; i++) {
+                        Block block = blocks[i];
+                        int value = map.get(VoxelMap.key(block.getPos()));
+                        if (value != VoxelMap.NONE) {
+                            block.setFaceBits(~VoxelMap.neighborBits(value) & 63);
+                        }
+                        chunk.appendBlock(block);
+                    }
+                    chunk.sortBlocks();
+                    built[slot] = chunk;
+                    return null;
+                }
+            });
+        }
+        if (!invokeAll(buildTasks)) {
+            return;
+        }
+
+        // 5. merge (already in chunk id order)
+        for (Chunk chunk : built) {
+            chunks.addChunk(chunk);
+        }
+    }
+
+}
@@ -16,15 +16,24 @@
  */
 package rs.alexanderstojanovich.evgl.level;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import org.joml.Random;
 import org.joml.Vector3f;
 import rs.alexanderstojanovich.evgl.models.Block;
 import rs.alexanderstojanovich.evgl.models.Chunk;
 import rs.alexanderstojanovich.evgl.util.DSLogger;
 import rs.alexanderstojanovich.evgl.util.MathUtils;
-import rs.alexanderstojanovich.evgl.util.Pair;
+import rs.alexanderstojanovich.evgl.util.OccupancyGrid;
 import rs.alexanderstojanovich.evgl.util.Vector3fColors;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
 
 /**
  *
@@ -42,7 +51,19 @@ public class RandomLevelGenerator {
 
     protected long seed = 0x123456789L;
     protected Random random = new Random(seed);
-    public static final int RAND_MAX_ATTEMPTS = 1000;
+    // rows (of x) whose noise is computed in parallel before merging
+    public static final int NOISE_BAND_ROWS = 16;
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+    // lazy generation (chunk provider) terrain extent & generated chunks
+    private int lazyMin = 0;
+    private int lazyMax = -1;
+    private final Set<Integer> generatedIds = new HashSet<>();
+
+    // occupancy of the random part region (random part & fluid series)
+    private OccupancyGrid occupancy = null;
+    // adjacent position (scratch, free faces are looked up per placed block)
+    private final Vector3f adjPos = new Vector3f();
 
     private final LevelContainer levelContainer;
 
@@ -62,7 +83,11 @@ public class RandomLevelGenerator {
     }
 
     private String randomSolidTexture(boolean includingLight) {
-        int randTexture = random.nextInt(includingLight ? 4 : 3);
+        return randomSolidTexture(random, includingLight);
+    }
+
+    private String randomSolidTexture(Random rnd, boolean includingLight) {
+        int randTexture = rnd.nextInt(includingLight ? 4 : 3);
         switch (randTexture) {
             case 0:
                 return "stone";
@@ -90,27 +115,68 @@ public class RandomLevelGenerator {
                 || levelContainer.getMyWindow().shouldClose();
     }
 
-    private Block generateRandomSolidBlock(int posMin, int posMax) {
-        float posx;
-        float posy;
-        float posz;
-        Vector3f randPos;
-        int randomAttempts = 0;
-        do {
-            posx = (random.nextInt(posMax - posMin + 1) + posMin) & 0xFFFFFFFE;
-            posy = (random.nextInt(posMax - posMin + 1) + posMin) & 0xFFFFFFFE;
-            posz = (random.nextInt(posMax - posMin + 1) + posMin) & 0xFFFFFFFE;
-
-            randPos = new Vector3f(posx, posy, posz);
-            randomAttempts++;
-//            DSLogger.reportInfo("randomAttemps = " + randomAttempts, null);
-        } while (repeatCondition(randPos) && randomAttempts < RAND_MAX_ATTEMPTS && !levelContainer.getMyWindow().shouldClose());
-
-        if (randomAttempts == RAND_MAX_ATTEMPTS) {
+    /**
+     * Mark cells of the region occupied by blocks or the player, so free
+     * cells can be sampled without retries.
+     *
+     * @param posMin region minimum (even)
+     * @param posMax region maximum (even)
+     */
+    private void buildOccupancy(int posMin, int posMax) {
+        occupancy = new OccupancyGrid(posMin, posMax);
+        Vector3f temp = new Vector3f();
+        for (int x = posMin; x <= posMax; x += 2) {
+            for (int y = posMin; y <= posMax; y += 2) {
+                for (int z = posMin; z <= posMax; z += 2) {
+                    long key = VoxelMap.key(x, y, z);
+                    if (LevelContainer.ALL_SOLID_MAP.containsKey(key)
+                            || LevelContainer.ALL_FLUID_MAP.containsKey(key)
+                            || isPlayerAt(temp.set(x, y, z))) {
+                        occupancy.occupy(x, y, z);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isPlayerAt(Vector3f pos) {
+        return levelContainer.getLevelActors().getPlayer().getModel().containsInsideEqually(pos)
+                || levelContainer.getLevelActors().getPlayer().getCamera().getPos().equals(pos);
+    }
+
+    /**
+     * Bits of the free faces of the block position. Cells in the occupancy
+     * region are checked in the grid, which holds both solid & fluid blocks
+     * (so no block is placed into another one). Others are checked with the
+     * repeat condition. Without the grid it's block's own free faces.
+     *
+     * @param block block
+     * @return 6-bit free faces [LEFT, RIGHT, BOTTOM, TOP, BACK, FRONT]
+     */
+    private int freeFaceBits(Block block) {
+        if (occupancy == null) {
+            return block.getAdjacentFreeFaceBits();
+        }
+        int bits = 0;
+        for (int j = Block.LEFT; j <= Block.FRONT; j++) {
+            block.getAdjacentPos(j, adjPos);
+            int x = Math.round(adjPos.x);
+            int y = Math.round(adjPos.y);
+            int z = Math.round(adjPos.z);
+            if (occupancy.contains(x, y, z) ? !occupancy.isOccupied(x, y, z) : !repeatCondition(adjPos)) {
+                bits |= 1 << j;
+            }
+        }
+        return bits;
+    }
+
+    private Block generateRandomSolidBlock() {
+        Vector3f pos = new Vector3f();
+        if (!occupancy.sampleFree(random, pos)) {
             return null;
         }
+        occupancy.occupy(pos);
 
-        Vector3f pos = randPos;
         // color chance
         Vector3f color = new Vector3f(1.0f, 1.0f, 1.0f);
         if (random.nextFloat() >= 0.95f) {
@@ -129,27 +195,13 @@ public class RandomLevelGenerator {
         return solidBlock;
     }
 
-    private Block generateRandomFluidBlock(int posMin, int posMax) {
-        float posx;
-        float posy;
-        float posz;
-        Vector3f randPos;
-        int randomAttempts = 0;
-        do {
-            posx = (random.nextInt(posMax - posMin + 1) + posMin) & 0xFFFFFFFE;
-            posy = (random.nextInt(posMax - posMin + 1) + posMin) & 0xFFFFFFFE;
-            posz = (random.nextInt(posMax - posMin + 1) + posMin) & 0xFFFFFFFE;
-
-            randPos = new Vector3f(posx, posy, posz);
-            randomAttempts++;
-//            DSLogger.reportInfo("randomAttemps = " + randomAttempts, null);
-        } while (repeatCondition(randPos) && randomAttempts < RAND_MAX_ATTEMPTS && !levelContainer.getMyWindow().shouldClose());
-
-        if (randomAttempts == RAND_MAX_ATTEMPTS) {
+    private Block generateRandomFluidBlock() {
+        Vector3f pos = new Vector3f();
+        if (!occupancy.sampleFree(random, pos)) {
             return null;
         }
+        occupancy.occupy(pos);
 
-        Vector3f pos = randPos;
         Vector3f color = new Vector3f(1.0f, 1.0f, 1.0f);
         if (random.nextFloat() >= 0.75f) {
             Vector3f temp = new Vector3f();
@@ -162,45 +214,12 @@ public class RandomLevelGenerator {
     }
 
     private Block generateRandomSolidBlockAdjacent(Block block) {
-        List<Integer> possibleFaces = block.getAdjacentFreeFaceNumbers();
-        if (possibleFaces.isEmpty()) {
-            return null;
-        }
-        int randFace;
-        Vector3f adjPos;
-        int randomAttempts = 0;
-        do {
-            randFace = possibleFaces.get(random.nextInt(possibleFaces.size()));
-            adjPos = new Vector3f(block.getPos().x, block.getPos().y, block.getPos().z);
-            switch (randFace) {
-                case Block.LEFT:
-                    adjPos.x -= block.getWidth() / 2.0f + block.getWidth() / 2.0f;
-                    break;
-                case Block.RIGHT:
-                    adjPos.x += block.getWidth() / 2.0f + block.getWidth() / 2.0f;
-                    break;
-                case Block.BOTTOM:
-                    adjPos.y -= block.getHeight() / 2.0f + block.getHeight() / 2.0f;
-                    break;
-                case Block.TOP:
-                    adjPos.y += block.getHeight() / 2.0f + block.getHeight() / 2.0f;
-                    break;
-                case Block.BACK:
-                    adjPos.z -= block.getDepth() / 2.0f + block.getDepth() / 2.0f;
-                    break;
-                case Block.FRONT:
-                    adjPos.z += block.getDepth() / 2.0f + block.getDepth() / 2.0f;
-                    break;
-                default:
-                    break;
-            }
-            randomAttempts++;
-//            DSLogger.reportInfo("randomAttemps = " + randomAttempts, null);
-        } while (repeatCondition(adjPos) && randomAttempts < RAND_MAX_ATTEMPTS && !levelContainer.getMyWindow().shouldClose());
-
-        if (randomAttempts == RAND_MAX_ATTEMPTS) {
+        int freeBits = freeFaceBits(block);
+        if (freeBits == 0) {
             return null;
         }
+        Vector3f adjPos = block.getAdjacentPos(OccupancyGrid.randomBit(random, freeBits));
+        occupancy.occupy(adjPos);
 
         Vector3f color = new Vector3f(1.0f, 1.0f, 1.0f);
         if (random.nextFloat() >= 0.95f) {
@@ -220,45 +239,12 @@ public class RandomLevelGenerator {
     }
 
     private Block generateRandomFluidBlockAdjacent(Block block) {
-        List<Integer> possibleFaces = block.getAdjacentFreeFaceNumbers();
-        if (possibleFaces.isEmpty()) {
-            return null;
-        }
-        int randFace;
-        Vector3f adjPos;
-        int randomAttempts = 0;
-        do {
-            randFace = possibleFaces.get(random.nextInt(possibleFaces.size()));
-            adjPos = new Vector3f(block.getPos().x, block.getPos().y, block.getPos().z);
-            switch (randFace) {
-                case Block.LEFT:
-                    adjPos.x -= block.getWidth() / 2.0f + block.getWidth() / 2.0f;
-                    break;
-                case Block.RIGHT:
-                    adjPos.x += block.getWidth() / 2.0f + block.getWidth() / 2.0f;
-                    break;
-                case Block.BOTTOM:
-                    adjPos.y -= block.getHeight() / 2.0f + block.getHeight() / 2.0f;
-                    break;
-                case Block.TOP:
-                    adjPos.y += block.getHeight() / 2.0f + block.getHeight() / 2.0f;
-                    break;
-                case Block.BACK:
-                    adjPos.z -= block.getDepth() / 2.0f + block.getDepth() / 2.0f;
-                    break;
-                case Block.FRONT:
-                    adjPos.z += block.getDepth() / 2.0f + block.getDepth() / 2.0f;
-                    break;
-                default:
-                    break;
-            }
-            randomAttempts++;
-//            DSLogger.reportInfo("randomAttemps = " + randomAttempts, null);
-        } while (repeatCondition(adjPos) && randomAttempts < RAND_MAX_ATTEMPTS && !levelContainer.getMyWindow().shouldClose());
-
-        if (randomAttempts == RAND_MAX_ATTEMPTS) {
+        int freeBits = freeFaceBits(block);
+        if (freeBits == 0) {
             return null;
         }
+        Vector3f adjPos = block.getAdjacentPos(OccupancyGrid.randomBit(random, freeBits));
+        occupancy.occupy(adjPos);
 
         String adjTexture = "water";
         Vector3f color = new Vector3f(1.0f, 1.0f, 1.0f);
@@ -275,44 +261,148 @@ public class RandomLevelGenerator {
     //---------------------------------------------------------------------------------------------------------------------------
     //---------------------------------------------------------------------------------------------------------------------------
     //---------------------------------------------------------------------------------------------------------------------------
-    private void generateByNoise(int solidBlocks, int fluidBlocks, int totalAmount, int posMin, int posMax) {
+    /**
+     * Noise of one (x, z) column. Computed in parallel, it depends only on the
+     * coordinates (not on the level state).
+     */
+    private static class ColumnNoise {
+
+        final int x;
+        final int z;
+        int yMid;
+        int yTop;
+        int yBottom;
+        // noise3 values for y in [yMid, yTop] and [yBottom, yMid] (step 2)
+        float[] upper;
+        float[] lower;
+
+        ColumnNoise(int x, int z) {
+            this.x = x;
+            this.z = z;
+        }
+
+        // raw is noise2 of the column in [-1, 1] (all three heights are scaled from it)
+        void compute(float raw, int posMin, int posMax) {
+            yMid = Math.round(MathUtils.normalize(raw, posMin, posMax)) & 0xFFFFFFFE;
+            yTop = Math.round(MathUtils.normalize(raw, yMid, posMax)) & 0xFFFFFFFE;
+            yBottom = Math.round(MathUtils.normalize(raw, posMin, yMid)) & 0xFFFFFFFE;
+            upper = new float[Math.max(0, (yTop - yMid) / 2 + 1)];
+            MathUtils.noise3Grid(upper, 1, upper.length, 1, x, yMid, z, 2.0f, 16, 0.5f, 0.007f, yMid, yTop, 2.0f);
+            lower = new float[Math.max(0, (yMid - yBottom) / 2 + 1)];
+            MathUtils.noise3Grid(lower, 1, lower.length, 1, x, yBottom, z, 2.0f, 16, 0.5f, 0.007f, yMid, yTop, 2.0f);
+        }
+    }
+
+    /**
+     * Seed of the column derived from the level seed and column coordinates
+     * (SplitMix64 finalizer), so column doesn't depend on generation order.
+     *
+     * @param x column x
+     * @param z column z
+     * @return column seed
+     */
+    protected long columnSeed(int x, int z) {
+        long h = seed ^ (x * 0x9E3779B97F4A7C15L) ^ (z * 0xC2B2AE3D27D4EB4FL);
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    // compute noise of the columns [xFrom, xTo] x [zFrom, zTo] in parallel (one task per row)
+    // returns null if computation failed or was interrupted (generation must be aborted)
+    private List<ColumnNoise> computeBand(int xFrom, int xTo, final int zFrom, int zTo, final int posMin, final int posMax) {
+        final int rowLen = (zTo - zFrom) / 2 + 1;
+        final ColumnNoise[] columns = new ColumnNoise[((xTo - xFrom) / 2 + 1) * rowLen];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int x = xFrom; x <= xTo; x += 2) {
+            final int row = x;
+            final int offset = ((x - xFrom) / 2) * rowLen;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    float[] heights = new float[rowLen];
+                    MathUtils.noise2Tile(heights, 1, rowLen, row, zFrom, 2.0f, 16, 0.5f, 0.007f, -1.0f, 1.0f, 2.0f);
+                    for (int j = 0; j < rowLen; j++) {
+                        ColumnNoise column = new ColumnNoise(row, zFrom + 2 * j);
+                        column.compute(heights[j], posMin, posMax);
+                        columns[offset + j] = column;
+                    }
+                    return null;
+                }
+            });
+        }
+        try {
+            for (Future<Void> future : POOL.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            DSLogger.reportError("Noise computation interrupted!", ex);
+            return null;
+        } catch (ExecutionException ex) {
+            DSLogger.reportError(ex.getMessage(), ex.getCause());
+            return null;
+        }
+        return Arrays.asList(columns);
+    }
+
+    // returns false if generation was aborted
+    private boolean generateByNoise(int solidBlocks, int fluidBlocks, int totalAmount, int posMin, int posMax) {
 //        DSLogger.reportInfo("By Noise: solidBlks = " + solidBlocks + ", fluidBlks = " + fluidBlocks, null);
+        // noise fields are computed in parallel band by band, then merged
+        // serially in (x, z) order, each column uses its own random (seeded
+        // from level seed and coordinates) so level doesn't depend on thread count.
+        // blocks are put in position maps immediately (merge relies on them)
+        // and added to the chunks in bulk at the end
+        List<Block> solidList = new ArrayList<>();
+        List<Block> fluidList = new ArrayList<>();
+        boolean aborted = false;
         // make "stone" terrain
         noiseMain:
-        for (int x = posMin; x <= posMax; x += 2) {
-            for (int z = posMin; z <= posMax; z += 2) {
+        for (int xBand = posMin; xBand <= posMax; xBand += 2 * NOISE_BAND_ROWS) {
+            if (levelContainer.getMyWindow().shouldClose()) {
+                break;
+            }
+            int xBandEnd = Math.min(xBand + 2 * (NOISE_BAND_ROWS - 1), posMax);
+            List<ColumnNoise> band = computeBand(xBand, xBandEnd, posMin, posMax, posMin, posMax);
+            if (band == null) {
+                aborted = true;
+                break;
+            }
+            for (ColumnNoise column : band) {
                 if (solidBlocks == 0 && fluidBlocks == 0) {
                     break noiseMain;
                 }
 
-                int yMid = Math.round(MathUtils.noise2(16, x, z, 0.5f, 0.007f, posMin, posMax, 2.0f)) & 0xFFFFFFFE;
-                int yTop = Math.round(MathUtils.noise2(16, x, z, 0.5f, 0.007f, yMid, posMax, 2.0f)) & 0xFFFFFFFE;
-                int yBottom = Math.round(MathUtils.noise2(16, x, z, 0.5f, 0.007f, posMin, yMid, 2.0f)) & 0xFFFFFFFE;
+                final int x = column.x;
+                final int z = column.z;
+                final Random colRandom = new Random(columnSeed(x, z));
 
                 noise1:
-                for (int y = yMid; y <= yTop; y += 2) {
-                    Vector3f pos = new Vector3f(x, y, z);
+                for (int i = 0; i < column.upper.length; i++) {
+                    Vector3f pos = new Vector3f(x, column.yMid + 2 * i, z);
                     if (repeatCondition(pos)) {
                         continue;
                     }
-                    float value = MathUtils.noise3(16, x, y, z, 0.5f, 0.007f, yMid, yTop, 2.0f);
+                    float value = column.upper[i];
                     if (solidBlocks > 0 && value >= 0.0f) {
                         // color chance
                         Vector3f color = new Vector3f(1.0f, 1.0f, 1.0f);
-                        if (random.nextFloat() >= 0.95f) {
+                        if (colRandom.nextFloat() >= 0.95f) {
                             Vector3f tempc = new Vector3f();
-                            color = color.mul(random.nextFloat(), random.nextFloat(), random.nextFloat(), tempc);
+                            color = color.mul(colRandom.nextFloat(), colRandom.nextFloat(), colRandom.nextFloat(), tempc);
                         }
 
                         if (solidBlocks > 0) {
                             String tex = "stone";
 
-                            if (random.nextFloat() >= 0.95f) {
-                                tex = randomSolidTexture(false);
+                            if (colRandom.nextFloat() >= 0.95f) {
+                                tex = randomSolidTexture(colRandom, false);
                             }
 
                             Block solidBlock = new Block(tex, pos, color, true);
-                            levelContainer.getSolidChunks().addBlock(solidBlock, true);
+                            LevelContainer.putBlock(solidBlock);
+                            solidList.add(solidBlock);
                             levelContainer.incProgress(100.0f / (float) totalAmount);
                             solidBlocks--;
                         }
@@ -324,31 +414,23 @@ public class RandomLevelGenerator {
                 }
 
                 noise2:
-                for (int y = yBottom; y <= yMid; y += 2) {
-                    Vector3f pos = new Vector3f(x, y, z);
+                for (int i = 0; i < column.lower.length; i++) {
+                    Vector3f pos = new Vector3f(x, column.yBottom + 2 * i, z);
                     if (repeatCondition(pos)) {
                         continue;
                     }
-                    float value = MathUtils.noise3(16, x, y, z, 0.5f, 0.007f, yMid, yTop, 2.0f);
+                    float value = column.lower[i];
                     if (fluidBlocks > 0 && value < 0.0f) {
                         // color chance
                         Vector3f color = new Vector3f(1.0f, 1.0f, 1.0f);
-                        if (random.nextFloat() >= 0.95f) {
+                        if (colRandom.nextFloat() >= 0.95f) {
                             Vector3f tempc = new Vector3f();
-                            color = color.mul(random.nextFloat(), random.nextFloat(), random.nextFloat(), tempc);
-                        }
-
-                        int sbits = 0;
-                        Pair<String, Byte> spair = LevelContainer.ALL_SOLID_MAP.get(pos);
-                        if (spair != null) {
-                            sbits = spair.getValue();
+                            color = color.mul(colRandom.nextFloat(), colRandom.nextFloat(), colRandom.nextFloat(), tempc);
                         }
 
-                        int fbits = 0;
-                        Pair<String, Byte> fpair = LevelContainer.ALL_FLUID_MAP.get(pos);
-                        if (fpair != null) {
-                            fbits = fpair.getValue();
-                        }
+                        long key = VoxelMap.key(pos);
+                        int sbits = LevelContainer.ALL_SOLID_MAP.neighborMask(key);
+                        int fbits = LevelContainer.ALL_FLUID_MAP.neighborMask(key);
 
                         final int mask1 = 0x08; // bottom only mask
                         final int mask2 = 0x17; // bottom exclusive mask
@@ -358,7 +440,8 @@ public class RandomLevelGenerator {
                             String tex = "water";
 
                             Block fluidBlock = new Block(tex, pos, color, false);
-                            levelContainer.getFluidChunks().addBlock(fluidBlock, true);
+                            LevelContainer.putBlock(fluidBlock);
+                            fluidList.add(fluidBlock);
                             levelContainer.incProgress(100.0f / (float) totalAmount);
                             fluidBlocks--;
                         }
@@ -370,11 +453,18 @@ public class RandomLevelGenerator {
                 }
             }
         }
+
+        // blocks are already in the position maps, so they're added even if aborted
+        levelContainer.getSolidChunks().addBlocks(solidList, false);
+        levelContainer.getFluidChunks().addBlocks(fluidList, false);
+        return !aborted;
     }
 
     private void generateByRandom(int solidBlocks, int fluidBlocks, int totalAmount, int posMin, int posMax) {
 //        DSLogger.reportInfo("By Random: solidBlks = " + solidBlocks + ", fluidBlks = " + fluidBlocks, null);
         // 2. Random part
+        // free cells are sampled from the occupancy (no retries)
+        buildOccupancy(posMin, posMax);
         //beta 
         float beta = random.nextFloat();
         int maxSolidBatchSize = (int) ((1.0f - beta) * solidBlocks);
@@ -389,7 +479,7 @@ public class RandomLevelGenerator {
                 while (solidBatch > 0
                         && !levelContainer.getMyWindow().shouldClose()) {
                     if (solidBlock == null) {
-                        solidBlock = generateRandomSolidBlock(posMin, posMax);
+                        solidBlock = generateRandomSolidBlock();
                         solidAdjBlock = solidBlock;
                         solidBatch--;
                         solidBlocks--;
@@ -422,7 +512,7 @@ public class RandomLevelGenerator {
                 while (fluidBatch > 0
                         && !levelContainer.getMyWindow().shouldClose()) {
                     if (fluidBlock == null) {
-                        fluidBlock = generateRandomFluidBlock(posMin, posMax);
+                        fluidBlock = generateRandomFluidBlock();
                         fluidAdjBlock = fluidBlock;
                         fluidBatch--;
                         fluidBlocks--;
@@ -453,8 +543,10 @@ public class RandomLevelGenerator {
     private void generateFluidSeries(int solidBlocks) {
 //        DSLogger.reportInfo("By Noise: solidBlks = " + solidBlocks, null);
         levelContainer.setProgress(0.0f);
-        List<Block> totalFldBlkList = levelContainer.getFluidChunks().getTotalList();
-        for (Block fluidBlock : totalFldBlkList) {
+        // fluid chunks are not changed here, so they're traversed in place
+        final int fluidBlocks = levelContainer.getFluidChunks().size();
+        List<Block> solidList = new ArrayList<>();
+        for (Block fluidBlock : levelContainer.getFluidChunks().blocks()) {
             if (levelContainer.getMyWindow().shouldClose()) {
                 break;
             }
@@ -463,31 +555,149 @@ public class RandomLevelGenerator {
                 break;
             }
 
-            List<Integer> freeFaces = fluidBlock.getAdjacentFreeFaceNumbers();
-            for (int faceNum : freeFaces) {
+            int freeBits = freeFaceBits(fluidBlock);
+            for (int faceNum = Block.LEFT; faceNum <= Block.FRONT; faceNum++) {
+                if ((freeBits & (1 << faceNum)) == 0) {
+                    continue;
+                }
                 if (faceNum == Block.TOP && random.nextFloat() >= 0.25f) {
                     continue;
                 }
                 Vector3f spos = fluidBlock.getAdjacentPos(faceNum);
+                if (occupancy != null) {
+                    occupancy.occupy(spos);
+                }
                 Block solidBlock = new Block("stone", spos, Vector3fColors.WHITE, true);
-                levelContainer.getSolidChunks().addBlock(solidBlock, true);
+                LevelContainer.putBlock(solidBlock);
+                solidList.add(solidBlock);
                 solidBlocks--;
                 if (solidBlocks == 0) {
                     break;
                 }
             }
-            levelContainer.incProgress(100.0f / (float) totalFldBlkList.size());
+            levelContainer.incProgress(100.0f / (float) fluidBlocks);
+        }
+        levelContainer.getSolidChunks().addBlocks(solidList, false);
+    }
+
+    //---------------------------------------------------------------------------------------------------------------------------
+    /**
+     * Prepare lazy generation (generator becomes chunk provider). Nothing is
+     * generated here, terrain extent comes from the number of blocks (as in
+     * noise part of generate).
+     */
+    public void prepareLazy() {
+        generatedIds.clear();
+        numOfLights = 0;
+        maxNumOfLights = 0;
+        int valueK0 = Math.round(MathUtils.polynomial(CUBIC, QUADRATIC, LINEAR, CONST, numberOfBlocks)) & 0xFFFFFFFE;
+        lazyMin = -valueK0;
+        lazyMax = valueK0;
+        DSLogger.reportInfo("Lazy random level (" + lazyMin + ", " + lazyMax + ").. with seed = " + seed, null);
+    }
+
+    public boolean isGenerated(int chunkId) {
+        return generatedIds.contains(chunkId);
+    }
+
+    // chunk is kept (loaded from the level file), it's never generated
+    public void markGenerated(int chunkId) {
+        generatedIds.add(chunkId);
+    }
+
+    // chunk was dropped (not edited), it will be generated again when visible
+    public void forget(int chunkId) {
+        generatedIds.remove(chunkId);
+    }
+
+    /**
+     * Generate noise terrain of the chunk (if not generated already). Result
+     * depends only on the seed and chunk coordinates, so dropped chunk is
+     * generated the same again. Blocks are added to the chunks in bulk.
+     *
+     * @param chunkId chunk id
+     * @return was anything generated
+     */
+    public boolean generateChunk(int chunkId) {
+        if (!generatedIds.add(chunkId)) {
+            return false;
+        }
+        final int cx = Chunk.chunkX(chunkId);
+        final int cz = Chunk.chunkZ(chunkId);
+        // columns of the chunk within the extent (chunk size is even)
+        final int xFrom = Math.max(lazyMin, cx * Chunk.CHUNK_SIZE);
+        final int xTo = Math.min(lazyMax, (cx + 1) * Chunk.CHUNK_SIZE - 2);
+        final int zFrom = Math.max(lazyMin, cz * Chunk.CHUNK_SIZE);
+        final int zTo = Math.min(lazyMax, (cz + 1) * Chunk.CHUNK_SIZE - 2);
+        if (xFrom > xTo || zFrom > zTo) {
+            return false;
+        }
+
+        List<Block> solidList = new ArrayList<>();
+        List<Block> fluidList = new ArrayList<>();
+        List<ColumnNoise> band = computeBand(xFrom, xTo, zFrom, zTo, lazyMin, lazyMax);
+        if (band == null) {
+            generatedIds.remove(chunkId); // not generated, tried again when visible
+            return false;
+        }
+        for (ColumnNoise column : band) {
+            final Random colRandom = new Random(columnSeed(column.x, column.z));
+            for (int i = 0; i < column.upper.length; i++) {
+                Vector3f pos = new Vector3f(column.x, column.yMid + 2 * i, column.z);
+                if (column.upper[i] >= 0.0f && !lazyRepeatCondition(pos, true)) {
+                    // color chance
+                    Vector3f color = new Vector3f(1.0f, 1.0f, 1.0f);
+                    if (colRandom.nextFloat() >= 0.95f) {
+                        Vector3f tempc = new Vector3f();
+                        color = color.mul(colRandom.nextFloat(), colRandom.nextFloat(), colRandom.nextFloat(), tempc);
+                    }
+                    String tex = "stone";
+                    if (colRandom.nextFloat() >= 0.95f) {
+                        tex = randomSolidTexture(colRandom, false);
+                    }
+                    solidList.add(new Block(tex, pos, color, true));
+                }
+            }
+            // cell at yMid has the same noise in both, so it's either solid or fluid
+            for (int i = 0; i < column.lower.length; i++) {
+                Vector3f pos = new Vector3f(column.x, column.yBottom + 2 * i, column.z);
+                if (column.lower[i] < 0.0f && !lazyRepeatCondition(pos, false)) {
+                    // color chance
+                    Vector3f color = new Vector3f(1.0f, 1.0f, 1.0f);
+                    if (colRandom.nextFloat() >= 0.95f) {
+                        Vector3f tempc = new Vector3f();
+                        color = color.mul(colRandom.nextFloat(), colRandom.nextFloat(), colRandom.nextFloat(), tempc);
+                    }
+                    fluidList.add(new Block("water", pos, color, false));
+                }
+            }
         }
+
+        levelContainer.getSolidChunks().addBlocks(solidList, true);
+        levelContainer.getFluidChunks().addBlocks(fluidList, true);
+        return !solidList.isEmpty() || !fluidList.isEmpty();
+    }
+
+    // doesn't check the player nor the block caps (chunk must depend only on the seed),
+    // player is lifted out at spawn, extent of the terrain already bounds the block count
+    private boolean lazyRepeatCondition(Vector3f pos, boolean solid) {
+        VoxelMap map = solid ? LevelContainer.ALL_SOLID_MAP : LevelContainer.ALL_FLUID_MAP;
+        return map.containsKey(pos);
     }
 
     //---------------------------------------------------------------------------------------------------------------------------
-    public void generate() {
+    /**
+     * Generate random level.
+     *
+     * @return false if generation was aborted (level is incomplete)
+     */
+    public boolean generate() {
         if (levelContainer.getProgress() == 0.0f) {
             DSLogger.reportInfo("Generating random level (" + numberOfBlocks + " blocks).. with seed = " + seed, null);
             // define alpha: solid to fluid ratio
             final float alpha = 0.3f + random.nextFloat() * 0.7f;
-            int solidBlocks = Math.min(Math.round(alpha * numberOfBlocks), LevelContainer.MAX_NUM_OF_SOLID_BLOCKS);
-            int fluidBlocks = Math.min(numberOfBlocks - solidBlocks, LevelContainer.MAX_NUM_OF_FLUID_BLOCKS);
+            int solidBlocks = Math.round(alpha * numberOfBlocks);
+            int fluidBlocks = numberOfBlocks - solidBlocks;
 
             final int totalAmount = solidBlocks + fluidBlocks;
 
@@ -525,7 +735,10 @@ public class RandomLevelGenerator {
 
                 DSLogger.reportInfo(String.format("Generating Part I - Noise (%d blocks)", solidBlocksN + fluidBlocksN), null);
                 // 1. Noise Part                                   
-                generateByNoise(solidBlocksN1, fluidBlocksN, totalAmount, posN_Min, posN_Max);
+                if (!generateByNoise(solidBlocksN1, fluidBlocksN, totalAmount, posN_Min, posN_Max)) {
+                    DSLogger.reportError("Generating random level aborted!", null);
+                    return false;
+                }
                 DSLogger.reportInfo("Done.", null);
                 // --------------------------------------------------------------
                 //--------------------------------------------------------------------------------------------------------------------------- 
@@ -538,10 +751,12 @@ public class RandomLevelGenerator {
                 // 3. Fluid Series
                 generateFluidSeries(solidBlocksN2 + solidBlocksR2);
                 DSLogger.reportInfo("Done.", null);
+                occupancy = null;
             }
         }
 
         DSLogger.reportInfo("All finished!", null);
+        return true;
     }
 
     public LevelContainer getLevelContainer() {
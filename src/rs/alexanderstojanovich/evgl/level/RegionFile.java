@@ -0,0 +1,456 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.level;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.joml.Vector3f;
+import org.magicwerk.brownies.collections.GapList;
+import rs.alexanderstojanovich.evgl.core.Camera;
+import rs.alexanderstojanovich.evgl.models.Block;
+import rs.alexanderstojanovich.evgl.models.Chunk;
+import rs.alexanderstojanovich.evgl.models.Chunks;
+import rs.alexanderstojanovich.evgl.util.DSLogger;
+
+/**
+ * Chunk addressable level file (region file). Layout is:
+ * <pre>
+ * header    : magic "DSRF", version (u16), flags (u16),
+ *             camera pos, front, up, right (4 x 12 B), chunk size (i32),
+ *             generator seed (i64), generated block count (i32),
+ *             entry count (i32)
+ * directory : entry count x [chunk id (i32), solid (u8), block count (i32),
+ *             payload offset (i32), payload length (i32)]
+ * payloads  : block records of each chunk (29 B per block), or compact
+ *             encoded blocks (see BlockCodec) if flags say so
+ * </pre> If generated block count is not zero, level is lazy random level and
+ * the file holds only the kept (edited) chunks, the rest is generated again
+ * from the seed. Kept chunk without blocks has entry with no payload. All the numbers are little endian. File is read into memory once
+ * (file itself is not held open), chunks are decoded (paged in) on demand.
+ * File is written to temporary file first which then replaces the original.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class RegionFile {
+
+    public static final byte[] MAGIC = {'D', 'S', 'R', 'F'};
+    public static final int VERSION = 4; // version 1 has only plain records, version 2 has no chunk size, version 3 has no generator
+
+    public static final int HEADER_SIZE = 4 + 2 + 2 + 48 + 4 + 4; // up to version 3
+    public static final int GENERATOR_SIZE = 8 + 4; // since version 4
+    public static final int LEGACY_CHUNK_SIZE = 256; // chunk size up to version 2
+    public static final int ENTRY_SIZE = 4 + 1 + 4 + 4 + 4;
+
+    private final ByteBuffer content;
+
+    private final int version;
+    private final int flags;
+
+    private final Vector3f camPos;
+    private final Vector3f camFront;
+    private final Vector3f camUp;
+    private final Vector3f camRight;
+
+    // chunk edge length the file was written with (chunk ids depend on it)
+    private final int chunkSize;
+
+    // lazy random level generator (generated blocks are zero if there's none)
+    private final long seed;
+    private final int generatedBlocks;
+
+    // chunk directory
+    private final int entryNum;
+    private final int[] chunkIds;
+    private final boolean[] solids;
+    private final int[] counts;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final boolean[] loaded;
+    // chunk id -> directory index (solid & fluid)
+    private final Map<Integer, Integer> solidIndex = new HashMap<>();
+    private final Map<Integer, Integer> fluidIndex = new HashMap<>();
+    private int pendingNum;
+
+    private RegionFile(ByteBuffer content) {
+        this.content = content;
+        content.order(ByteOrder.LITTLE_ENDIAN);
+        content.position(MAGIC.length);
+        this.version = content.getShort() & 0xFFFF;
+        this.flags = content.getShort() & 0xFFFF;
+        this.camPos = readVector(content);
+        this.camFront = readVector(content);
+        this.camUp = readVector(content);
+        this.camRight = readVector(content);
+        this.chunkSize = (version >= 3) ? content.getInt() : LEGACY_CHUNK_SIZE;
+        this.seed = (version >= 4) ? content.getLong() : 0L;
+        this.generatedBlocks = (version >= 4) ? content.getInt() : 0;
+
+        this.entryNum = content.getInt();
+        this.chunkIds = new int[entryNum];
+        this.solids = new boolean[entryNum];
+        this.counts = new int[entryNum];
+        this.offsets = new int[entryNum];
+        this.lengths = new int[entryNum];
+        this.loaded = new boolean[entryNum];
+        for (int i = 0; i < entryNum; i++) {
+            chunkIds[i] = content.getInt();
+            solids[i] = content.get() != 0;
+            counts[i] = content.getInt();
+            offsets[i] = content.getInt();
+            lengths[i] = content.getInt();
+            if (solids[i]) {
+                solidIndex.put(chunkIds[i], i);
+            } else {
+                fluidIndex.put(chunkIds[i], i);
+            }
+        }
+        this.pendingNum = entryNum;
+    }
+
+    private static Vector3f readVector(ByteBuffer bb) {
+        float x = bb.getFloat();
+        float y = bb.getFloat();
+        float z = bb.getFloat();
+        return new Vector3f(x, y, z);
+    }
+
+    private static void writeVector(ByteBuffer bb, Vector3f vec) {
+        bb.putFloat(vec.x);
+        bb.putFloat(vec.y);
+        bb.putFloat(vec.z);
+    }
+
+    /**
+     * Checks whether the file is region file (by the magic).
+     *
+     * @param file file to check
+     * @return is region file
+     */
+    public static boolean isRegionFile(File file) {
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return false;
+        }
+        byte[] magic = new byte[MAGIC.length];
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(file);
+            if (fis.read(magic) != MAGIC.length) {
+                return false;
+            }
+        } catch (IOException ex) {
+            DSLogger.reportError(ex.getMessage(), ex);
+            return false;
+        } finally {
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException ex) {
+                    DSLogger.reportError(ex.getMessage(), ex);
+                }
+            }
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Open region file (header and directory are read, payloads are read on
+     * demand).
+     *
+     * @param file region file
+     * @return region file or null if not valid
+     */
+    public static RegionFile open(File file) {
+        if (!isRegionFile(file)) {
+            return null;
+        }
+        try {
+            // file is not held open (nor mapped), so it can be replaced while level is played
+            RegionFile region = new RegionFile(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+            if (region.version > VERSION) {
+                DSLogger.reportError("Unsupported region file version " + region.version + "!", null);
+                return null;
+            }
+            return region;
+        } catch (IOException ex) {
+            DSLogger.reportError(ex.getMessage(), ex);
+        }
+        return null;
+    }
+
+    //--------------------------------------------------------------------------
+    /**
+     * Write level to the region file.
+     *
+     * @param file file to write
+     * @param camera main camera
+     * @param solidChunks solid chunks
+     * @param fluidChunks fluid chunks
+     * @param generator lazy random level generator (null if there's none)
+     * @param keptIds chunks written with generator, others are generated
+     * again
+     * @param deflate use deflate framing on top of compact encoding
+     * @return success
+     */
+    public static boolean write(File file, Camera camera, Chunks solidChunks, Chunks fluidChunks,
+            RandomLevelGenerator generator, Set<Integer> keptIds, boolean deflate) {
+        List<Chunk> chunkList = new GapList<>();
+        Set<Integer> emptyIds = new TreeSet<>();
+        if (generator == null) {
+            chunkList.addAll(solidChunks.getChunkList());
+            chunkList.addAll(fluidChunks.getChunkList());
+        } else {
+            for (int chunkId : keptIds) {
+                Chunk solidChunk = solidChunks.getChunk(chunkId);
+                Chunk fluidChunk = fluidChunks.getChunk(chunkId);
+                if (solidChunk != null) {
+                    chunkList.add(solidChunk);
+                }
+                if (fluidChunk != null) {
+                    chunkList.add(fluidChunk);
+                }
+                if (solidChunk == null && fluidChunk == null) {
+                    emptyIds.add(chunkId); // so it's not generated again
+                }
+            }
+        }
+
+        int[] blockCounts = new int[chunkList.size()];
+        List<byte[]> payloads = new GapList<>();
+        int total = 0;
+        for (int i = 0; i < chunkList.size(); i++) {
+            List<Block> blocks = chunkList.get(i).getBlockList();
+            byte[] payload = BlockCodec.encode(blocks, deflate);
+            blockCounts[i] = blocks.size();
+            payloads.add(payload);
+            total += payload.length;
+        }
+
+        final int entryNum = chunkList.size() + emptyIds.size();
+        int payloadStart = HEADER_SIZE + GENERATOR_SIZE + entryNum * ENTRY_SIZE;
+        ByteBuffer bb = ByteBuffer.allocate(payloadStart + total);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+
+        bb.put(MAGIC);
+        bb.putShort((short) VERSION);
+        bb.putShort((short) (BlockCodec.FLAG_COMPACT | (deflate ? BlockCodec.FLAG_DEFLATE : 0)));
+        writeVector(bb, camera.getPos());
+        writeVector(bb, camera.getFront());
+        writeVector(bb, camera.getUp());
+        writeVector(bb, camera.getRight());
+        bb.putInt(Chunk.CHUNK_SIZE);
+        bb.putLong(generator == null ? 0L : generator.getSeed());
+        bb.putInt(generator == null ? 0 : generator.getNumberOfBlocks());
+        bb.putInt(entryNum);
+
+        int offset = payloadStart;
+        for (int i = 0; i < chunkList.size(); i++) {
+            Chunk chunk = chunkList.get(i);
+            int length = payloads.get(i).length;
+            bb.putInt(chunk.getId());
+            bb.put((byte) (chunk.isSolid() ? 1 : 0));
+            bb.putInt(blockCounts[i]);
+            bb.putInt(offset);
+            bb.putInt(length);
+            offset += length;
+        }
+        for (int chunkId : emptyIds) {
+            bb.putInt(chunkId);
+            bb.put((byte) 1);
+            bb.putInt(0);
+            bb.putInt(offset);
+            bb.putInt(0);
+        }
+
+        for (byte[] payload : payloads) {
+            bb.put(payload);
+        }
+        bb.flip();
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmpFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (bb.hasRemaining()) {
+                    channel.write(bb);
+                }
+            }
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException ex) {
+            DSLogger.reportError(ex.getMessage(), ex);
+            tmpFile.delete();
+        }
+        return false;
+    }
+
+    //--------------------------------------------------------------------------
+    private int indexOf(int chunkId, boolean solid) {
+        Integer index = (solid) ? solidIndex.get(chunkId) : fluidIndex.get(chunkId);
+        return (index == null) ? -1 : index;
+    }
+
+    /**
+     * Is chunk present in the file and not paged in yet.
+     *
+     * @param chunkId chunk id
+     * @param solid solid or fluid chunk
+     * @return is pending
+     */
+    public boolean isPending(int chunkId, boolean solid) {
+        int index = indexOf(chunkId, solid);
+        return index != -1 && !loaded[index];
+    }
+
+    /**
+     * Is any chunk (solid or fluid) not paged in yet.
+     *
+     * @return has pending chunks
+     */
+    public boolean hasPending() {
+        return pendingNum > 0;
+    }
+
+    /**
+     * Number of blocks in chunks which are not paged in yet.
+     *
+     * @param solid solid or fluid chunks
+     * @return block count
+     */
+    public int pendingSize(boolean solid) {
+        int size = 0;
+        for (int i = 0; i < entryNum; i++) {
+            if (solids[i] == solid && !loaded[i]) {
+                size += counts[i];
+            }
+        }
+        return size;
+    }
+
+    public List<Integer> pendingIds(boolean solid) {
+        List<Integer> result = new GapList<>();
+        for (int i = 0; i < entryNum; i++) {
+            if (solids[i] == solid && !loaded[i]) {
+                result.add(chunkIds[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read block records (29 B each) of the pending chunks and mark them as
+     * paged in.
+     *
+     * @param ids chunk ids
+     * @param solid solid or fluid chunks
+     * @return concatenated block records
+     */
+    public byte[] readRecords(Collection<Integer> ids, boolean solid) {
+        List<Integer> indices = new GapList<>();
+        int size = 0;
+        for (int id : ids) {
+            int index = indexOf(id, solid);
+            if (index != -1 && !loaded[index]) {
+                indices.add(index);
+                size += counts[index] * LevelDecoder.RECORD_SIZE;
+            }
+        }
+        byte[] result = new byte[size];
+        ByteBuffer view = content.duplicate();
+        int pos = 0;
+        for (int index : indices) {
+            loaded[index] = true;
+            pendingNum--;
+            if (counts[index] == 0) {
+                continue; // kept chunk without blocks
+            }
+            byte[] payload = new byte[lengths[index]];
+            view.position(offsets[index]);
+            view.get(payload);
+            byte[] records = ((flags & BlockCodec.FLAG_COMPACT) != 0)
+                    ? BlockCodec.decodeToRecords(payload, 0, payload.length, (flags & BlockCodec.FLAG_DEFLATE) != 0)
+                    : payload;
+            System.arraycopy(records, 0, result, pos, records.length);
+            pos += records.length;
+        }
+        return result;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public Vector3f getCamPos() {
+        return camPos;
+    }
+
+    public Vector3f getCamFront() {
+        return camFront;
+    }
+
+    public Vector3f getCamUp() {
+        return camUp;
+    }
+
+    public Vector3f getCamRight() {
+        return camRight;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    // lazy random level block count (zero if level isn't lazy random level)
+    public int getGeneratedBlocks() {
+        return generatedBlocks;
+    }
+
+    public int getEntryNum() {
+        return entryNum;
+    }
+
+}
@@ -40,6 +40,13 @@ public class Configuration {
     private float musicVolume = 0.5f;
     private float soundFXVolume = 0.5f;
     private int textureSize = 512;
+    private boolean compactChunks = false; // keep invisible chunks in memory (palette compressed) instead of disk cache
+    private boolean compressFiles = false; // deflate level and chunk cache files
+    private int cacheMemory = 16; // MB of (off-heap) memory for evicted chunks before they spill to disk
+    private int chunkSize = 256; // chunk edge length (power of two)
+    private boolean greedyMeshing = false; // render solid chunks as merged (greedy) meshes instead of tuples
+    private boolean occlusionCulling = false; // cull chunks & tuples hidden behind nearest solid blocks (on CPU)
+    private boolean lazyGeneration = false; // random level chunks are generated when they become visible
 
     private static final String CONFIG_PATH = "dsynergy_light.ini";
 
@@ -114,6 +121,34 @@ public class Configuration {
                                     textureSize = number;
                                 }
                                 break;
+                            case "compactchunks":
+                                compactChunks = Boolean.parseBoolean(words[1].toLowerCase());
+                                break;
+                            case "compressfiles":
+                                compressFiles = Boolean.parseBoolean(words[1].toLowerCase());
+                                break;
+                            case "chunksize":
+                                number = Integer.parseInt(words[1]);
+                                // if chunk size is a power of two
+                                if (number >= 16 && (number & (number - 1)) == 0 && number <= 1024) {
+                                    chunkSize = number;
+                                }
+                                break;
+                            case "greedymeshing":
+                                greedyMeshing = Boolean.parseBoolean(words[1].toLowerCase());
+                                break;
+                            case "occlusionculling":
+                                occlusionCulling = Boolean.parseBoolean(words[1].toLowerCase());
+                                break;
+                            case "lazygeneration":
+                                lazyGeneration = Boolean.parseBoolean(words[1].toLowerCase());
+                                break;
+                            case "cachememory":
+                                number = Integer.parseInt(words[1]);
+                                if (number >= 0 && number <= 1024) {
+                                    cacheMemory = number;
+                                }
+                                break;
                         }
                     }
                 }
@@ -152,6 +187,13 @@ public class Configuration {
             pw.println("SoundFXVolume = " + soundFXVolume);
             pw.println("Debug = " + debug);
             pw.println("TextureSize = " + textureSize);
+            pw.println("CompactChunks = " + compactChunks);
+            pw.println("CompressFiles = " + compressFiles);
+            pw.println("CacheMemory = " + cacheMemory);
+            pw.println("ChunkSize = " + chunkSize);
+            pw.println("GreedyMeshing = " + greedyMeshing);
+            pw.println("OcclusionCulling = " + occlusionCulling);
+            pw.println("LazyGeneration = " + lazyGeneration);
         } catch (FileNotFoundException ex) {
             DSLogger.reportFatalError(ex.getMessage(), ex);
         } finally {
@@ -237,4 +279,60 @@ public class Configuration {
         return textureSize;
     }
 
+    public boolean isCompactChunks() {
+        return compactChunks;
+    }
+
+    public void setCompactChunks(boolean compactChunks) {
+        this.compactChunks = compactChunks;
+    }
+
+    public boolean isCompressFiles() {
+        return compressFiles;
+    }
+
+    public void setCompressFiles(boolean compressFiles) {
+        this.compressFiles = compressFiles;
+    }
+
+    public int getCacheMemory() {
+        return cacheMemory;
+    }
+
+    public void setCacheMemory(int cacheMemory) {
+        this.cacheMemory = cacheMemory;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public boolean isGreedyMeshing() {
+        return greedyMeshing;
+    }
+
+    public void setGreedyMeshing(boolean greedyMeshing) {
+        this.greedyMeshing = greedyMeshing;
+    }
+
+    public boolean isOcclusionCulling() {
+        return occlusionCulling;
+    }
+
+    public void setOcclusionCulling(boolean occlusionCulling) {
+        this.occlusionCulling = occlusionCulling;
+    }
+
+    public boolean isLazyGeneration() {
+        return lazyGeneration;
+    }
+
+    public void setLazyGeneration(boolean lazyGeneration) {
+        this.lazyGeneration = lazyGeneration;
+    }
+
 }
@@ -130,51 +130,31 @@ public class Game {
         if (keys[GLFW.GLFW_KEY_W] || keys[GLFW.GLFW_KEY_UP]) {
             Observer obs = gameObject.getLevelContainer().getLevelActors().getObserver();
             obs.movePredictorForward(amount);
-            if (gameObject.hasCollisionWithCritter(obs)) {
-                obs.movePredictorBackward(amount);
-                gameObject.setAssertCollision(true);
-            } else {
-                obs.moveForward(amount);
-                gameObject.setAssertCollision(false);
-                changed = true;
-            }
+            // moves as far as possible, sliding along the obstacles
+            gameObject.setAssertCollision(gameObject.moveCritter(obs));
+            changed = true;
         }
         if (keys[GLFW.GLFW_KEY_S] || keys[GLFW.GLFW_KEY_DOWN]) {
             Observer obs = gameObject.getLevelContainer().getLevelActors().getObserver();
             obs.movePredictorBackward(amount);
-            if (gameObject.hasCollisionWithCritter(obs)) {
-                obs.movePredictorForward(amount);
-                gameObject.setAssertCollision(true);
-            } else {
-                obs.moveBackward(amount);
-                gameObject.setAssertCollision(false);
-                changed = true;
-            }
+            // moves as far as possible, sliding along the obstacles
+            gameObject.setAssertCollision(gameObject.moveCritter(obs));
+            changed = true;
 
         }
         if (keys[GLFW.GLFW_KEY_A]) {
             Observer obs = gameObject.getLevelContainer().getLevelActors().getObserver();
             obs.movePredictorLeft(amount);
-            if (gameObject.hasCollisionWithCritter(obs)) {
-                obs.movePredictorRight(amount);
-                gameObject.setAssertCollision(true);
-            } else {
-                obs.moveLeft(amount);
-                gameObject.setAssertCollision(false);
-                changed = true;
-            }
+            // moves as far as possible, sliding along the obstacles
+            gameObject.setAssertCollision(gameObject.moveCritter(obs));
+            changed = true;
         }
         if (keys[GLFW.GLFW_KEY_D]) {
             Observer obs = gameObject.getLevelContainer().getLevelActors().getObserver();
             obs.movePredictorRight(amount);
-            if (gameObject.hasCollisionWithCritter(obs)) {
-                obs.movePredictorLeft(amount);
-                gameObject.setAssertCollision(true);
-            } else {
-                obs.moveRight(amount);
-                gameObject.setAssertCollision(false);
-                changed = true;
-            }
+            // moves as far as possible, sliding along the obstacles
+            gameObject.setAssertCollision(gameObject.moveCritter(obs));
+            changed = true;
         }
         if (keys[GLFW.GLFW_KEY_LEFT]) {
             gameObject.getLevelContainer().getLevelActors().getObserver().turnLeft(ANGLE);
@@ -295,51 +275,31 @@ public class Game {
         if (keys[GLFW.GLFW_KEY_W] || keys[GLFW.GLFW_KEY_UP]) {
             Player player = gameObject.getLevelContainer().getLevelActors().getPlayer();
             player.movePredictorForward(amount);
-            if (gameObject.hasCollisionWithCritter(player)) {
-                player.movePredictorBackward(amount);
-                gameObject.setAssertCollision(true);
-            } else {
-                player.moveForward(amount);
-                gameObject.setAssertCollision(false);
-                changed = true;
-            }
+            // moves as far as possible, sliding along the obstacles
+            gameObject.setAssertCollision(gameObject.moveCritter(player));
+            changed = true;
         }
         if (keys[GLFW.GLFW_KEY_S] || keys[GLFW.GLFW_KEY_DOWN]) {
             Player player = gameObject.getLevelContainer().getLevelActors().getPlayer();
             player.movePredictorBackward(amount);
-            if (gameObject.hasCollisionWithCritter(player)) {
-                player.movePredictorForward(amount);
-                gameObject.setAssertCollision(true);
-            } else {
-                player.moveBackward(amount);
-                gameObject.setAssertCollision(false);
-                changed = true;
-            }
+            // moves as far as possible, sliding along the obstacles
+            gameObject.setAssertCollision(gameObject.moveCritter(player));
+            changed = true;
 
         }
         if (keys[GLFW.GLFW_KEY_A]) {
             Player player = gameObject.getLevelContainer().getLevelActors().getPlayer();
             player.movePredictorLeft(amount);
-            if (gameObject.hasCollisionWithCritter(player)) {
-                player.movePredictorRight(amount);
-                gameObject.setAssertCollision(true);
-            } else {
-                player.moveLeft(amount);
-                gameObject.setAssertCollision(false);
-                changed = true;
-            }
+            // moves as far as possible, sliding along the obstacles
+            gameObject.setAssertCollision(gameObject.moveCritter(player));
+            changed = true;
         }
         if (keys[GLFW.GLFW_KEY_D]) {
             Player player = gameObject.getLevelContainer().getLevelActors().getPlayer();
             player.movePredictorRight(amount);
-            if (gameObject.hasCollisionWithCritter(player)) {
-                player.movePredictorLeft(amount);
-                gameObject.setAssertCollision(true);
-            } else {
-                player.moveRight(amount);
-                gameObject.setAssertCollision(false);
-                changed = true;
-            }
+            // moves as far as possible, sliding along the obstacles
+            gameObject.setAssertCollision(gameObject.moveCritter(player));
+            changed = true;
         }
         if (keys[GLFW.GLFW_KEY_LEFT]) {
             gameObject.getLevelContainer().getLevelActors().getPlayer().turnLeft(ANGLE);
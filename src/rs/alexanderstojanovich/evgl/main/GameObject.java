@@ -230,10 +230,21 @@ public final class GameObject { // is mutual object for {Main, Renderer, Random
         return levelContainer.hasCollisionWithEnvironment(livingCritter);
     }
 
+    // movement with collision response - critter slides along solid obstacles
+    public boolean moveCritter(Critter critter) {
+        return levelContainer.moveWithCollision(critter);
+    }
+
+    // movement with collision response - critter slides along solid obstacles
+    public boolean moveCritter(ModelCritter livingCritter) {
+        return levelContainer.moveWithCollision(livingCritter);
+    }
+
     // prints general and detailed information about solid and fluid chunks
     public void printInfo() {
         levelContainer.getSolidChunks().printInfo();
         levelContainer.getFluidChunks().printInfo();
+        levelContainer.printOcclusionInfo();
     }
 
     public LevelContainer getLevelContainer() {
@@ -23,7 +23,6 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -43,8 +42,8 @@ import rs.alexanderstojanovich.evgl.main.Game;
 import rs.alexanderstojanovich.evgl.shaders.ShaderProgram;
 import rs.alexanderstojanovich.evgl.texture.Texture;
 import rs.alexanderstojanovich.evgl.util.DSLogger;
-import rs.alexanderstojanovich.evgl.util.Pair;
 import rs.alexanderstojanovich.evgl.util.Vector3fUtils;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
 
 /**
  *
@@ -60,7 +59,8 @@ public class Block extends Model {
     public static final int BACK = 4;
     public static final int FRONT = 5;
     // which faces we enabled for rendering and which we disabled
-    private final boolean[] enabledFaces = new boolean[6];
+    // 6-bit form [LEFT, RIGHT, BOTTOM, TOP, BACK, FRONT]
+    private int faceBits = 63;
 
     private boolean verticesReversed = false;
 
@@ -79,12 +79,10 @@ public class Block extends Model {
     public static final List<Vertex> VERTICES = new GapList<>();
     public static final List<Integer> INDICES = new ArrayList<>();
 
-    public static final Comparator<Block> FLOAT3_BITS_COMP = new Comparator<Block>() {
+    public static final Comparator<Block> MORTON_COMP = new Comparator<Block>() {
         @Override
         public int compare(Block o1, Block o2) {
-            String name1 = Vector3fUtils.float3ToUniqueString(o1.pos);
-            String name2 = Vector3fUtils.float3ToUniqueString(o2.pos);
-            return name1.compareTo(name2);
+            return Long.compare(o1.getMortonCode(), o2.getMortonCode());
         }
     };
 
@@ -101,29 +99,38 @@ public class Block extends Model {
         }
     };
 
+    // world texture id (resolved when texture name is set)
+    private int texId;
+
     static {
         readFromTxtFileMK2("cubex.txt");
     }
 
+    // vertices are shared (flyweight), own copy is made only if they must be changed
     public Block(String texName) {
-        super("cubex.txt", texName);
-        Arrays.fill(enabledFaces, true);
-        deepCopyTo(vertices, texName);
-        indices.addAll(INDICES);
+        super("cubex.txt", texName, null, null);
+        this.texId = Texture.worldTexId(texName);
         calcDims();
     }
 
     public Block(String texName, Vector3f pos, Vector3f primaryColor, boolean solid) {
-        super("cubex.txt", texName, pos, primaryColor, solid);
-        Arrays.fill(enabledFaces, true);
-        deepCopyTo(vertices, texName);
-        indices.addAll(INDICES);
+        super("cubex.txt", texName, pos, primaryColor, solid, null, null);
+        this.texId = Texture.worldTexId(texName);
         calcDims();
     }
 
     // cuz regular shallow copy doesn't work, for List of integers is applicable
+    // world texture id of the block (-1 if not world texture)
+    public int getTexId() {
+        return texId;
+    }
+
     public static void deepCopyTo(List<Vertex> vertices, String texName) {
-        int texIndex = Texture.TEX_MAP.get(texName).getValue();
+        deepCopyTo(vertices, Texture.TEX_MAP.get(texName).getValue());
+    }
+
+    // texIndex is index in the world atlas (-1 if texture is not atlased)
+    public static void deepCopyTo(List<Vertex> vertices, int texIndex) {
         int row = texIndex / Texture.GRID_SIZE_WORLD;
         int col = texIndex % Texture.GRID_SIZE_WORLD;
         final float oneOver = 1.0f / (float) Texture.GRID_SIZE_WORLD;
@@ -252,10 +259,78 @@ public class Block extends Model {
         }
     }
 
+    /**
+     * Get shared mesh of this block (by texture, face bits & vertex order).
+     *
+     * @return shared mesh
+     */
+    public BlockMesh getMesh() {
+        return BlockMesh.get(getTexId(), faceBits, verticesReversed);
+    }
+
+    // make own copy of the shared vertices (only if they must be changed)
+    private List<Vertex> ownVertices() {
+        if (vertices == null) {
+            vertices = new ArrayList<>(VERTEX_COUNT);
+            getMesh().copyTo(vertices);
+        }
+        return vertices;
+    }
+
+    @Override
+    public List<Vertex> getVertices() {
+        return (vertices != null) ? vertices : getMesh().getVertices();
+    }
+
+    @Override
+    public List<Integer> getIndices() {
+        return INDICES;
+    }
+
+    @Override
+    public int getIndicesNum() {
+        return BlockMesh.indicesNum(faceBits);
+    }
+
+    @Override
+    public void setTexName(String texName) {
+        super.setTexName(texName);
+        this.texId = Texture.worldTexId(texName);
+        if (vertices != null) {
+            vertices = null; // uvs depend on the texture
+            ownVertices();
+        }
+    }
+
+    @Override
+    public void bufferVertices() {
+        if (vertices != null) {
+            super.bufferVertices();
+            return;
+        }
+        // storing shared vertices buffer on the graphics card
+        if (vbo == 0) {
+            vbo = GL15.glGenBuffers();
+        }
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, getMesh().getVertexBuffer(), GL15.GL_STATIC_DRAW);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    }
+
+    @Override
+    public void updateVertices() {
+        bufferVertices();
+    }
+
+    @Override
+    public void animate() {
+        Model.animate(ownVertices(), INDICES);
+    }
+
     @Override
     public void bufferIndices() {
-        // storing indices in the buffer
-        IntBuffer ib = createIntBuffer(getFaceBits());
+        // storing indices in the buffer (cached for each face mask)
+        IntBuffer ib = BlockMesh.indexBuffer(faceBits);
         // storing indices buffer on the graphics card
         if (ibo == 0) {
             ibo = GL15.glGenBuffers();
@@ -484,36 +559,24 @@ public class Block extends Model {
     }
 
     public void disableFace(int faceNum) {
-        for (Vertex subVertex : getFaceVertices(vertices, faceNum)) {
-            subVertex.setEnabled(false);
-        }
-        this.enabledFaces[faceNum] = false;
+        setFaceBits(faceBits & ~(1 << faceNum));
     }
 
     public void enableFace(int faceNum) {
-        for (Vertex subVertex : getFaceVertices(vertices, faceNum)) {
-            subVertex.setEnabled(true);
-        }
-        this.enabledFaces[faceNum] = true;
+        setFaceBits(faceBits | (1 << faceNum));
     }
 
     public void enableAllFaces() {
-        for (Vertex vertex : vertices) {
-            vertex.setEnabled(true);
-        }
-        Arrays.fill(enabledFaces, true);
+        setFaceBits(63);
     }
 
     public void disableAllFaces() {
-        for (Vertex vertex : vertices) {
-            vertex.setEnabled(false);
-        }
-        Arrays.fill(enabledFaces, false);
+        setFaceBits(0);
     }
 
     public void reverseFaceVertexOrder() {
-        for (int faceNum = 0; faceNum <= 5; faceNum++) {
-            Collections.reverse(getFaceVertices(vertices, faceNum));
+        if (vertices != null) {
+            reverseFaceVertexOrder(vertices);
         }
         verticesReversed = !verticesReversed;
     }
@@ -525,7 +588,8 @@ public class Block extends Model {
     }
 
     public void setUVsForSkybox() {
-        revertGroupsOfVertices();
+        final List<Vertex> vertices = ownVertices();
+        revertGroupsOfVertices(vertices);
         // LEFT
         vertices.get(4 * LEFT).getUv().x = 0.5f;
         vertices.get(4 * LEFT).getUv().y = 1.0f / 3.0f;
@@ -566,7 +630,7 @@ public class Block extends Model {
 
     }
 
-    private void revertGroupsOfVertices() {
+    private static void revertGroupsOfVertices(List<Vertex> vertices) {
         Collections.reverse(vertices.subList(4 * LEFT, 4 * LEFT + 3));
         Collections.reverse(vertices.subList(4 * RIGHT, 4 * RIGHT + 3));
         Collections.reverse(vertices.subList(4 * BOTTOM, 4 * BOTTOM + 3));
@@ -576,37 +640,22 @@ public class Block extends Model {
     }
 
     public boolean hasFaces() {
-        boolean arg = false;
-        for (Boolean bool : enabledFaces) {
-            arg = arg || bool;
-            if (arg) {
-                break;
-            }
-        }
-        return arg;
+        return faceBits != 0;
     }
 
     public int getNumOfEnabledFaces() {
-        int num = 0;
-        for (int i = 0; i <= 5; i++) {
-            if (enabledFaces[i]) {
-                num++;
-            }
-        }
-        return num;
+        return Integer.bitCount(faceBits);
     }
 
     public int getNumOfEnabledVertices() {
-        int num = 0;
-        for (Vertex vertex : vertices) {
-            if (vertex.isEnabled()) {
-                num++;
-            }
-        }
-        return num;
+        return 4 * Integer.bitCount(faceBits);
     }
 
     public boolean[] getEnabledFaces() {
+        boolean[] enabledFaces = new boolean[6];
+        for (int j = 0; j <= 5; j++) {
+            enabledFaces[j] = (faceBits & (1 << j)) != 0;
+        }
         return enabledFaces;
     }
 
@@ -614,6 +663,16 @@ public class Block extends Model {
         return verticesReversed;
     }
 
+    /**
+     * Get morton (Z-order) code of the block position. Tuple block lists are
+     * sorted by this code.
+     *
+     * @return 63-bit morton code
+     */
+    public long getMortonCode() {
+        return Vector3fUtils.float3ToMortonCode(pos);
+    }
+
     /**
      * Get enabled faces used in Tuple Series, representation is in 6-bit form
      * [LEFT, RIGHT, BOTTOM, TOP, BACK, FRONT]
@@ -621,14 +680,7 @@ public class Block extends Model {
      * @return 6-bit face bits
      */
     public int getFaceBits() {
-        int bits = 0;
-        for (int j = 0; j <= 5; j++) {
-            if (enabledFaces[j]) {
-                int mask = 1 << j;
-                bits |= mask;
-            }
-        }
-        return bits;
+        return faceBits;
     }
 
     // used in static Level container to get compressed positioned sets
@@ -647,14 +699,9 @@ public class Block extends Model {
 
     // set faces based on faceBits representation
     public void setFaceBits(int faceBits) {
-        for (int j = 0; j <= 5; j++) {
-            int mask = 1 << j;
-            int bit = (faceBits & mask) >> j;
-            if (bit == 1) {
-                enableFace(j);
-            } else {
-                disableFace(j);
-            }
+        this.faceBits = faceBits & 63;
+        if (vertices != null) {
+            setFaceBits(vertices, this.faceBits);
         }
     }
 
@@ -737,41 +784,51 @@ public class Block extends Model {
         return intBuff;
     }
 
-    // returns array of adjacent free face numbers (those faces without adjacent neighbor nearby)
-    // used by Random Level Generator
-    public List<Integer> getAdjacentFreeFaceNumbers() {
-        List<Integer> result = new ArrayList<>();
-
-        int sbits = 0;
-        Pair<String, Byte> spair = LevelContainer.ALL_SOLID_MAP.get(pos);
-        if (spair != null) {
-            sbits = spair.getValue();
-        }
+    /**
+     * Bits of the faces without adjacent block. Solid neighbors are checked
+     * first, fluid neighbors are checked only if the block has no solid
+     * neighbor (neighbor bits are kept in the position maps).
+     *
+     * @return 6-bit free faces [LEFT, RIGHT, BOTTOM, TOP, BACK, FRONT]
+     */
+    public int getAdjacentFreeFaceBits() {
+        long key = VoxelMap.key(pos);
+        int sbits = LevelContainer.ALL_SOLID_MAP.neighborMask(key);
 
         int fbits = 0;
 
         if (sbits == 0) {
-            Pair<String, Byte> fpair = LevelContainer.ALL_FLUID_MAP.get(pos);
-            if (fpair != null) {
-                fbits = fpair.getValue();
-            }
+            fbits = LevelContainer.ALL_FLUID_MAP.neighborMask(key);
         }
 
-        int tbits = sbits | fbits;
+        return ~(sbits | fbits) & 63;
+    }
 
+    // returns array of adjacent free face numbers (those faces without adjacent neighbor nearby)
+    public List<Integer> getAdjacentFreeFaceNumbers() {
+        List<Integer> result = new ArrayList<>();
+        int bits = getAdjacentFreeFaceBits();
         for (int j = 0; j <= 5; j++) {
-            int mask = 1 << j;
-            if ((tbits & mask) == 0) {
+            if ((bits & (1 << j)) != 0) {
                 result.add(j);
             }
         }
-
         return result;
     }
 
     // assuming that blocks are the same scale
     public Vector3f getAdjacentPos(int faceNum) {
-        Vector3f result = new Vector3f();
+        return getAdjacentPos(faceNum, new Vector3f());
+    }
+
+    /**
+     * Position next to the block on the given face (doesn't allocate).
+     *
+     * @param faceNum face number [LEFT, RIGHT, BOTTOM, TOP, BACK, FRONT]
+     * @param result destination vector
+     * @return result
+     */
+    public Vector3f getAdjacentPos(int faceNum, Vector3f result) {
         result.x = pos.x;
         result.y = pos.y;
         result.z = pos.z;
@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.models;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.lwjgl.BufferUtils;
+import rs.alexanderstojanovich.evgl.texture.Texture;
+
+/**
+ * Shared (flyweight) block geometry. One immutable mesh exists per (texture,
+ * face bits, reversed) variant, blocks & tuples only refer to it. Index
+ * buffers for all 64 face masks are cached as well. Pure Java, doesn't require
+ * GL context. Shared vertices & buffers must not be modified.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class BlockMesh {
+
+    public static final int FACE_MASKS = 64;
+
+    // world texture id + 1 (zero is for non-world textures) x face bits x reversed
+    private static final BlockMesh[] MESHES = new BlockMesh[(Texture.WORLD_TEX_NUM + 1) * FACE_MASKS * 2];
+    private static final IntBuffer[] INDEX_BUFFERS = new IntBuffer[FACE_MASKS];
+
+    static {
+        for (int faceBits = 0; faceBits < FACE_MASKS; faceBits++) {
+            INDEX_BUFFERS[faceBits] = Block.createIntBuffer(faceBits);
+        }
+    }
+
+    private final int texId;
+    private final int faceBits;
+    private final boolean reversed;
+    private final List<Vertex> vertices;
+    // enabled vertices only (as they're uploaded to vbo)
+    private final FloatBuffer vertexBuffer;
+
+    private BlockMesh(int texId, int faceBits, boolean reversed) {
+        this.texId = texId;
+        this.faceBits = faceBits;
+        this.reversed = reversed;
+        List<Vertex> list = new ArrayList<>(Block.VERTEX_COUNT);
+        Block.deepCopyTo(list, texId);
+        Block.setFaceBits(list, faceBits);
+        if (reversed) {
+            Block.reverseFaceVertexOrder(list);
+        }
+        this.vertices = Collections.unmodifiableList(list);
+        this.vertexBuffer = createVertexBuffer(list);
+    }
+
+    /**
+     * Get (or create) shared mesh of the variant. Meshes are immutable, so
+     * it's safe to call it from any thread.
+     *
+     * @param texId world texture id (-1 if it's not world texture)
+     * @param faceBits 6-bit enabled faces [LEFT, RIGHT, BOTTOM, TOP, BACK,
+     * FRONT]
+     * @param reversed are face vertices in reversed order (camera in fluid)
+     * @return shared mesh
+     */
+    public static BlockMesh get(int texId, int faceBits, boolean reversed) {
+        final int index = ((texId + 1) * FACE_MASKS + (faceBits & 63)) * 2 + (reversed ? 1 : 0);
+        BlockMesh mesh = MESHES[index];
+        if (mesh == null) {
+            // racing threads may create the same variant, only one is kept
+            mesh = new BlockMesh(texId, faceBits & 63, reversed);
+            MESHES[index] = mesh;
+        }
+        return mesh;
+    }
+
+    /**
+     * Get cached index buffer of the face mask. Buffer is shared, don't
+     * change its position or content.
+     *
+     * @param faceBits 6-bit enabled faces
+     * @return direct index buffer
+     */
+    public static IntBuffer indexBuffer(int faceBits) {
+        return INDEX_BUFFERS[faceBits & 63];
+    }
+
+    /**
+     * Number of indices of the face mask.
+     *
+     * @param faceBits 6-bit enabled faces
+     * @return num of indices (6 per face)
+     */
+    public static int indicesNum(int faceBits) {
+        return 6 * Integer.bitCount(faceBits & 63);
+    }
+
+    /**
+     * Put enabled vertices into new direct buffer.
+     *
+     * @param vertices vertices (of one block)
+     * @return flipped buffer
+     */
+    public static FloatBuffer createVertexBuffer(List<Vertex> vertices) {
+        FloatBuffer fb = BufferUtils.createFloatBuffer(vertices.size() * Vertex.SIZE);
+        putVertices(fb, vertices);
+        fb.flip();
+        return fb;
+    }
+
+    // put enabled vertices into the buffer (at its position)
+    public static void putVertices(FloatBuffer fb, List<Vertex> vertices) {
+        for (Vertex vertex : vertices) {
+            if (vertex.isEnabled()) {
+                fb.put(vertex.getPos().x);
+                fb.put(vertex.getPos().y);
+                fb.put(vertex.getPos().z);
+
+                fb.put(vertex.getNormal().x);
+                fb.put(vertex.getNormal().y);
+                fb.put(vertex.getNormal().z);
+
+                fb.put(vertex.getUv().x);
+                fb.put(vertex.getUv().y);
+            }
+        }
+    }
+
+    /**
+     * Copy shared vertices into the list, used when vertices must be changed
+     * (fluid animation, skybox uvs).
+     *
+     * @param dest destination list (cleared first)
+     */
+    public void copyTo(List<Vertex> dest) {
+        dest.clear();
+        for (Vertex v : vertices) {
+            Vertex copy = new Vertex(new Vector3f(v.getPos()), new Vector3f(v.getNormal()), new Vector2f(v.getUv()));
+            copy.setEnabled(v.isEnabled());
+            dest.add(copy);
+        }
+    }
+
+    public int getTexId() {
+        return texId;
+    }
+
+    public int getFaceBits() {
+        return faceBits;
+    }
+
+    public boolean isReversed() {
+        return reversed;
+    }
+
+    // shared vertices (unmodifiable list)
+    public List<Vertex> getVertices() {
+        return vertices;
+    }
+
+    // shared vertex buffer, don't change its position or content
+    public FloatBuffer getVertexBuffer() {
+        return vertexBuffer;
+    }
+
+    public int getIndicesNum() {
+        return indicesNum(faceBits);
+    }
+
+}
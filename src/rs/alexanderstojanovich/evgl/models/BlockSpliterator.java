@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.models;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import rs.alexanderstojanovich.evgl.level.CacheModule;
+
+/**
+ * Spliterator over blocks of range of chunks (chunk -> tuple -> block),
+ * without copying them into one list. Splits by chunks first, then by tuples
+ * of the last chunk, so parallel streams keep the block order. Compact chunks
+ * are decoded when they're reached. Chunks must not be changed while
+ * traversing.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class BlockSpliterator implements Spliterator<Block> {
+
+    private final List<Chunk> chunks;
+    private int chunkIndex; // next chunk
+    private final int chunkFence;
+
+    // tuples & blocks of the current chunk
+    private List<Tuple> tuples = Collections.emptyList();
+    private int tupleIndex = 0;
+    private int tupleFence = 0;
+    private List<Block> blocks = Collections.emptyList();
+    private int blockIndex = 0;
+
+    /**
+     * Spliterator over the chunks [fromIndex, toIndex) of the list.
+     *
+     * @param chunks chunk list
+     * @param fromIndex index of the first chunk (inclusive)
+     * @param toIndex index of the last chunk (exclusive)
+     */
+    public BlockSpliterator(List<Chunk> chunks, int fromIndex, int toIndex) {
+        this.chunks = chunks;
+        this.chunkIndex = fromIndex;
+        this.chunkFence = toIndex;
+    }
+
+    // spliterator over blocks of one chunk
+    public BlockSpliterator(Chunk chunk) {
+        this(Collections.singletonList(chunk), 0, 1);
+    }
+
+    // move to the next chunk (skipping cached ones)
+    private void enter(Chunk chunk) {
+        blocks = Collections.emptyList();
+        blockIndex = 0;
+        if (CacheModule.isCached(chunk.getId(), chunk.isSolid())) {
+            tuples = Collections.emptyList();
+        } else if (chunk.isCompact()) {
+            tuples = Collections.emptyList();
+            blocks = chunk.getPaletteStore().toBlockList(chunk.getId());
+        } else {
+            tuples = chunk.getTupleList();
+        }
+        tupleIndex = 0;
+        tupleFence = tuples.size();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Block> action) {
+        while (true) {
+            if (blockIndex < blocks.size()) {
+                action.accept(blocks.get(blockIndex++));
+                return true;
+            } else if (tupleIndex < tupleFence) {
+                blocks = tuples.get(tupleIndex++).getBlockList();
+                blockIndex = 0;
+            } else if (chunkIndex < chunkFence) {
+                enter(chunks.get(chunkIndex++));
+            } else {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Block> action) {
+        while (true) {
+            for (int i = blockIndex; i < blocks.size(); i++) {
+                action.accept(blocks.get(i));
+            }
+            blockIndex = blocks.size();
+            if (tupleIndex < tupleFence) {
+                blocks = tuples.get(tupleIndex++).getBlockList();
+                blockIndex = 0;
+            } else if (chunkIndex < chunkFence) {
+                enter(chunks.get(chunkIndex++));
+            } else {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<Block> trySplit() {
+        if (chunkFence - chunkIndex == 1 && tupleIndex == tupleFence && blockIndex >= blocks.size()) {
+            enter(chunks.get(chunkIndex++)); // last chunk can be split only by tuples
+        }
+        final int chunksLeft = chunkFence - chunkIndex;
+        final int tuplesLeft = tupleFence - tupleIndex;
+        final BlockSpliterator prefix;
+        if (chunksLeft >= 2) {
+            // prefix takes what's left of the current chunk & first half of the chunks
+            int mid = chunkIndex + chunksLeft / 2;
+            prefix = new BlockSpliterator(chunks, chunkIndex, mid);
+            prefix.tuples = tuples;
+            prefix.tupleIndex = tupleIndex;
+            prefix.tupleFence = tupleFence;
+            tuples = Collections.emptyList();
+            tupleIndex = tupleFence = 0;
+            chunkIndex = mid;
+        } else if (tuplesLeft >= 2) {
+            // prefix takes first half of the tuples of the current chunk
+            int mid = tupleIndex + tuplesLeft / 2;
+            prefix = new BlockSpliterator(chunks, chunkIndex, chunkIndex);
+            prefix.tuples = tuples;
+            prefix.tupleIndex = tupleIndex;
+            prefix.tupleFence = mid;
+            tupleIndex = mid;
+        } else {
+            return null;
+        }
+        // ..and the rest of the current block list
+        prefix.blocks = blocks;
+        prefix.blockIndex = blockIndex;
+        blocks = Collections.emptyList();
+        blockIndex = 0;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = blocks.size() - blockIndex;
+        for (int i = tupleIndex; i < tupleFence; i++) {
+            size += tuples.get(i).getBlockList().size();
+        }
+        for (int i = chunkIndex; i < chunkFence; i++) {
+            size += chunks.get(i).size();
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+}
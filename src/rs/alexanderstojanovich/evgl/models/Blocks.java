@@ -17,6 +17,7 @@
 package rs.alexanderstojanovich.evgl.models;
 
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import org.magicwerk.brownies.collections.BigList;
 import rs.alexanderstojanovich.evgl.level.LightSource;
@@ -78,6 +79,20 @@ public class Blocks { // mutual class for both solid blocks and fluid blocks wit
         }
     }
 
+    /**
+     * Visit blocks (without copying the list).
+     *
+     * @param filter which blocks are visited (null for all)
+     * @param action action on the block
+     */
+    public void forEachBlock(Predicate<? super Block> filter, Consumer<? super Block> action) {
+        for (Block block : blockList) {
+            if (filter == null || filter.test(block)) {
+                action.accept(block);
+            }
+        }
+    }
+
     public boolean isBuffered() {
         return buffered;
     }
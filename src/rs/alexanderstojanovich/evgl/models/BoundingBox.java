@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.models;
+
+import java.util.List;
+import org.joml.Vector3f;
+import rs.alexanderstojanovich.evgl.core.Frustum;
+import rs.alexanderstojanovich.evgl.core.OcclusionCuller;
+
+/**
+ * Axis aligned bounding box of group of blocks (chunk or tuple). Box is
+ * recalculated only if it's marked dirty.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class BoundingBox {
+
+    private float minX, minY, minZ;
+    private float maxX, maxY, maxZ;
+    private boolean empty = true;
+    private boolean dirty = true;
+
+    // make box empty (before including blocks)
+    public void reset() {
+        minX = minY = minZ = Float.POSITIVE_INFINITY;
+        maxX = maxY = maxZ = Float.NEGATIVE_INFINITY;
+        empty = true;
+        dirty = false;
+    }
+
+    // grow the box so it contains the block
+    public void include(Block block) {
+        Vector3f pos = block.getPos();
+        float hw = block.getWidth() / 2.0f;
+        float hh = block.getHeight() / 2.0f;
+        float hd = block.getDepth() / 2.0f;
+        minX = Math.min(minX, pos.x - hw);
+        minY = Math.min(minY, pos.y - hh);
+        minZ = Math.min(minZ, pos.z - hd);
+        maxX = Math.max(maxX, pos.x + hw);
+        maxY = Math.max(maxY, pos.y + hh);
+        maxZ = Math.max(maxZ, pos.z + hd);
+        empty = false;
+    }
+
+    /**
+     * Recalculate the box (if dirty) from the blocks.
+     *
+     * @param blocks blocks which box contains
+     */
+    public void update(List<Block> blocks) {
+        if (dirty) {
+            reset();
+            for (Block block : blocks) {
+                include(block);
+            }
+        }
+    }
+
+    /**
+     * Test the box against the frustum (empty box is always outside).
+     *
+     * @param frustum view frustum
+     * @return Frustum.OUTSIDE, Frustum.INTERSECT or Frustum.INSIDE
+     */
+    public int intersect(Frustum frustum) {
+        if (empty) {
+            return Frustum.OUTSIDE;
+        }
+        return frustum.intersect(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * Test the box against rasterized occluders (empty box is occluded).
+     *
+     * @param occlusionCuller occlusion culler (rasterized for this frame)
+     * @return is occluded
+     */
+    public boolean isOccludedBy(OcclusionCuller occlusionCuller) {
+        if (empty) {
+            return true;
+        }
+        return occlusionCuller.isOccluded(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    // hint that blocks changed and box must be recalculated
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMinY() {
+        return minY;
+    }
+
+    public float getMinZ() {
+        return minZ;
+    }
+
+    public float getMaxX() {
+        return maxX;
+    }
+
+    public float getMaxY() {
+        return maxY;
+    }
+
+    public float getMaxZ() {
+        return maxZ;
+    }
+
+}
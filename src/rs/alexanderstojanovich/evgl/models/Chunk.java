@@ -16,20 +16,33 @@
  */
 package rs.alexanderstojanovich.evgl.models;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.joml.Vector3f;
 import org.magicwerk.brownies.collections.BigList;
 import org.magicwerk.brownies.collections.GapList;
+import rs.alexanderstojanovich.evgl.core.Frustum;
 import rs.alexanderstojanovich.evgl.level.CacheModule;
 import rs.alexanderstojanovich.evgl.level.LevelContainer;
 import rs.alexanderstojanovich.evgl.level.LightSource;
 import rs.alexanderstojanovich.evgl.level.LightSources;
+import rs.alexanderstojanovich.evgl.main.Configuration;
 import rs.alexanderstojanovich.evgl.main.GameObject;
 import rs.alexanderstojanovich.evgl.shaders.ShaderProgram;
-import rs.alexanderstojanovich.evgl.util.Pair;
+import rs.alexanderstojanovich.evgl.texture.Texture;
 import rs.alexanderstojanovich.evgl.util.Vector3fUtils;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
 
 /**
  *
@@ -37,14 +50,13 @@ import rs.alexanderstojanovich.evgl.util.Vector3fUtils;
  */
 public class Chunk implements Comparable<Chunk> { // some operations are mutually exclusive    
 
-    // MODULATOR, DIVIDER, VISION are used in chunkCheck and for determining visible chunks
+    // bound of the generated level (world itself is not bounded by the chunks)
     public static final int BOUND = 512;
     public static final float VISION = 256.0f; // determines visibility
-    private static final int GRID_SIZE = 4;
-
-    public static final float STEP = 1.0f / (float) (GRID_SIZE);
-    public static final int CHUNK_NUM = GRID_SIZE * GRID_SIZE;
-    public static final float LENGTH = BOUND * STEP;
+    // chunk edge length on x & z axis (chunks are columns over whole y)
+    public static final int CHUNK_SIZE = Configuration.getInstance().getChunkSize();
+    // visible chunks are ones in the (square) ring of this radius around the current one
+    public static final int RING_RADIUS = Math.max(1, (int) Math.ceil(VISION / CHUNK_SIZE));
 
     // id of the chunk (signed)
     private final int id;
@@ -55,11 +67,27 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
     //--------------------------MODULATOR--------DIVIDER--------VISION-------D--------E-----------------------------
     //------------------------blocks-vec4Vbos-mat4Vbos-texture-faceEnBits------------------------
     private final List<Tuple> tupleList = new GapList<>();
+    // same tuples in direct [texture id][face bits] table (for constant time lookup)
+    private final Tuple[][] tupleTable = new Tuple[Texture.WORLD_TEX_NUM][64];
+
+    // dense (palette compressed) storage, not null when chunk is compacted
+    private PaletteStore paletteStore = null;
 
     private boolean buffered = false;
 
+    // merged meshes (greedy meshing render mode), rebuilt when chunk gets dirty
+    private final List<GreedyMesh> greedyMeshes = new GapList<>();
+    private boolean meshDirty = true;
+
+    // bounds of all the blocks (for frustum culling), recalculated when chunk gets dirty
+    private final BoundingBox bounds = new BoundingBox();
+
     private float timeToLive = LevelContainer.STD_TTL;
 
+    // unique stamp of the chunk content, renewed on every change (see Chunks.optimize)
+    private static final AtomicLong STAMP_COUNTER = new AtomicLong();
+    private long stamp = STAMP_COUNTER.incrementAndGet();
+
     public Chunk(int id, boolean solid) {
         this.id = id;
         this.solid = solid;
@@ -70,36 +98,60 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
         return Chunks.COMPARATOR.compare(this, o);
     }
 
+    // blocks changed, so buffers, meshes, bounds & stamp must be renewed
+    private void markChanged() {
+        buffered = false;
+        meshDirty = true;
+        bounds.markDirty();
+        stamp = STAMP_COUNTER.incrementAndGet();
+    }
+
     /**
-     * Binary search of the tuple. Tuples are sorted by name ascending.
-     * Complexity is logarithmic.
+     * Gets the tuple from the table. Complexity is constant.
+     *
+     * @param texId world texture id
+     * @param faceBits face bits
+     * @return Tuple if found (null if not found)
+     */
+    public Tuple getTuple(int texId, int faceBits) {
+        if (texId < 0 || texId >= Texture.WORLD_TEX_NUM) {
+            return null;
+        }
+        return tupleTable[texId][faceBits & 63];
+    }
+
+    /**
+     * Gets the tuple by texture name (compatibility, prefer texture id).
      *
      * @param keyTexture texture name part
      * @param keyFaceBits face bits part
      * @return Tuple if found (null if not found)
      */
     public Tuple getTuple(String keyTexture, Integer keyFaceBits) {
-        String keyName = String.format("%s%02d", keyTexture, keyFaceBits);
-        int left = 0;
-        int right = tupleList.size() - 1;
-        while (left <= right) {
-            int mid = left + (right - left) / 2;
-            Tuple candidate = tupleList.get(mid);
-            int res = candidate.getName().compareTo(keyName);
-            if (res < 0) {
-                left = mid + 1;
-            } else if (res == 0) {
-                return candidate;
-            } else {
-                right = mid - 1;
-            }
+        return getTuple(Texture.worldTexId(keyTexture), keyFaceBits);
+    }
+
+    // gets the tuple, creates it if it doesn't exist (tuple list is kept sorted)
+    private Tuple obtainTuple(int texId, int faceBits) {
+        Tuple tuple = tupleTable[texId][faceBits];
+        if (tuple == null) {
+            tuple = new Tuple(texId, faceBits);
+            tupleTable[texId][faceBits] = tuple;
+            tupleList.add(tuple);
+            tupleList.sort(Tuple.TUPLE_COMP);
         }
-        return null;
+        return tuple;
+    }
+
+    // removes the (empty) tuple from both list & table
+    private void dropTuple(Tuple tuple) {
+        tupleList.remove(tuple);
+        tupleTable[tuple.texId()][tuple.faceBits()] = null;
     }
 
     /**
-     * Binary search of the tuple. Tuples are sorted by name ascending.
-     * Complexity is logarithmic.
+     * Binary search of the tuple. Tuples are sorted by key (same order as
+     * name) ascending. Complexity is logarithmic.
      *
      * @param tupleList provided tuple list
      * @param keyTexture texture name part
@@ -107,13 +159,17 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
      * @return Tuple if found (null if not found)
      */
     public static Tuple getTuple(List<Tuple> tupleList, String keyTexture, Integer keyFaceBits) {
-        String keyName = String.format("%s%02d", keyTexture, keyFaceBits);
+        int texId = Texture.worldTexId(keyTexture);
+        if (texId == -1) {
+            return null;
+        }
+        int key = Tuple.key(texId, keyFaceBits);
         int left = 0;
         int right = tupleList.size() - 1;
         while (left <= right) {
             int mid = left + (right - left) / 2;
             Tuple candidate = tupleList.get(mid);
-            int res = candidate.getName().compareTo(keyName);
+            int res = Integer.compare(candidate.getKey(), key);
             if (res < 0) {
                 left = mid + 1;
             } else if (res == 0) {
@@ -126,15 +182,15 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
     }
 
     /**
-     * Gets Block from the tuple block list (duplicates may exist but in very
-     * low quantity). Complexity is O(log(n)+k).
+     * Gets Block from the tuple block list (sorted by morton code, duplicates
+     * may exist but in very low quantity). Complexity is O(log(n)+k).
      *
      * @param tuple (chunk) tuple where block might be located
      * @param pos Vector3f position of the block
      * @return block if found (null if not found)
      */
     public static Block getBlock(Tuple tuple, Vector3f pos) {
-        String keyStr = Vector3fUtils.float3ToUniqueString(pos);
+        long keyCode = Vector3fUtils.float3ToMortonCode(pos);
 
         int left = 0;
         int right = tuple.blockList.size() - 1;
@@ -143,8 +199,7 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
         while (left <= right) {
             int mid = left + (right - left) / 2;
             Block candidate = tuple.blockList.get(mid);
-            String candStr = Vector3fUtils.float3ToUniqueString(candidate.pos);
-            int res = candStr.compareTo(keyStr);
+            int res = Long.compare(candidate.getMortonCode(), keyCode);
             if (res < 0) {
                 left = mid + 1;
             } else if (res == 0) {
@@ -161,8 +216,7 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
         while (left <= right) {
             int mid = left + (right - left) / 2;
             Block candidate = tuple.blockList.get(mid);
-            String candStr = Vector3fUtils.float3ToUniqueString(candidate.pos);
-            int res = candStr.compareTo(keyStr);
+            int res = Long.compare(candidate.getMortonCode(), keyCode);
             if (res < 0) {
                 left = mid + 1;
             } else if (res == 0) {
@@ -185,6 +239,55 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
         return null;
     }
 
+    /**
+     * Gets Block of the texture at the position. Tuple of the given face bits
+     * is tried first (those are expected from the neighbor bits), then the
+     * other tuples of the texture. Read only, compact chunk is not
+     * materialized (copy of the block is made from the palette store).
+     *
+     * @param texId world texture id
+     * @param faceBits expected face bits
+     * @param pos Vector3f position of the block
+     * @return block if found (null if not found)
+     */
+    public Block getBlock(int texId, int faceBits, Vector3f pos) {
+        if (texId < 0 || texId >= Texture.WORLD_TEX_NUM) {
+            return null;
+        }
+        if (paletteStore != null) {
+            return paletteStore.getBlock(pos);
+        }
+        final Tuple[] row = tupleTable[texId];
+        Block block = null;
+        if (row[faceBits & 63] != null) {
+            block = getBlock(row[faceBits & 63], pos);
+        }
+        for (int bits = 0; block == null && bits < row.length; bits++) {
+            if (bits != (faceBits & 63) && row[bits] != null) {
+                block = getBlock(row[bits], pos);
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Index of the block in the block list of the chunk (tuple after tuple).
+     *
+     * @param block block to find
+     * @return index or -1 if block is not in the chunk (or chunk is compact)
+     */
+    public int indexOf(Block block) {
+        int offset = 0;
+        for (Tuple tuple : tupleList) {
+            if (tuple.texId() == block.getTexId() && tuple.faceBits() == block.getFaceBits()) {
+                int index = tuple.getBlockList().indexOf(block);
+                return (index == -1) ? -1 : offset + index;
+            }
+            offset += tuple.getBlockList().size();
+        }
+        return -1;
+    }
+
     /**
      * Transfer block between two tuples. Block will be transfered from tuple
      * with formFaceBits to tuple with current facebits.
@@ -194,27 +297,22 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
      * @param currFaceBits face bits current (after the change)
      */
     public void transfer(Block block, int formFaceBits, int currFaceBits) { // update fluids use this to transfer fluid blocks between tuples
-        String texture = block.texName;
+        int texId = block.getTexId();
 
-        Tuple srcTuple = getTuple(texture, formFaceBits);
+        Tuple srcTuple = getTuple(texId, formFaceBits);
         if (srcTuple != null) { // lazy aaah!
             srcTuple.getBlockList().remove(block);
             if (srcTuple.getBlockList().isEmpty()) {
-                tupleList.remove(srcTuple);
+                dropTuple(srcTuple);
             }
         }
 
-        Tuple dstTuple = getTuple(texture, currFaceBits);
-        if (dstTuple == null) {
-            dstTuple = new Tuple(texture, currFaceBits);
-            tupleList.add(dstTuple);
-            tupleList.sort(Tuple.TUPLE_COMP);
-        }
+        Tuple dstTuple = obtainTuple(texId, currFaceBits);
         List<Block> blockList = dstTuple.getBlockList();
         blockList.add(block);
-        blockList.sort(Block.FLOAT3_BITS_COMP);
+        blockList.sort(Block.MORTON_COMP);
 
-        buffered = false;
+        markChanged();
     }
 
     /**
@@ -227,9 +325,10 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
      */
     protected void updateSolidForAdd(Block block) {
         int faceBitsBefore = block.getFaceBits();
-        Pair<String, Byte> pair = LevelContainer.ALL_SOLID_MAP.get(block.pos);
-        if (pair != null) {
-            byte neighborBits = pair.getValue();
+        long key = VoxelMap.key(block.pos);
+        int value = LevelContainer.ALL_SOLID_MAP.get(key);
+        if (value != VoxelMap.NONE) {
+            int neighborBits = VoxelMap.neighborBits(value);
             block.setFaceBits(~neighborBits & 63);
             int faceBitsAfter = block.getFaceBits();
             if (faceBitsBefore != faceBitsAfter) {
@@ -238,18 +337,19 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
                 transfer(block, faceBitsBefore, faceBitsAfter);
                 // check adjacent blocks
                 for (int j = Block.LEFT; j <= Block.FRONT; j++) {
-                    Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
-                    Pair<String, Byte> adjPair = LevelContainer.ALL_SOLID_MAP.get(adjPos);
-                    if (adjPair != null) {
-                        String tupleTexName = adjPair.getKey();
-                        byte adjNBits = adjPair.getValue();
+                    long adjKey = VoxelMap.adjacentKey(key, j);
+                    int adjValue = LevelContainer.ALL_SOLID_MAP.get(adjKey);
+                    if (adjValue != VoxelMap.NONE) {
+                        Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
+                        int tupleTexId = VoxelMap.texId(adjValue);
+                        int adjNBits = VoxelMap.neighborBits(adjValue);
                         int k = ((j & 1) == 0 ? j + 1 : j - 1);
                         int mask = 1 << k;
                         // revert the bit that was set in LevelContainer
                         //(looking for old bits i.e. current tuple)
                         int tupleBits = adjNBits ^ (~mask & 63);
 
-                        Tuple tuple = getTuple(tupleTexName, tupleBits);
+                        Tuple tuple = getTuple(tupleTexId, tupleBits);
                         Block adjBlock = null;
                         if (tuple != null) {
                             adjBlock = Chunk.getBlock(tuple, adjPos);
@@ -280,20 +380,22 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
      * @param block block to update
      */
     protected void updateSolidForRem(Block block) {
+        long key = VoxelMap.key(block.pos);
         // check adjacent blocks
         for (int j = Block.LEFT; j <= Block.FRONT; j++) {
-            Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
-            Pair<String, Byte> adjPair = LevelContainer.ALL_SOLID_MAP.get(adjPos);
-            if (adjPair != null) {
-                String tupleTexName = adjPair.getKey();
-                byte adjNBits = adjPair.getValue();
+            long adjKey = VoxelMap.adjacentKey(key, j);
+            int adjValue = LevelContainer.ALL_SOLID_MAP.get(adjKey);
+            if (adjValue != VoxelMap.NONE) {
+                Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
+                int tupleTexId = VoxelMap.texId(adjValue);
+                int adjNBits = VoxelMap.neighborBits(adjValue);
                 int k = ((j & 1) == 0 ? j + 1 : j - 1);
                 int mask = 1 << k;
                 // revert the bit that was set in LevelContainer
                 //(looking for old bits i.e. current tuple)
                 int tupleBits = adjNBits ^ (~mask & 63);
 
-                Tuple tuple = getTuple(tupleTexName, tupleBits);
+                Tuple tuple = getTuple(tupleTexId, tupleBits);
                 Block adjBlock = null;
                 if (tuple != null) {
                     adjBlock = Chunk.getBlock(tuple, adjPos);
@@ -321,20 +423,22 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
      * @param block block to update
      */
     protected void updateFluidForRem(Block block) {
+        long key = VoxelMap.key(block.pos);
         // check adjacent blocks
         for (int j = Block.LEFT; j <= Block.FRONT; j++) {
-            Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
-            Pair<String, Byte> adjPair = LevelContainer.ALL_FLUID_MAP.get(adjPos);
-            if (adjPair != null) {
-                String tupleTexName = adjPair.getKey();
-                byte adjNBits = adjPair.getValue();
+            long adjKey = VoxelMap.adjacentKey(key, j);
+            int adjValue = LevelContainer.ALL_FLUID_MAP.get(adjKey);
+            if (adjValue != VoxelMap.NONE) {
+                Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
+                int tupleTexId = VoxelMap.texId(adjValue);
+                int adjNBits = VoxelMap.neighborBits(adjValue);
                 int k = ((j & 1) == 0 ? j + 1 : j - 1);
                 int mask = 1 << k;
                 // revert the bit that was set in LevelContainer
                 //(looking for old bits i.e. current tuple)
                 int tupleBits = adjNBits ^ (~mask & 63);
 
-                Tuple tuple = getTuple(tupleTexName, tupleBits);
+                Tuple tuple = getTuple(tupleTexId, tupleBits);
                 Block adjBlock = null;
                 if (tuple != null) {
                     adjBlock = Chunk.getBlock(tuple, adjPos);
@@ -361,9 +465,10 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
             }
 
             int faceBitsBefore = solidBlock.getFaceBits();
-            Pair<String, Byte> pair = LevelContainer.ALL_SOLID_MAP.get(solidBlock.pos);
-            if (pair != null) {
-                byte neighborBits = pair.getValue();
+            long key = VoxelMap.key(solidBlock.pos);
+            int value = LevelContainer.ALL_SOLID_MAP.get(key);
+            if (value != VoxelMap.NONE) {
+                int neighborBits = VoxelMap.neighborBits(value);
                 solidBlock.setFaceBits(~neighborBits & 63);
                 int faceBitsAfter = solidBlock.getFaceBits();
                 if (faceBitsBefore != faceBitsAfter) { // if bits changed, i.e. some face(s) got disabled
@@ -381,9 +486,10 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
      */
     protected void updateFluidForAdd(Block block) {
         int faceBitsBefore = block.getFaceBits();
-        Pair<String, Byte> pair = LevelContainer.ALL_FLUID_MAP.get(block.pos);
-        if (pair != null) {
-            byte neighborBits = pair.getValue();
+        long key = VoxelMap.key(block.pos);
+        int value = LevelContainer.ALL_FLUID_MAP.get(key);
+        if (value != VoxelMap.NONE) {
+            int neighborBits = VoxelMap.neighborBits(value);
             block.setFaceBits(~neighborBits & 63);
             int faceBitsAfter = block.getFaceBits();
             if (faceBitsBefore != faceBitsAfter) {
@@ -392,18 +498,19 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
                 transfer(block, faceBitsBefore, faceBitsAfter);
                 // check adjacent blocks
                 for (int j = Block.LEFT; j <= Block.FRONT; j++) {
-                    Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
-                    Pair<String, Byte> adjPair = LevelContainer.ALL_FLUID_MAP.get(adjPos);
-                    if (adjPair != null) {
-                        String tupleTexName = adjPair.getKey();
-                        byte adjNBits = adjPair.getValue();
+                    long adjKey = VoxelMap.adjacentKey(key, j);
+                    int adjValue = LevelContainer.ALL_FLUID_MAP.get(adjKey);
+                    if (adjValue != VoxelMap.NONE) {
+                        Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
+                        int tupleTexId = VoxelMap.texId(adjValue);
+                        int adjNBits = VoxelMap.neighborBits(adjValue);
                         int k = ((j & 1) == 0 ? j + 1 : j - 1);
                         int mask = 1 << k;
                         // revert the bit that was set in LevelContainer
                         //(looking for old bits i.e. current tuple)
                         int tupleBits = adjNBits ^ (~mask & 63);
 
-                        Tuple tuple = getTuple(tupleTexName, tupleBits);
+                        Tuple tuple = getTuple(tupleTexId, tupleBits);
                         Block adjBlock = null;
                         if (tuple != null) {
                             adjBlock = Chunk.getBlock(tuple, adjPos);
@@ -433,9 +540,10 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
             }
 
             int faceBitsBefore = fluidBlock.getFaceBits();
-            Pair<String, Byte> pair = LevelContainer.ALL_FLUID_MAP.get(fluidBlock.pos);
-            if (pair != null) {
-                byte neighborBits = pair.getValue();
+            long key = VoxelMap.key(fluidBlock.pos);
+            int value = LevelContainer.ALL_FLUID_MAP.get(key);
+            if (value != VoxelMap.NONE) {
+                int neighborBits = VoxelMap.neighborBits(value);
                 fluidBlock.setFaceBits(~neighborBits & 63);
                 int faceBitsAfter = fluidBlock.getFaceBits();
                 if (faceBitsBefore != faceBitsAfter) { // if bits changed, i.e. some face(s) got disabled
@@ -453,19 +561,12 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
      * adjacency)
      */
     public void addBlock(Block block, boolean useLevelContainer) {
-        String blockTexture = block.texName;
-        int blockFaceBits = block.getFaceBits();
-        Tuple tuple = getTuple(blockTexture, blockFaceBits);
-
-        if (tuple == null) {
-            tuple = new Tuple(blockTexture, blockFaceBits);
-            tupleList.add(tuple);
-            tupleList.sort(Tuple.TUPLE_COMP);
-        }
+        materialize();
+        Tuple tuple = obtainTuple(block.getTexId(), block.getFaceBits());
 
         List<Block> blockList = tuple.getBlockList();
         blockList.add(block);
-        blockList.sort(Block.FLOAT3_BITS_COMP);
+        blockList.sort(Block.MORTON_COMP);
 
         if (useLevelContainer) {
             // level container also set neighbor bits
@@ -483,7 +584,30 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
             }
         }
 
-        buffered = false;
+        markChanged();
+    }
+
+    /**
+     * Append block to its tuple without sorting (used in bulk insert).
+     * Face bits of the block must be set already.
+     *
+     * @param block block to append
+     */
+    public void appendBlock(Block block) {
+        materialize();
+        Tuple tuple = obtainTuple(block.getTexId(), block.getFaceBits());
+
+        tuple.getBlockList().add(block);
+        markChanged();
+    }
+
+    /**
+     * Sort block lists of all the tuples (after bulk insert).
+     */
+    public void sortBlocks() {
+        for (Tuple tuple : tupleList) {
+            tuple.getBlockList().sort(Block.MORTON_COMP);
+        }
     }
 
     /**
@@ -494,15 +618,14 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
      * adjacency)
      */
     public void removeBlock(Block block, boolean useLevelContainer) {
-        String blockTexture = block.texName;
-        int blockFaceBits = block.getFaceBits();
-        Tuple target = getTuple(blockTexture, blockFaceBits);
+        materialize();
+        Tuple target = getTuple(block.getTexId(), block.getFaceBits());
         if (target != null) {
             target.getBlockList().remove(block);
-            buffered = false;
+            markChanged();
             // if tuple has no blocks -> remove it
             if (target.getBlockList().isEmpty()) {
-                tupleList.remove(target);
+                dropTuple(target);
             }
 
             if (useLevelContainer) {
@@ -522,6 +645,71 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
         }
     }
 
+    /**
+     * Move all the blocks of the chunk into dense (palette) storage. Tuples
+     * are cleared so chunk holds no block objects while compacted. Chunk
+     * stays as is if palette overflows.
+     */
+    public void compact() {
+        if (paletteStore != null) {
+            return;
+        }
+        PaletteStore store = new PaletteStore(solid);
+        for (Tuple tuple : tupleList) {
+            for (Block block : tuple.getBlockList()) {
+                if (!store.put(block)) {
+                    return;
+                }
+            }
+        }
+        for (Tuple tuple : tupleList) {
+            tuple.getBlockList().clear();
+        }
+        tupleList.clear();
+        for (Tuple[] row : tupleTable) {
+            Arrays.fill(row, null);
+        }
+        paletteStore = store;
+        markChanged();
+    }
+
+    /**
+     * Materialize blocks from dense (palette) storage back into the tuples.
+     * Each tuple is sorted only once.
+     */
+    public void materialize() {
+        if (paletteStore == null) {
+            return;
+        }
+        PaletteStore store = paletteStore;
+        paletteStore = null;
+        for (Block block : store.toBlockList(id)) {
+            appendBlock(block);
+        }
+        sortBlocks();
+        markChanged();
+    }
+
+    public boolean isCompact() {
+        return paletteStore != null;
+    }
+
+    /**
+     * Number of blocks in the chunk (either in tuples or in dense storage).
+     *
+     * @return block count
+     */
+    public int size() {
+        if (paletteStore != null) {
+            return paletteStore.size();
+        }
+        int size = 0;
+        for (Tuple tuple : tupleList) {
+            size += tuple.getBlockList().size();
+        }
+        return size;
+    }
+
     // hint that stuff should be buffered again
     public void unbuffer() {
         if (!CacheModule.isCached(id, solid)) {
@@ -568,6 +756,68 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
         }
     }
 
+    /**
+     * Test chunk bounds against the view frustum. Bounds are recalculated
+     * only if blocks changed. Compacted chunk is outside (not rendered).
+     *
+     * @param frustum view frustum
+     * @return Frustum.OUTSIDE, Frustum.INTERSECT or Frustum.INSIDE
+     */
+    public int intersect(Frustum frustum) {
+        if (paletteStore != null) {
+            return Frustum.OUTSIDE;
+        }
+        if (bounds.isDirty()) {
+            bounds.reset();
+            for (Tuple tuple : tupleList) {
+                for (Block block : tuple.getBlockList()) {
+                    bounds.include(block);
+                }
+            }
+        }
+        return bounds.intersect(frustum);
+    }
+
+    /**
+     * Render the chunk as merged (greedy) meshes. Meshes are rebuilt only if
+     * blocks were added, removed or transfered since the last build.
+     *
+     * @param shaderProgram shader program
+     * @param lightSrc light sources
+     */
+    public void renderGreedy(ShaderProgram shaderProgram, LightSources lightSrc) {
+        if (shaderProgram == null || paletteStore != null || timeToLive <= 0) {
+            return;
+        }
+        if (meshDirty) {
+            releaseMeshes();
+            greedyMeshes.addAll(GreedyMesher.build(getBlockList()));
+            meshDirty = false;
+        }
+        for (GreedyMesh mesh : greedyMeshes) {
+            if (!mesh.isBuffered()) {
+                mesh.bufferAll();
+            }
+            mesh.render(shaderProgram, lightSrc);
+        }
+    }
+
+    // deallocates merged meshes from graphic card
+    public void releaseMeshes() {
+        for (GreedyMesh mesh : greedyMeshes) {
+            mesh.release();
+        }
+        greedyMeshes.clear();
+        meshDirty = true;
+    }
+
+    // hand over merged meshes to be released later by the renderer (GL thread)
+    public void retireMeshes(List<GreedyMesh> retired) {
+        retired.addAll(greedyMeshes);
+        greedyMeshes.clear();
+        meshDirty = true;
+    }
+
     // deallocates Chunk from graphic card
     @Deprecated
     public void release() {
@@ -588,72 +838,144 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
      * @return chunk number (grid size based)
      */
     public static int chunkFunc(Vector3f pos) {
-        // normalized x & z
-        float nx = (pos.x + BOUND) / (float) (BOUND << 1);
-        float nz = (pos.z + BOUND) / (float) (BOUND << 1);
+        return chunkFunc(pos.x, pos.z);
+    }
 
-        // check which column of the interval
-        int col = Math.round(nx * (1.0f / STEP - 1.0f));
+    /**
+     * Calculate chunk based on position.
+     *
+     * @param x position x-coord
+     * @param z position z-coord
+     * @return chunk id (packed chunk coordinates)
+     */
+    public static int chunkFunc(float x, float z) {
+        int cx = (int) Math.floor(x / CHUNK_SIZE);
+        int cz = (int) Math.floor(z / CHUNK_SIZE);
+        return chunkId(cx, cz);
+    }
 
-        // check which rows of the interval
-        int row = Math.round(nz * (1.0f / STEP - 1.0f));
+    /**
+     * Chunk id from chunk coordinates. Each coordinate is signed 16-bit (z is
+     * in the high half, x in the low half).
+     *
+     * @param cx chunk x-coord
+     * @param cz chunk z-coord
+     * @return chunk id
+     */
+    public static int chunkId(int cx, int cz) {
+        return (cz << 16) | (cx & 0xFFFF);
+    }
 
-        // determining chunk id -> row(z) & col(x)
-        int cid = row * GRID_SIZE + col;
+    public static int chunkX(int chunkId) {
+        return (short) chunkId;
+    }
 
-        return cid;
+    public static int chunkZ(int chunkId) {
+        return chunkId >> 16;
     }
 
     /**
      * Calculate position centroid based on the chunk Id
      *
-     * @param chunkId chunk number
+     * @param chunkId chunk id
      *
      * @return chunk middle position
      */
     public static Vector3f invChunkFunc(int chunkId) {
-        // determining row(z) & col(x)
-        int col = chunkId % GRID_SIZE;
-        int row = chunkId / GRID_SIZE;
-
-        // calculating middle normalized
-        // col * STEP + STEP / 2.0f;
-        // row * STEP + STEP / 2.0f;
-        float nx = STEP * (col + 0.5f);
-        float nz = STEP * (row + 0.5f);
-
-        float x = nx * (BOUND << 1) - BOUND;
-        float z = nz * (BOUND << 1) - BOUND;
-
+        float x = (chunkX(chunkId) + 0.5f) * CHUNK_SIZE;
+        float z = (chunkZ(chunkId) + 0.5f) * CHUNK_SIZE;
         return new Vector3f(x, 0.0f, z);
     }
 
     // determine which chunks are visible by this chunk
     public static void determineVisible(Queue<Integer> vChnkIdQueue, Queue<Integer> iChnkIdQueue, Vector3f actorPos) {
+        determineVisible(vChnkIdQueue, iChnkIdQueue, actorPos, Collections.<Integer>emptyList());
+    }
+
+    /**
+     * Determine visible chunks (ring around the current one) and invisible
+     * ones from the candidates (chunks which are out of the ring).
+     *
+     * @param vChnkIdQueue visible chunk ids (current chunk is first)
+     * @param iChnkIdQueue invisible chunk ids
+     * @param actorPos actor (camera) position
+     * @param candidateIds chunk ids to check for invisibility (loaded ones)
+     */
+    public static void determineVisible(Queue<Integer> vChnkIdQueue, Queue<Integer> iChnkIdQueue, Vector3f actorPos, Collection<Integer> candidateIds) {
         vChnkIdQueue.clear();
         iChnkIdQueue.clear();
-        // current chunk where player is        
+        // current chunk where player is
         int currChunkId = chunkFunc(actorPos);
-        Vector3f currChunkPos = invChunkFunc(currChunkId);
-        float distance0 = actorPos.distance(currChunkPos);
-        if (!vChnkIdQueue.contains(currChunkId)) {
-            vChnkIdQueue.offer(currChunkId);
-        }
-        // rest of the chunks
-        for (int chunkId = 0; chunkId < Chunk.CHUNK_NUM; chunkId++) {
-            if (chunkId != currChunkId) {
-                Vector3f chunkPos = invChunkFunc(chunkId);
-                float distance1 = actorPos.distance(chunkPos);
-                if (distance1 - distance0 <= LENGTH) {
-                    vChnkIdQueue.offer(chunkId);
-                } else if (!iChnkIdQueue.contains(chunkId)) {
+        int currX = chunkX(currChunkId);
+        int currZ = chunkZ(currChunkId);
+        vChnkIdQueue.offer(currChunkId);
+        // rest of the ring
+        for (int dz = -RING_RADIUS; dz <= RING_RADIUS; dz++) {
+            for (int dx = -RING_RADIUS; dx <= RING_RADIUS; dx++) {
+                if (dx != 0 || dz != 0) {
+                    vChnkIdQueue.offer(chunkId(currX + dx, currZ + dz));
+                }
+            }
+        }
+        for (int chunkId : candidateIds) {
+            if (Math.abs(chunkX(chunkId) - currX) > RING_RADIUS || Math.abs(chunkZ(chunkId) - currZ) > RING_RADIUS) {
+                if (!iChnkIdQueue.contains(chunkId)) {
                     iChnkIdQueue.offer(chunkId);
                 }
             }
         }
     }
 
+    /**
+     * Visit blocks of the chunk (without copying them into one list). Blocks
+     * of compact chunk are decoded.
+     *
+     * @param filter which blocks are visited (null for all)
+     * @param action action on the block
+     */
+    public void forEachBlock(Predicate<? super Block> filter, Consumer<? super Block> action) {
+        if (paletteStore != null) {
+            for (Block block : paletteStore.toBlockList(id)) {
+                if (filter == null || filter.test(block)) {
+                    action.accept(block);
+                }
+            }
+            return;
+        }
+        for (Tuple tuple : tupleList) {
+            tuple.forEachBlock(filter, action);
+        }
+    }
+
+    // spliterator over the blocks of the chunk (splits by tuples)
+    public Spliterator<Block> spliterator() {
+        return new BlockSpliterator(this);
+    }
+
+    public Stream<Block> stream(boolean parallel) {
+        return StreamSupport.stream(spliterator(), parallel);
+    }
+
+    /**
+     * Blocks of the chunk as iterable view (not a copy), for loops which
+     * break early.
+     *
+     * @return iterable view
+     */
+    public Iterable<Block> blocks() {
+        return new Iterable<Block>() {
+            @Override
+            public Iterator<Block> iterator() {
+                return Spliterators.iterator(Chunk.this.spliterator());
+            }
+        };
+    }
+
+    // new list of all the blocks (copy, prefer forEachBlock or blocks)
     public List<Block> getBlockList() {
+        if (paletteStore != null) {
+            return paletteStore.toBlockList(id);
+        }
         List<Block> result = new BigList<>();
         for (Tuple tuple : tupleList) {
             result.addAll(tuple.getBlockList());
@@ -669,6 +991,10 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
         return solid;
     }
 
+    public PaletteStore getPaletteStore() {
+        return paletteStore;
+    }
+
     public List<Tuple> getTupleList() {
         return tupleList;
     }
@@ -677,10 +1003,26 @@ public class Chunk implements Comparable<Chunk> { // some operations are mutuall
         return buffered;
     }
 
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    public boolean isMeshDirty() {
+        return meshDirty;
+    }
+
+    public List<GreedyMesh> getGreedyMeshes() {
+        return greedyMeshes;
+    }
+
     public void setBuffered(boolean buffered) {
         this.buffered = buffered;
     }
 
+    public long getStamp() {
+        return stamp;
+    }
+
     public float getTimeToLive() {
         return timeToLive;
     }
@@ -16,23 +16,37 @@
  */
 package rs.alexanderstojanovich.evgl.models;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.magicwerk.brownies.collections.BigList;
 import org.magicwerk.brownies.collections.GapList;
+import rs.alexanderstojanovich.evgl.core.Frustum;
+import rs.alexanderstojanovich.evgl.core.OcclusionCuller;
 import rs.alexanderstojanovich.evgl.level.CacheModule;
 import rs.alexanderstojanovich.evgl.level.LevelContainer;
 import rs.alexanderstojanovich.evgl.level.LightSource;
 import rs.alexanderstojanovich.evgl.level.LightSources;
 import rs.alexanderstojanovich.evgl.main.GameObject;
 import rs.alexanderstojanovich.evgl.shaders.ShaderProgram;
-import rs.alexanderstojanovich.evgl.texture.Texture;
 import rs.alexanderstojanovich.evgl.util.DSLogger;
-import rs.alexanderstojanovich.evgl.util.Pair;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
 
 /**
  *
@@ -46,9 +60,47 @@ public class Chunks {
     //--------------------------A--------B--------C-------D--------E-----------------------------
     //------------------------blocks-vec4Vbos-mat4Vbos-texture-faceEnBits------------------------
     private final List<Chunk> chunkList = new GapList<>();
+    // chunk id -> chunk (hashed lookup, chunk list is kept sorted by id)
+    private final Map<Integer, Chunk> chunkMap = new HashMap<>();
 
-    protected final List<Tuple> optimizedTuples = new GapList<>();
+    protected final List<OptimizedTuple> optimizedTuples = new GapList<>();
     protected boolean optimized = false;
+    // tuple key -> optimized tuple
+    private final Map<Integer, OptimizedTuple> optimizedMap = new HashMap<>();
+    // chunk id -> chunk stamp when it was merged into optimized tuples
+    private final Map<Integer, Long> mergedStamps = new HashMap<>();
+
+    // merged meshes of removed chunks, released on the next greedy render
+    private final List<GreedyMesh> retiredMeshes = new GapList<>();
+
+    // frustum culling state of the visible chunks (ring around the current one)
+    private final int ringDiameter = 2 * Chunk.RING_RADIUS + 1;
+    private final int[] chunkCullStates = new int[ringDiameter * ringDiameter];
+    private int cullCenterX = 0;
+    private int cullCenterZ = 0;
+    private Frustum cullFrustum = null;
+    private OcclusionCuller cullOcclusion = null;
+    // culling state of the chunk hidden by occluders (besides Frustum states)
+    private static final int OCCLUDED = -1;
+
+    // block test used for tuples straddling the frustum, reused every frame
+    private final Predicate<Block> frustumPredicate = new Predicate<Block>() {
+        @Override
+        public boolean test(Block block) {
+            Vector3f pos = block.getPos();
+            switch (chunkCullState(pos)) {
+                case Frustum.INSIDE:
+                    return true;
+                case Frustum.INTERSECT:
+                    return cullFrustum.contains(pos, block.getWidth() / 2.0f, block.getHeight() / 2.0f, block.getDepth() / 2.0f);
+                case OCCLUDED:
+                    cullOcclusion.countCulled(1);
+                    return false;
+                default:
+                    return false;
+            }
+        }
+    };
 
     public Chunks(boolean solid) {
         this.solid = solid;
@@ -75,9 +127,10 @@ public class Chunks {
             }
 
             int faceBitsBefore = solidBlock.getFaceBits();
-            Pair<String, Byte> pair = LevelContainer.ALL_SOLID_MAP.get(solidBlock.pos);
-            if (pair != null) {
-                byte neighborBits = pair.getValue();
+            long key = VoxelMap.key(solidBlock.pos);
+            int value = LevelContainer.ALL_SOLID_MAP.get(key);
+            if (value != VoxelMap.NONE) {
+                int neighborBits = VoxelMap.neighborBits(value);
                 solidBlock.setFaceBits(~neighborBits & 63);
                 int faceBitsAfter = solidBlock.getFaceBits();
                 if (faceBitsBefore != faceBitsAfter) { // if bits changed, i.e. some face(s) got disabled
@@ -99,9 +152,10 @@ public class Chunks {
             }
 
             int faceBitsBefore = fluidBlock.getFaceBits();
-            Pair<String, Byte> pair = LevelContainer.ALL_FLUID_MAP.get(fluidBlock.pos);
-            if (pair != null) {
-                byte neighborBits = pair.getValue();
+            long key = VoxelMap.key(fluidBlock.pos);
+            int value = LevelContainer.ALL_FLUID_MAP.get(key);
+            if (value != VoxelMap.NONE) {
+                int neighborBits = VoxelMap.neighborBits(value);
                 fluidBlock.setFaceBits(~neighborBits & 63);
                 int faceBitsAfter = fluidBlock.getFaceBits();
                 if (faceBitsBefore != faceBitsAfter) { // if bits changed, i.e. some face(s) got disabled
@@ -125,11 +179,12 @@ public class Chunks {
      */
     private void updateSolidForAdd(Block block) {
         int faceBitsBefore = block.getFaceBits();
-        Pair<String, Byte> pair = LevelContainer.ALL_SOLID_MAP.get(block.pos);
+        long key = VoxelMap.key(block.pos);
+        int value = LevelContainer.ALL_SOLID_MAP.get(key);
         int chunkId = Chunk.chunkFunc(block.pos);
         Chunk chunk = getChunk(chunkId);
-        if (pair != null && chunk != null) {
-            byte neighborBits = pair.getValue();
+        if (value != VoxelMap.NONE && chunk != null) {
+            int neighborBits = VoxelMap.neighborBits(value);
             block.setFaceBits(~neighborBits & 63);
             int faceBitsAfter = block.getFaceBits();
             if (faceBitsBefore != faceBitsAfter) {
@@ -140,19 +195,20 @@ public class Chunks {
                 // check adjacent blocks
                 for (int j = Block.LEFT; j <= Block.FRONT; j++) {
                     Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
+                    long adjKey = VoxelMap.adjacentKey(key, j);
                     int adjChunkId = Chunk.chunkFunc(adjPos);
                     Chunk adjChunk = getChunk(adjChunkId);
-                    Pair<String, Byte> adjPair = LevelContainer.ALL_SOLID_MAP.get(adjPos);
-                    if (adjPair != null && adjChunk != null) {
-                        String tupleTexName = adjPair.getKey();
-                        byte adjNBits = adjPair.getValue();
+                    int adjValue = LevelContainer.ALL_SOLID_MAP.get(adjKey);
+                    if (adjValue != VoxelMap.NONE && adjChunk != null) {
+                        int tupleTexId = VoxelMap.texId(adjValue);
+                        int adjNBits = VoxelMap.neighborBits(adjValue);
                         int k = ((j & 1) == 0 ? j + 1 : j - 1);
                         int mask = 1 << k;
                         // revert the bit that was set in LevelContainer
                         //(looking for old bits i.e. current tuple)
                         int tupleBits = adjNBits ^ (~mask & 63);
 
-                        Tuple tuple = adjChunk.getTuple(tupleTexName, tupleBits);
+                        Tuple tuple = adjChunk.getTuple(tupleTexId, tupleBits);
                         Block adjBlock = null;
                         if (tuple != null) {
                             adjBlock = Chunk.getBlock(tuple, adjPos);
@@ -182,13 +238,15 @@ public class Chunks {
      * @param block block to update
      */
     private void updateSolidForRem(Block block) {
+        long key = VoxelMap.key(block.pos);
         // check adjacent blocks
         for (int j = Block.LEFT; j <= Block.FRONT; j++) {
-            Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
-            Pair<String, Byte> adjPair = LevelContainer.ALL_SOLID_MAP.get(adjPos);
-            if (adjPair != null) {
-                String tupleTexName = adjPair.getKey();
-                byte adjNBits = adjPair.getValue();
+            long adjKey = VoxelMap.adjacentKey(key, j);
+            int adjValue = LevelContainer.ALL_SOLID_MAP.get(adjKey);
+            if (adjValue != VoxelMap.NONE) {
+                Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
+                int tupleTexId = VoxelMap.texId(adjValue);
+                int adjNBits = VoxelMap.neighborBits(adjValue);
                 int k = ((j & 1) == 0 ? j + 1 : j - 1);
                 int mask = 1 << k;
                 // revert the bit that was set in LevelContainer
@@ -198,7 +256,7 @@ public class Chunks {
                 int adjChunkId = Chunk.chunkFunc(adjPos);
                 Chunk adjChunk = getChunk(adjChunkId);
 
-                Tuple tuple = adjChunk.getTuple(tupleTexName, tupleBits);
+                Tuple tuple = adjChunk.getTuple(tupleTexId, tupleBits);
                 Block adjBlock = null;
 
                 if (tuple != null) {
@@ -226,11 +284,12 @@ public class Chunks {
      */
     private void updateFluidForAdd(Block block) {
         int faceBitsBefore = block.getFaceBits();
-        Pair<String, Byte> pair = LevelContainer.ALL_FLUID_MAP.get(block.pos);
+        long key = VoxelMap.key(block.pos);
+        int value = LevelContainer.ALL_FLUID_MAP.get(key);
         int chunkId = Chunk.chunkFunc(block.pos);
         Chunk chunk = getChunk(chunkId);
-        if (pair != null && chunk != null) {
-            byte neighborBits = pair.getValue();
+        if (value != VoxelMap.NONE && chunk != null) {
+            int neighborBits = VoxelMap.neighborBits(value);
             block.setFaceBits(~neighborBits & 63);
             int faceBitsAfter = block.getFaceBits();
             if (faceBitsBefore != faceBitsAfter) {
@@ -241,19 +300,20 @@ public class Chunks {
                 // check adjacent blocks
                 for (int j = Block.LEFT; j <= Block.FRONT; j++) {
                     Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
+                    long adjKey = VoxelMap.adjacentKey(key, j);
                     int adjChunkId = Chunk.chunkFunc(adjPos);
                     Chunk adjChunk = getChunk(adjChunkId);
-                    Pair<String, Byte> adjPair = LevelContainer.ALL_FLUID_MAP.get(adjPos);
-                    if (adjPair != null && adjChunk != null) {
-                        String tupleTexName = adjPair.getKey();
-                        byte adjNBits = adjPair.getValue();
+                    int adjValue = LevelContainer.ALL_FLUID_MAP.get(adjKey);
+                    if (adjValue != VoxelMap.NONE && adjChunk != null) {
+                        int tupleTexId = VoxelMap.texId(adjValue);
+                        int adjNBits = VoxelMap.neighborBits(adjValue);
                         int k = ((j & 1) == 0 ? j + 1 : j - 1);
                         int mask = 1 << k;
                         // revert the bit that was set in LevelContainer
                         //(looking for old bits i.e. current tuple)
                         int tupleBits = adjNBits ^ (~mask & 63);
 
-                        Tuple tuple = adjChunk.getTuple(tupleTexName, tupleBits);
+                        Tuple tuple = adjChunk.getTuple(tupleTexId, tupleBits);
                         Block adjBlock = null;
                         if (tuple != null) {
                             adjBlock = Chunk.getBlock(tuple, adjPos);
@@ -284,13 +344,15 @@ public class Chunks {
      *
      */
     private void updateFluidForRem(Block block) {
+        long key = VoxelMap.key(block.pos);
         // check adjacent blocks
         for (int j = Block.LEFT; j <= Block.FRONT; j++) {
-            Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
-            Pair<String, Byte> adjPair = LevelContainer.ALL_FLUID_MAP.get(adjPos);
-            if (adjPair != null) {
-                String tupleTexName = adjPair.getKey();
-                byte adjNBits = adjPair.getValue();
+            long adjKey = VoxelMap.adjacentKey(key, j);
+            int adjValue = LevelContainer.ALL_FLUID_MAP.get(adjKey);
+            if (adjValue != VoxelMap.NONE) {
+                Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
+                int tupleTexId = VoxelMap.texId(adjValue);
+                int adjNBits = VoxelMap.neighborBits(adjValue);
                 int k = ((j & 1) == 0 ? j + 1 : j - 1);
                 int mask = 1 << k;
                 // revert the bit that was set in LevelContainer
@@ -300,7 +362,7 @@ public class Chunks {
                 int adjChunkId = Chunk.chunkFunc(adjPos);
                 Chunk adjChunk = getChunk(adjChunkId);
 
-                Tuple tuple = adjChunk.getTuple(tupleTexName, tupleBits);
+                Tuple tuple = adjChunk.getTuple(tupleTexId, tupleBits);
                 Block adjBlock = null;
 
                 if (tuple != null) {
@@ -335,8 +397,7 @@ public class Chunks {
 
         if (chunk == null) {
             chunk = new Chunk(chunkId, block.solid);
-            chunkList.add(chunk);
-            chunkList.sort(COMPARATOR);
+            addChunk(chunk);
         }
 
         chunk.addBlock(block, useLevelContainer);
@@ -347,6 +408,102 @@ public class Chunks {
         }
     }
 
+    /**
+     * Adds blocks to the chunks in bulk. Blocks are appended to their tuples,
+     * each chunk is sorted once and face bits are computed in one pass over
+     * the level container map. Already present neighbors are transfered only
+     * if their face bits changed.
+     *
+     * @param blocks blocks to add (all solid or all fluid)
+     * @param useLevelContainer update level container environment map (for
+     * adjacency), if false map must already contain the blocks
+     */
+    public void addBlocks(Collection<Block> blocks, boolean useLevelContainer) {
+        if (blocks.isEmpty()) {
+            return;
+        }
+        VoxelMap map = solid ? LevelContainer.ALL_SOLID_MAP : LevelContainer.ALL_FLUID_MAP;
+        if (useLevelContainer) {
+            LevelContainer.putBlocks(blocks);
+        }
+
+        VoxelMap batch = new VoxelMap(blocks.size());
+        Set<Chunk> modified = new HashSet<>();
+        for (Block block : blocks) {
+            long key = VoxelMap.key(block.pos);
+            batch.put(key, 0);
+            int value = map.get(key);
+            if (value != VoxelMap.NONE) {
+                block.setFaceBits(~VoxelMap.neighborBits(value) & 63);
+            }
+
+            int chunkId = Chunk.chunkFunc(block.pos);
+            Chunk chunk = getChunk(chunkId);
+            if (chunk == null) {
+                chunk = new Chunk(chunkId, solid);
+                addChunk(chunk);
+            }
+            chunk.appendBlock(block);
+            modified.add(chunk);
+
+            if (useLevelContainer && solid && block.getTexName().equals("reflc")) {
+                LightSource lightSource = new LightSource(block.pos, block.primaryColor, 32.0f);
+                if (!LevelContainer.LIGHT_SOURCES.getLightSrcList().contains(lightSource)) {
+                    LevelContainer.LIGHT_SOURCES.getLightSrcList().add(lightSource);
+                }
+            }
+        }
+
+        for (Chunk chunk : modified) {
+            chunk.sortBlocks();
+        }
+
+        // neighbors which were present before (not in the batch)
+        VoxelMap visited = new VoxelMap(64);
+        for (Block block : blocks) {
+            long key = VoxelMap.key(block.pos);
+            for (int j = Block.LEFT; j <= Block.FRONT; j++) {
+                long adjKey = VoxelMap.adjacentKey(key, j);
+                if (batch.containsKey(adjKey) || visited.containsKey(adjKey)) {
+                    continue;
+                }
+                int adjValue = map.get(adjKey);
+                if (adjValue == VoxelMap.NONE) {
+                    continue;
+                }
+                visited.put(adjKey, 0);
+
+                int adjNBits = VoxelMap.neighborBits(adjValue);
+                // revert the bits of the neighbors from the batch (looking for old bits i.e. current tuple)
+                int oldNBits = adjNBits;
+                for (int k = Block.LEFT; k <= Block.FRONT; k++) {
+                    if (batch.containsKey(VoxelMap.adjacentKey(adjKey, k))) {
+                        oldNBits &= ~(1 << k);
+                    }
+                }
+                int adjFaceBitsBefore = ~oldNBits & 63;
+                int adjFaceBitsAfter = ~adjNBits & 63;
+                if (adjFaceBitsBefore != adjFaceBitsAfter) {
+                    Vector3f adjPos = Block.getAdjacentPos(block.pos, j);
+                    Chunk adjChunk = getChunk(Chunk.chunkFunc(adjPos));
+                    if (adjChunk == null) {
+                        continue;
+                    }
+                    Tuple tuple = adjChunk.getTuple(VoxelMap.texId(adjValue), adjFaceBitsBefore);
+                    Block adjBlock = null;
+                    if (tuple != null) {
+                        adjBlock = Chunk.getBlock(tuple, adjPos);
+                    }
+                    if (adjBlock != null) {
+                        adjBlock.setFaceBits(adjFaceBitsAfter);
+                        // tranfer to correct tuple
+                        adjChunk.transfer(adjBlock, adjFaceBitsBefore, adjFaceBitsAfter);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Removes block from the chunks. Block will be located based on
      * Chunk.chunkFunc and then removed if exits.
@@ -369,39 +526,72 @@ public class Chunks {
             }
 
             // if chunk is empty (with no tuples) -> remove it
-            if (chunk.getTupleList().isEmpty()) {
-                chunkList.remove(chunk);
+            if (chunk.size() == 0) {
+                removeChunk(chunk);
             }
         }
     }
 
-// linear search through chunkList to get the chunk
-//    public Chunk getChunk(int chunkId) { 
-//        Chunk result = null;
-//        for (Chunk chunk : chunkList) {
-//            if (chunk.getId() == chunkId) {
-//                result = chunk;
-//                break;
-//            }
-//        }
-//        return result;
-//    }
-    // (logaritmic) binary search through sorted chunkList to get the chunk
+    /**
+     * Gets block at the position. Texture & face bits are read from the level
+     * container position map, so only one chunk and tuple are searched. Read
+     * only (nothing is materialized).
+     *
+     * @param pos position of the block
+     * @return block if found (null if not found or chunk isn't loaded)
+     */
+    public Block getBlock(Vector3f pos) {
+        VoxelMap map = solid ? LevelContainer.ALL_SOLID_MAP : LevelContainer.ALL_FLUID_MAP;
+        int value = map.get(VoxelMap.key(pos));
+        Chunk chunk = getChunk(Chunk.chunkFunc(pos));
+        if (value == VoxelMap.NONE || chunk == null) {
+            return null;
+        }
+        return chunk.getBlock(VoxelMap.texId(value), ~VoxelMap.neighborBits(value) & 63, pos);
+    }
+
+    // hashed lookup of the chunk
     public Chunk getChunk(int chunkId) {
-        int left = 0;
-        int right = chunkList.size() - 1;
-        while (left <= right) {
-            int mid = left + (right - left) / 2;
-            Chunk candidate = chunkList.get(mid);
-            if (candidate.getId() == chunkId) {
-                return candidate;
-            } else if (candidate.getId() < chunkId) {
-                left = mid + 1;
-            } else {
-                right = mid - 1;
-            }
+        return chunkMap.get(chunkId);
+    }
+
+    /**
+     * Add the chunk (keeping the chunk list sorted by id).
+     *
+     * @param chunk chunk to add
+     */
+    public void addChunk(Chunk chunk) {
+        int index = Collections.binarySearch(chunkList, chunk, COMPARATOR);
+        if (index < 0) {
+            chunkList.add(-index - 1, chunk);
+            chunkMap.put(chunk.getId(), chunk);
         }
-        return null;
+    }
+
+    /**
+     * Remove the chunk.
+     *
+     * @param chunk chunk to remove
+     */
+    public void removeChunk(Chunk chunk) {
+        if (chunkMap.remove(chunk.getId()) != null) {
+            chunkList.remove(chunk);
+            chunk.retireMeshes(retiredMeshes);
+        }
+    }
+
+    // remove all the chunks
+    public void clear() {
+        for (Chunk chunk : chunkList) {
+            chunk.retireMeshes(retiredMeshes);
+        }
+        chunkList.clear();
+        chunkMap.clear();
+        for (OptimizedTuple optmTuple : optimizedTuples) {
+            optmTuple.clearSources();
+            optmTuple.rebuild();
+        }
+        mergedStamps.clear();
     }
 
     public void animate() { // call only for fluid blocks
@@ -438,35 +628,74 @@ public class Chunks {
         }
     }
 
+    /**
+     * Merge tuples of the visible chunks into optimized tuples. Only the
+     * delta is applied: chunks which left the queue (or got unloaded) are
+     * removed, chunks which entered it or changed (since last merge) are
+     * merged again. Only the optimized tuples whose sources changed rebuild
+     * their block list (and instance data).
+     *
+     * @param queue visible chunk ids
+     */
     public void optimize(Queue<Integer> queue) {
-        optimizedTuples.clear();
-        int faceBits = 1; // starting from one, cuz zero is not rendered               
-        while (faceBits <= 63) {
-            for (String tex : Texture.TEX_WORLD) {
-                Tuple optmTuple = null;
-                for (int chunkId : queue) {
-                    Chunk chunk = getChunk(chunkId);
-                    if (chunk != null) {
-                        Tuple tuple = chunk.getTuple(tex, faceBits);
-                        if (tuple != null) {
-                            if (optmTuple == null) {
-                                optmTuple = new Tuple(tex, faceBits);
-                            }
-                            optmTuple.blockList.addAll(tuple.blockList);;
-                        }
-                    }
-                }
+        Set<Integer> visibleIds = new HashSet<>();
+        for (int chunkId : queue) {
+            if (getChunk(chunkId) != null) {
+                visibleIds.add(chunkId);
+            }
+        }
+
+        // chunks which left the queue or got unloaded
+        for (Integer chunkId : new GapList<>(mergedStamps.keySet())) {
+            if (!visibleIds.contains(chunkId)) {
+                unmerge(chunkId);
+            }
+        }
 
-                if (optmTuple != null) {
-                    optimizedTuples.add(optmTuple);
+        // chunks which entered the queue or changed
+        for (int chunkId : visibleIds) {
+            Chunk chunk = getChunk(chunkId);
+            Long stamp = mergedStamps.get(chunkId);
+            if (stamp == null || stamp != chunk.getStamp()) {
+                if (stamp != null) {
+                    unmerge(chunkId);
                 }
+                merge(chunk);
             }
-            faceBits++;
+        }
+
+        for (OptimizedTuple optmTuple : optimizedTuples) {
+            optmTuple.rebuild();
         }
 
         optimized = true;
     }
 
+    // merge chunk tuples into the optimized ones (face bits zero is not rendered)
+    private void merge(Chunk chunk) {
+        for (Tuple tuple : chunk.getTupleList()) {
+            if (tuple.faceBits() == 0) {
+                continue;
+            }
+            OptimizedTuple optmTuple = optimizedMap.get(tuple.getKey());
+            if (optmTuple == null) {
+                optmTuple = new OptimizedTuple(tuple.texName(), tuple.faceBits());
+                optimizedMap.put(tuple.getKey(), optmTuple);
+                optimizedTuples.add(optmTuple);
+            }
+            optmTuple.putSource(chunk.getId(), tuple);
+        }
+        mergedStamps.put(chunk.getId(), chunk.getStamp());
+    }
+
+    // remove chunk from (sources of) the optimized tuples
+    private void unmerge(int chunkId) {
+        for (OptimizedTuple optmTuple : optimizedTuples) {
+            optmTuple.removeSource(chunkId);
+        }
+        mergedStamps.remove(chunkId);
+    }
+
     public void render(Queue<Integer> queue, ShaderProgram shaderProgram, LightSources lightSrc) {
         if (!optimized) {
             return;
@@ -493,15 +722,217 @@ public class Chunks {
         }
     }
 
-    // all blocks from all the chunks in one big list
+    /**
+     * Cull visible chunks against the frustum (first chunk in the queue is
+     * the current one).
+     *
+     * @param queue visible chunk ids
+     * @param frustum view frustum
+     * @param occlusion occlusion culler (null if not used)
+     */
+    private void cullChunks(Queue<Integer> queue, Frustum frustum, OcclusionCuller occlusion) {
+        Arrays.fill(chunkCullStates, Frustum.OUTSIDE);
+        cullFrustum = frustum;
+        cullOcclusion = occlusion;
+        Integer currChunkId = queue.peek();
+        if (currChunkId == null) {
+            return;
+        }
+        cullCenterX = Chunk.chunkX(currChunkId);
+        cullCenterZ = Chunk.chunkZ(currChunkId);
+        for (int chunkId : queue) {
+            Chunk chunk = getChunk(chunkId);
+            int index = cullIndex(Chunk.chunkX(chunkId), Chunk.chunkZ(chunkId));
+            if (chunk != null && index != -1) {
+                int state = chunk.intersect(frustum);
+                if (state != Frustum.OUTSIDE && occlusion != null && chunk.getBounds().isOccludedBy(occlusion)) {
+                    state = OCCLUDED;
+                }
+                chunkCullStates[index] = state;
+            }
+        }
+    }
+
+    private int cullIndex(int chunkX, int chunkZ) {
+        int i = chunkX - cullCenterX + Chunk.RING_RADIUS;
+        int j = chunkZ - cullCenterZ + Chunk.RING_RADIUS;
+        if (i < 0 || i >= ringDiameter || j < 0 || j >= ringDiameter) {
+            return -1;
+        }
+        return i * ringDiameter + j;
+    }
+
+    // culling state of the chunk block belongs to
+    private int chunkCullState(Vector3f pos) {
+        int chunkX = (int) Math.floor(pos.x / Chunk.CHUNK_SIZE);
+        int chunkZ = (int) Math.floor(pos.z / Chunk.CHUNK_SIZE);
+        int index = cullIndex(chunkX, chunkZ);
+        return (index == -1) ? Frustum.OUTSIDE : chunkCullStates[index];
+    }
+
+    /**
+     * Render visible blocks with hierarchical frustum culling. Chunks are
+     * culled first, then (optimized) tuples. Tuples completely inside are
+     * rendered as they are, blocks are tested only for straddling tuples and
+     * only if their chunk also straddles the frustum. If occlusion culler is
+     * given, chunks and tuples hidden by occluders are skipped as well.
+     *
+     * @param queue visible chunk ids
+     * @param shaderProgram shader program
+     * @param lightSrc light sources
+     * @param frustum view frustum (updated for this frame)
+     * @param occlusion occlusion culler (rasterized for this frame) or null
+     */
+    public void renderIf(Queue<Integer> queue, ShaderProgram shaderProgram, LightSources lightSrc, Frustum frustum, OcclusionCuller occlusion) {
+        if (!optimized) {
+            return;
+        }
+
+        cullChunks(queue, frustum, occlusion);
+        for (Tuple tuple : optimizedTuples) {
+            if (!tuple.isBuffered()) {
+                tuple.bufferAll();
+            }
+            int state = tuple.intersect(frustum);
+            if (state != Frustum.OUTSIDE && occlusion != null && tuple.getBounds().isOccludedBy(occlusion)) {
+                occlusion.countCulled(tuple.getBlockList().size());
+                continue;
+            }
+            switch (state) {
+                case Frustum.INSIDE:
+                    tuple.render(shaderProgram, lightSrc);
+                    break;
+                case Frustum.INTERSECT:
+                    tuple.renderIf(shaderProgram, lightSrc, frustumPredicate);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Render visible chunks as merged (greedy) meshes. Each chunk rebuilds
+     * its meshes only if it got dirty.
+     *
+     * @param queue visible chunk ids
+     * @param shaderProgram shader program
+     * @param lightSrc light sources
+     * @param frustum view frustum (chunks outside are skipped)
+     * @param occlusion occlusion culler (rasterized for this frame) or null
+     */
+    public void renderGreedy(Queue<Integer> queue, ShaderProgram shaderProgram, LightSources lightSrc, Frustum frustum, OcclusionCuller occlusion) {
+        for (GreedyMesh mesh : retiredMeshes) {
+            mesh.release();
+        }
+        retiredMeshes.clear();
+        for (int chunkId : queue) {
+            Chunk chunk = getChunk(chunkId);
+            if (chunk != null && chunk.intersect(frustum) != Frustum.OUTSIDE) {
+                if (occlusion != null && chunk.getBounds().isOccludedBy(occlusion)) {
+                    occlusion.countCulled(chunk.size());
+                    continue;
+                }
+                chunk.renderGreedy(shaderProgram, lightSrc);
+            }
+        }
+    }
+
+    // index of the first chunk (in the chunk list) with id greater or equal to given id
+    private int lowerBound(int chunkId) {
+        int lo = 0;
+        int hi = chunkList.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (chunkList.get(mid).getId() < chunkId) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Visit blocks of all the (loaded) chunks without copying them.
+     *
+     * @param filter which blocks are visited (null for all)
+     * @param action action on the block
+     */
+    public void forEachBlock(Predicate<? super Block> filter, Consumer<? super Block> action) {
+        for (Chunk chunk : chunkList) {
+            if (!CacheModule.isCached(chunk.getId(), solid)) {
+                chunk.forEachBlock(filter, action);
+            }
+        }
+    }
+
+    /**
+     * Visit blocks of the (loaded) chunks with id in the range [fromId, toId].
+     *
+     * @param fromId first chunk id (inclusive)
+     * @param toId last chunk id (inclusive)
+     * @param filter which blocks are visited (null for all)
+     * @param action action on the block
+     */
+    public void forEachBlock(int fromId, int toId, Predicate<? super Block> filter, Consumer<? super Block> action) {
+        for (int i = lowerBound(fromId); i < chunkList.size(); i++) {
+            Chunk chunk = chunkList.get(i);
+            if (chunk.getId() > toId) {
+                break;
+            }
+            if (!CacheModule.isCached(chunk.getId(), solid)) {
+                chunk.forEachBlock(filter, action);
+            }
+        }
+    }
+
+    // spliterator over blocks of all the (loaded) chunks, supports parallel streams
+    public Spliterator<Block> spliterator() {
+        return new BlockSpliterator(chunkList, 0, chunkList.size());
+    }
+
+    // spliterator over blocks of the chunks with id in the range [fromId, toId]
+    public Spliterator<Block> spliterator(int fromId, int toId) {
+        return new BlockSpliterator(chunkList, lowerBound(fromId), (toId == Integer.MAX_VALUE) ? chunkList.size() : lowerBound(toId + 1));
+    }
+
+    public Stream<Block> stream(boolean parallel) {
+        return StreamSupport.stream(spliterator(), parallel);
+    }
+
+    /**
+     * Blocks of all the (loaded) chunks as iterable view (not a copy), for
+     * loops which break early.
+     *
+     * @return iterable view
+     */
+    public Iterable<Block> blocks() {
+        return new Iterable<Block>() {
+            @Override
+            public Iterator<Block> iterator() {
+                return Spliterators.iterator(Chunks.this.spliterator());
+            }
+        };
+    }
+
+    // num of blocks in the (loaded) chunks
+    public int size() {
+        int size = 0;
+        for (Chunk chunk : chunkList) {
+            if (!CacheModule.isCached(chunk.getId(), solid)) {
+                size += chunk.size();
+            }
+        }
+        return size;
+    }
+
+    // all blocks from all the (loaded) chunks in one big list (copy, prefer forEachBlock or blocks)
     public List<Block> getTotalList() {
         List<Block> result = new BigList<>();
-        for (int id = 0; id < Chunk.CHUNK_NUM; id++) {
-            if (!CacheModule.isCached(id, solid)) {
-                Chunk chunk = getChunk(id);
-                if (chunk != null) {
-                    result.addAll(chunk.getBlockList());
-                }
+        for (Chunk chunk : chunkList) {
+            if (!CacheModule.isCached(chunk.getId(), solid)) {
+                result.addAll(chunk.getBlockList());
             }
         }
         return result;
@@ -511,8 +942,17 @@ public class Chunks {
         StringBuilder sb = new StringBuilder();
         sb.append("CHUNKS\n");
         sb.append("CHUNKS TOTAL SIZE = ").append(CacheModule.totalSize(this, solid)).append("\n");
+        sb.append("CACHE MEMORY = ").append(CacheModule.getMemoryTierBytes()).append(" B")
+                .append(" | hits = ").append(CacheModule.getHits())
+                .append(" | misses = ").append(CacheModule.getMisses()).append("\n");
         sb.append("DETAILED INFO\n");
-        for (int id = 0; id < Chunk.CHUNK_NUM; id++) {
+        List<Integer> ids = new GapList<>();
+        for (Chunk chunk : chunkList) {
+            ids.add(chunk.getId());
+        }
+        ids.addAll(CacheModule.cachedIds(solid));
+        Collections.sort(ids);
+        for (int id : ids) {
             boolean cached = CacheModule.isCached(id, solid);
             Chunk chunk = null;
             if (!cached) {
@@ -531,6 +971,7 @@ public class Chunks {
         DSLogger.reportInfo(sb.toString(), null);
     }
 
+    // chunk list (add & remove chunks with addChunk, removeChunk & clear)
     public List<Chunk> getChunkList() {
         return chunkList;
     }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.models;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import rs.alexanderstojanovich.evgl.level.LightSources;
+import rs.alexanderstojanovich.evgl.shaders.ShaderProgram;
+import rs.alexanderstojanovich.evgl.texture.Texture;
+
+/**
+ * Merged (greedy) mesh of the chunk blocks having same texture and color.
+ * Vertices are in world space, so model matrix is identity.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class GreedyMesh {
+
+    private static final Matrix4f IDENTITY = new Matrix4f();
+
+    private final String texName;
+    private final Vector3f color;
+
+    private final FloatBuffer fb;
+    private int vbo = 0;
+
+    private final IntBuffer intBuff;
+    private int ibo = 0;
+    private final int indicesNum;
+
+    private boolean buffered = false;
+
+    public GreedyMesh(String texName, Vector3f color, FloatBuffer fb, IntBuffer intBuff, int indicesNum) {
+        this.texName = texName;
+        this.color = color;
+        this.fb = fb;
+        this.intBuff = intBuff;
+        this.indicesNum = indicesNum;
+    }
+
+    // renderer does this stuff prior to any rendering
+    public void bufferAll() {
+        if (vbo == 0) {
+            vbo = GL15.glGenBuffers();
+        }
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, fb, GL15.GL_STATIC_DRAW);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+
+        if (ibo == 0) {
+            ibo = GL15.glGenBuffers();
+        }
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, ibo);
+        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, intBuff, GL15.GL_STATIC_DRAW);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        buffered = true;
+    }
+
+    public void render(ShaderProgram shaderProgram, LightSources lightSrc) {
+        if (!buffered || shaderProgram == null || indicesNum == 0) {
+            return;
+        }
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, ibo);
+
+        GL20.glEnableVertexAttribArray(0);
+        GL20.glEnableVertexAttribArray(1);
+        GL20.glEnableVertexAttribArray(2);
+
+        GL20.glVertexAttribPointer(0, 3, GL11.GL_FLOAT, false, Vertex.SIZE * 4, 0); // this is for pos
+        GL20.glVertexAttribPointer(1, 3, GL11.GL_FLOAT, false, Vertex.SIZE * 4, 12); // this is for normal
+        GL20.glVertexAttribPointer(2, 2, GL11.GL_FLOAT, false, Vertex.SIZE * 4, 24); // this is for uv
+
+        shaderProgram.bind();
+        // merged faces repeat the texture, so single texture (not atlas) is used
+        Texture.getWorldTile(texName).bind(0, shaderProgram, "modelTexture0");
+
+        lightSrc.updateLightsInShader(shaderProgram);
+
+        shaderProgram.updateUniform(IDENTITY, "modelMatrix");
+        shaderProgram.updateUniform(1.0f, "modelAlpha");
+        shaderProgram.updateUniform(color, "modelColor0");
+
+        GL11.glDrawElements(GL11.GL_TRIANGLES, indicesNum, GL11.GL_UNSIGNED_INT, 0);
+
+        Texture.unbind(0);
+        ShaderProgram.unbind();
+
+        GL20.glDisableVertexAttribArray(0);
+        GL20.glDisableVertexAttribArray(1);
+        GL20.glDisableVertexAttribArray(2);
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    // deallocates mesh from graphic card
+    public void release() {
+        if (vbo != 0) {
+            GL15.glDeleteBuffers(vbo);
+            vbo = 0;
+        }
+        if (ibo != 0) {
+            GL15.glDeleteBuffers(ibo);
+            ibo = 0;
+        }
+        buffered = false;
+    }
+
+    public String getTexName() {
+        return texName;
+    }
+
+    public Vector3f getColor() {
+        return color;
+    }
+
+    public FloatBuffer getFb() {
+        return fb;
+    }
+
+    public IntBuffer getIntBuff() {
+        return intBuff;
+    }
+
+    public int getIndicesNum() {
+        return indicesNum;
+    }
+
+    public boolean isBuffered() {
+        return buffered;
+    }
+
+}
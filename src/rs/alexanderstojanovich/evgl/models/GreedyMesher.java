@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.models;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.joml.Vector3f;
+import org.magicwerk.brownies.collections.GapList;
+
+/**
+ * Greedy mesher of the solid blocks. Visible faces (face bits of the blocks,
+ * derived from the neighbor masks) of the blocks with the same texture and
+ * color are merged into as few rectangles (quads) as possible, slice by slice
+ * and for each of six face directions. Does not require GL context.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class GreedyMesher {
+
+    // for each face direction: normal axis, u axis & v axis (0 = x, 1 = y, 2 = z)
+    private static final int[][] AXES = {
+        {0, 2, 1}, // LEFT & RIGHT
+        {1, 0, 2}, // BOTTOM & TOP
+        {2, 0, 1} // BACK & FRONT
+    };
+
+    private float[] vertices = new float[256];
+    private int vertexFloats = 0;
+    private int[] indices = new int[96];
+    private int indexCount = 0;
+
+    private final float[] corner = new float[3];
+
+    /**
+     * Build merged meshes from the blocks. One mesh is built for each texture
+     * & color combination (color is uniform of the shader).
+     *
+     * @param blocks solid blocks (with face bits set)
+     * @return list of meshes (empty meshes are not included)
+     */
+    public static List<GreedyMesh> build(List<Block> blocks) {
+        // group blocks by texture & color
+        Map<String, Map<Vector3f, List<Block>>> groups = new HashMap<>();
+        for (Block block : blocks) {
+            if (block.getFaceBits() == 0) {
+                continue;
+            }
+            Map<Vector3f, List<Block>> byColor = groups.get(block.getTexName());
+            if (byColor == null) {
+                byColor = new HashMap<>();
+                groups.put(block.getTexName(), byColor);
+            }
+            List<Block> group = byColor.get(block.getPrimaryColor());
+            if (group == null) {
+                group = new GapList<>();
+                byColor.put(block.getPrimaryColor(), group);
+            }
+            group.add(block);
+        }
+
+        List<GreedyMesh> result = new GapList<>();
+        GreedyMesher mesher = new GreedyMesher();
+        for (Map.Entry<String, Map<Vector3f, List<Block>>> texEntry : groups.entrySet()) {
+            for (Map.Entry<Vector3f, List<Block>> colorEntry : texEntry.getValue().entrySet()) {
+                mesher.reset();
+                for (int face = Block.LEFT; face <= Block.FRONT; face++) {
+                    mesher.meshFace(colorEntry.getValue(), face);
+                }
+                if (mesher.indexCount > 0) {
+                    result.add(new GreedyMesh(texEntry.getKey(), new Vector3f(colorEntry.getKey()),
+                            mesher.vertexBuffer(), mesher.indexBuffer(), mesher.indexCount));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void reset() {
+        vertexFloats = 0;
+        indexCount = 0;
+    }
+
+    // grid coordinate of the block (blocks are 2 units wide on even positions)
+    private static int cell(float coord) {
+        return Math.round(coord / 2.0f);
+    }
+
+    private static float coord(Vector3f pos, int axis) {
+        return (axis == 0) ? pos.x : ((axis == 1) ? pos.y : pos.z);
+    }
+
+    /**
+     * Merge all the visible faces of the blocks in given direction.
+     *
+     * @param blocks blocks of the group
+     * @param face face direction (Block.LEFT to Block.FRONT)
+     */
+    private void meshFace(List<Block> blocks, int face) {
+        final int[] axes = AXES[face >> 1];
+        final int mask = 1 << face;
+        // slice (grid coordinate on normal axis) -> packed cells (u, v)
+        Map<Integer, List<Long>> slices = new HashMap<>();
+        for (Block block : blocks) {
+            if ((block.getFaceBits() & mask) != 0) {
+                Vector3f pos = block.getPos();
+                int s = cell(coord(pos, axes[0]));
+                int u = cell(coord(pos, axes[1]));
+                int v = cell(coord(pos, axes[2]));
+                List<Long> cells = slices.get(s);
+                if (cells == null) {
+                    cells = new GapList<>();
+                    slices.put(s, cells);
+                }
+                cells.add(((long) u << 32) | (v & 0xFFFFFFFFL));
+            }
+        }
+
+        for (Map.Entry<Integer, List<Long>> slice : slices.entrySet()) {
+            List<Long> cells = slice.getValue();
+            int uMin = Integer.MAX_VALUE, vMin = Integer.MAX_VALUE;
+            int uMax = Integer.MIN_VALUE, vMax = Integer.MIN_VALUE;
+            for (long packed : cells) {
+                int u = (int) (packed >> 32);
+                int v = (int) packed;
+                uMin = Math.min(uMin, u);
+                uMax = Math.max(uMax, u);
+                vMin = Math.min(vMin, v);
+                vMax = Math.max(vMax, v);
+            }
+            final int width = uMax - uMin + 1;
+            final int height = vMax - vMin + 1;
+            boolean[] grid = new boolean[width * height];
+            for (long packed : cells) {
+                int u = (int) (packed >> 32) - uMin;
+                int v = (int) packed - vMin;
+                grid[v * width + u] = true;
+            }
+
+            for (int v = 0; v < height; v++) {
+                for (int u = 0; u < width; u++) {
+                    if (!grid[v * width + u]) {
+                        continue;
+                    }
+                    // extend along u
+                    int w = 1;
+                    while (u + w < width && grid[v * width + u + w]) {
+                        w++;
+                    }
+                    // extend along v while whole row is set
+                    int h = 1;
+                    OUTER:
+                    while (v + h < height) {
+                        for (int k = 0; k < w; k++) {
+                            if (!grid[(v + h) * width + u + k]) {
+                                break OUTER;
+                            }
+                        }
+                        h++;
+                    }
+                    for (int j = 0; j < h; j++) {
+                        Arrays.fill(grid, (v + j) * width + u, (v + j) * width + u + w, false);
+                    }
+                    emitQuad(face, axes, slice.getKey(), uMin + u, vMin + v, w, h);
+                }
+            }
+        }
+    }
+
+    /**
+     * Emit one merged quad (4 vertices & 6 indices).
+     */
+    private void emitQuad(int face, int[] axes, int s, int u0, int v0, int w, int h) {
+        final boolean positive = (face & 1) != 0;
+        final float plane = 2.0f * s + (positive ? 1.0f : -1.0f);
+        final float uLo = 2.0f * u0 - 1.0f;
+        final float uHi = 2.0f * (u0 + w) - 1.0f;
+        final float vLo = 2.0f * v0 - 1.0f;
+        final float vHi = 2.0f * (v0 + h) - 1.0f;
+
+        final int base = vertexFloats / Vertex.SIZE;
+        putVertex(axes, plane, uLo, vLo, positive, 0.0f, 0.0f);
+        putVertex(axes, plane, uHi, vLo, positive, w, 0.0f);
+        putVertex(axes, plane, uHi, vHi, positive, w, h);
+        putVertex(axes, plane, uLo, vHi, positive, 0.0f, h);
+
+        // corners are counter-clockwise seen from (u x v) side, that is
+        // outside only for LEFT, BOTTOM & FRONT, so the rest are reversed
+        final boolean reversed = (face == Block.RIGHT || face == Block.TOP || face == Block.BACK);
+        if (reversed) {
+            putIndices(base, base + 2, base + 1, base, base + 3, base + 2);
+        } else {
+            putIndices(base, base + 1, base + 2, base + 2, base + 3, base);
+        }
+    }
+
+    private void putVertex(int[] axes, float plane, float u, float v, boolean positive, float texU, float texV) {
+        if (vertexFloats + Vertex.SIZE > vertices.length) {
+            vertices = Arrays.copyOf(vertices, vertices.length << 1);
+        }
+        corner[axes[0]] = plane;
+        corner[axes[1]] = u;
+        corner[axes[2]] = v;
+        vertices[vertexFloats++] = corner[0];
+        vertices[vertexFloats++] = corner[1];
+        vertices[vertexFloats++] = corner[2];
+        // normal
+        vertices[vertexFloats++] = (axes[0] == 0) ? (positive ? 1.0f : -1.0f) : 0.0f;
+        vertices[vertexFloats++] = (axes[0] == 1) ? (positive ? 1.0f : -1.0f) : 0.0f;
+        vertices[vertexFloats++] = (axes[0] == 2) ? (positive ? 1.0f : -1.0f) : 0.0f;
+        // uv in block units (texture repeats)
+        vertices[vertexFloats++] = texU;
+        vertices[vertexFloats++] = texV;
+    }
+
+    private void putIndices(int... quadIndices) {
+        if (indexCount + quadIndices.length > indices.length) {
+            indices = Arrays.copyOf(indices, indices.length << 1);
+        }
+        System.arraycopy(quadIndices, 0, indices, indexCount, quadIndices.length);
+        indexCount += quadIndices.length;
+    }
+
+    private FloatBuffer vertexBuffer() {
+        FloatBuffer fb = ByteBuffer.allocateDirect(vertexFloats * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        fb.put(vertices, 0, vertexFloats);
+        fb.flip();
+        return fb;
+    }
+
+    private IntBuffer indexBuffer() {
+        IntBuffer ib = ByteBuffer.allocateDirect(indexCount * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        ib.put(indices, 0, indexCount);
+        ib.flip();
+        return ib;
+    }
+
+}
@@ -54,8 +54,9 @@ public class Model implements Comparable<Model> {
 
     protected String modelFileName;
 
-    protected final List<Vertex> vertices = new GapList<>();
-    protected final List<Integer> indices = new ArrayList<>(); // refers which vertex we want to use when       
+    // flyweight models (like blocks) don't have own vertices & indices (they're null)
+    protected List<Vertex> vertices;
+    protected List<Integer> indices; // refers which vertex we want to use when       
     protected String texName;
 
     protected float width; // X axis dimension
@@ -84,16 +85,28 @@ public class Model implements Comparable<Model> {
     private FloatBuffer fb;
 
     protected Model(String modelFileName, String texName) {
+        this(modelFileName, texName, new GapList<>(), new ArrayList<>());
+    }
+
+    protected Model(String modelFileName, String texName, List<Vertex> vertices, List<Integer> indices) {
         this.modelFileName = modelFileName;
         this.texName = texName;
+        this.vertices = vertices;
+        this.indices = indices;
     }
 
     protected Model(String modelFileName, String texName, Vector3f pos, Vector3f primaryColor, boolean solid) {
+        this(modelFileName, texName, pos, primaryColor, solid, new GapList<>(), new ArrayList<>());
+    }
+
+    protected Model(String modelFileName, String texName, Vector3f pos, Vector3f primaryColor, boolean solid, List<Vertex> vertices, List<Integer> indices) {
         this.modelFileName = modelFileName;
         this.texName = texName;
         this.pos = pos;
         this.primaryColor = primaryColor;
         this.solid = solid;
+        this.vertices = vertices;
+        this.indices = indices;
     }
 
     public static Model readFromObjFile(String dirEntry, String fileName, String texName) {
@@ -322,7 +335,7 @@ public class Model implements Comparable<Model> {
             }
 
         }
-        GL11.glDrawElements(GL11.GL_TRIANGLES, indices.size(), GL11.GL_UNSIGNED_INT, 0);
+        GL11.glDrawElements(GL11.GL_TRIANGLES, getIndicesNum(), GL11.GL_UNSIGNED_INT, 0);
         Texture.unbind(0);
         Texture.unbind(1);
         ShaderProgram.unbind();
@@ -368,7 +381,7 @@ public class Model implements Comparable<Model> {
                     model.primaryColor(shaderProgram);
                     primaryTexture.bind(0, shaderProgram, "modelTexture0");
                 }
-                GL11.glDrawElements(GL11.GL_TRIANGLES, model.indices.size(), GL11.GL_UNSIGNED_INT, 0);
+                GL11.glDrawElements(GL11.GL_TRIANGLES, model.getIndicesNum(), GL11.GL_UNSIGNED_INT, 0);
                 Texture.unbind(0);
             }
         }
@@ -424,6 +437,7 @@ public class Model implements Comparable<Model> {
     }
 
     private void calcDims() {
+        final List<Vertex> vertices = getVertices();
         Vector3f vect = vertices.get(0).getPos();
         float xMin = vect.x;
         float yMin = vect.y;
@@ -597,7 +611,7 @@ public class Model implements Comparable<Model> {
 
     public boolean intersectsRay(Vector3f l, Vector3f l0) {
         boolean ints = false; // l is direction and l0 is the point
-        for (Vertex vertex : vertices) {
+        for (Vertex vertex : getVertices()) {
             Vector3f temp = new Vector3f();
             Vector3f x0 = vertex.getPos().add(pos, temp); // point on the plane translated
             Vector3f n = vertex.getNormal(); // normal of the plane
@@ -680,6 +694,11 @@ public class Model implements Comparable<Model> {
         return indices;
     }
 
+    // num of indices drawn by render
+    public int getIndicesNum() {
+        return indices.size();
+    }
+
     public float getWidth() {
         return width;
     }
@@ -787,8 +806,8 @@ public class Model implements Comparable<Model> {
     public boolean equals(Object obj) {
         if (obj instanceof Model) {
             Model that = (Model) obj;
-            return (this.vertices.equals(that.vertices)
-                    && this.indices.equals(that.indices)
+            return (this.getVertices().equals(that.getVertices())
+                    && this.getIndices().equals(that.getIndices())
                     && this.pos.equals(that.pos)
                     && this.texName.equals(that.texName)
                     && this.primaryColor.equals(that.primaryColor)
@@ -804,8 +823,8 @@ public class Model implements Comparable<Model> {
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 43 * hash + Objects.hashCode(this.vertices);
-        hash = 43 * hash + Objects.hashCode(this.indices);
+        hash = 43 * hash + Objects.hashCode(this.getVertices());
+        hash = 43 * hash + Objects.hashCode(this.getIndices());
         hash = 43 * hash + Objects.hashCode(this.texName);
         hash = 43 * hash + Float.floatToIntBits(this.width);
         hash = 43 * hash + Float.floatToIntBits(this.height);
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.models;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tuple merged from the same named tuples of the visible chunks. Keeps track
+ * of the source (chunk) tuples, so only the changed sources are applied. Block
+ * list is rebuilt only if sources changed; vertices & indices stay buffered
+ * (they depend only on texture & face bits), only bounds are renewed.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class OptimizedTuple extends Tuple {
+
+    // chunk id -> tuple of that chunk (sorted, so block order is deterministic)
+    private final Map<Integer, Tuple> sources = new TreeMap<>();
+    private boolean contentDirty = false;
+
+    public OptimizedTuple(String texName, int faceEnBits) {
+        super(texName, faceEnBits);
+    }
+
+    /**
+     * Set (or replace) source tuple of the chunk.
+     *
+     * @param chunkId chunk id
+     * @param tuple chunk tuple with the same name
+     */
+    public void putSource(int chunkId, Tuple tuple) {
+        sources.put(chunkId, tuple);
+        contentDirty = true;
+    }
+
+    /**
+     * Remove source tuple of the chunk.
+     *
+     * @param chunkId chunk id
+     * @return was the chunk source of this tuple
+     */
+    public boolean removeSource(int chunkId) {
+        if (sources.remove(chunkId) != null) {
+            contentDirty = true;
+            return true;
+        }
+        return false;
+    }
+
+    // remove all the sources
+    public void clearSources() {
+        if (!sources.isEmpty()) {
+            sources.clear();
+            contentDirty = true;
+        }
+    }
+
+    /**
+     * Rebuild block list from the sources (if they changed). Bounds are
+     * marked dirty so they're rebuilt on the next render.
+     *
+     * @return was rebuilt
+     */
+    public boolean rebuild() {
+        if (!contentDirty) {
+            return false;
+        }
+        blockList.clear();
+        for (Tuple tuple : sources.values()) {
+            blockList.addAll(tuple.getBlockList());
+        }
+        bounds.markDirty();
+        contentDirty = false;
+        return true;
+    }
+
+    public boolean isContentDirty() {
+        return contentDirty;
+    }
+
+    public int getSourceNum() {
+        return sources.size();
+    }
+
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.models;
+
+import java.util.Arrays;
+import java.util.List;
+import org.joml.Vector3f;
+import org.magicwerk.brownies.collections.BigList;
+import rs.alexanderstojanovich.evgl.level.LevelContainer;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
+
+/**
+ * Dense (palette compressed) block storage of one chunk. Space is split into
+ * sections of 16x16x16 blocks. Sparse section is a sorted array of packed
+ * (cell, palette index) pairs, section is promoted to dense array of palette
+ * indices (two bytes per cell) once it holds more than SPARSE_MAX blocks.
+ * Palette entry is texture id plus primary color. Blocks are materialized
+ * only on demand.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class PaletteStore {
+
+    public static final int SECTION_BITS = 4;
+    public static final int SECTION_SIZE = 1 << SECTION_BITS;
+    public static final int SECTION_VOLUME = SECTION_SIZE * SECTION_SIZE * SECTION_SIZE;
+    private static final int LOCAL_MASK = SECTION_SIZE - 1;
+
+    public static final int AIR = 0; // palette index of empty cell
+    public static final int MAX_PALETTE_SIZE = 0xFFFF;
+    // sparse section of SPARSE_MAX pairs takes 1 KB, dense one takes 8 KB
+    public static final int SPARSE_MAX = 256;
+    private static final int ENTRY_MASK = 0xFFFF;
+
+    private final boolean solid;
+
+    // palette (index zero is reserved for air)
+    private int[] paletteTexIds = new int[16];
+    private float[] paletteColors = new float[3 * 16];
+    private int paletteSize = 1;
+    // open addressing table of palette indices (AIR marks free slot)
+    private int[] paletteTable = new int[32];
+
+    // sections (section key -> section index in the arrays),
+    // section is either dense (cells) or sparse (pairs), other one is null
+    private final VoxelMap sectionMap = new VoxelMap(64);
+    private char[][] sections = new char[16][];
+    private int[][] sparseSections = new int[16][];
+    private long[] sectionKeys = new long[16];
+    private int[] sectionCounts = new int[16];
+    private int sectionNum = 0;
+
+    private int size = 0;
+
+    public PaletteStore(boolean solid) {
+        this.solid = solid;
+    }
+
+    //--------------------------------------------------------------------------
+    // grid coordinate of the (even-aligned) position component
+    private static int grid(float coord) {
+        return Math.round(coord) >> 1;
+    }
+
+    // section key is built from section coordinates like block keys are
+    private static long sectionKey(int gx, int gy, int gz) {
+        return VoxelMap.key((gx >> SECTION_BITS) << 1, (gy >> SECTION_BITS) << 1, (gz >> SECTION_BITS) << 1);
+    }
+
+    private static int localIndex(int gx, int gy, int gz) {
+        return ((gy & LOCAL_MASK) << (2 * SECTION_BITS)) | ((gz & LOCAL_MASK) << SECTION_BITS) | (gx & LOCAL_MASK);
+    }
+
+    // position of the cell in the sparse section (or -(insertion point) - 1)
+    private int sparseSearch(int index, int local) {
+        int[] pairs = sparseSections[index];
+        int low = 0;
+        int high = sectionCounts[index] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midLocal = pairs[mid] >>> 16;
+            if (midLocal < local) {
+                low = mid + 1;
+            } else if (midLocal > local) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private int cellAt(int index, int local) {
+        char[] cells = sections[index];
+        if (cells != null) {
+            return cells[local];
+        }
+        int at = sparseSearch(index, local);
+        return (at < 0) ? AIR : sparseSections[index][at] & ENTRY_MASK;
+    }
+
+    /**
+     * Get palette index of the cell.
+     *
+     * @param gx grid x (position x / 2)
+     * @param gy grid y (position y / 2)
+     * @param gz grid z (position z / 2)
+     * @return palette index (AIR if empty)
+     */
+    public int cell(int gx, int gy, int gz) {
+        int index = sectionMap.get(sectionKey(gx, gy, gz));
+        return (index == VoxelMap.NONE) ? AIR : cellAt(index, localIndex(gx, gy, gz));
+    }
+
+    public boolean contains(Vector3f pos) {
+        return cell(grid(pos.x), grid(pos.y), grid(pos.z)) != AIR;
+    }
+
+    //--------------------------------------------------------------------------
+    // palette key is hashed from the primitives, no key objects are created
+    private static int paletteHash(int texId, float r, float g, float b) {
+        int hash = texId;
+        hash = 31 * hash + Float.floatToIntBits(r);
+        hash = 31 * hash + Float.floatToIntBits(g);
+        hash = 31 * hash + Float.floatToIntBits(b);
+        return hash ^ (hash >>> 16);
+    }
+
+    private boolean paletteEquals(int index, int texId, float r, float g, float b) {
+        return paletteTexIds[index] == texId
+                && Float.floatToIntBits(paletteColors[3 * index]) == Float.floatToIntBits(r)
+                && Float.floatToIntBits(paletteColors[3 * index + 1]) == Float.floatToIntBits(g)
+                && Float.floatToIntBits(paletteColors[3 * index + 2]) == Float.floatToIntBits(b);
+    }
+
+    private void paletteTablePut(int index) {
+        int mask = paletteTable.length - 1;
+        int slot = paletteHash(paletteTexIds[index], paletteColors[3 * index],
+                paletteColors[3 * index + 1], paletteColors[3 * index + 2]) & mask;
+        while (paletteTable[slot] != AIR) {
+            slot = (slot + 1) & mask;
+        }
+        paletteTable[slot] = index;
+    }
+
+    private int paletteEntry(int texId, Vector3f color) {
+        int mask = paletteTable.length - 1;
+        int slot = paletteHash(texId, color.x, color.y, color.z) & mask;
+        int index;
+        while ((index = paletteTable[slot]) != AIR) {
+            if (paletteEquals(index, texId, color.x, color.y, color.z)) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (paletteSize == MAX_PALETTE_SIZE) {
+            return AIR; // palette is full
+        }
+        if (paletteSize == paletteTexIds.length) {
+            paletteTexIds = Arrays.copyOf(paletteTexIds, paletteSize << 1);
+            paletteColors = Arrays.copyOf(paletteColors, 3 * (paletteSize << 1));
+        }
+        int newIndex = paletteSize++;
+        paletteTexIds[newIndex] = texId;
+        paletteColors[3 * newIndex] = color.x;
+        paletteColors[3 * newIndex + 1] = color.y;
+        paletteColors[3 * newIndex + 2] = color.z;
+        if (2 * paletteSize > paletteTable.length) {
+            // keep load factor under one half
+            paletteTable = new int[paletteTable.length << 1];
+            for (int i = 1; i < paletteSize; i++) {
+                paletteTablePut(i);
+            }
+        } else {
+            paletteTable[slot] = newIndex;
+        }
+        return newIndex;
+    }
+
+    // sparse section holding more than SPARSE_MAX blocks becomes dense one
+    private void promote(int index) {
+        char[] cells = new char[SECTION_VOLUME];
+        int[] pairs = sparseSections[index];
+        for (int i = 0; i < sectionCounts[index]; i++) {
+            cells[pairs[i] >>> 16] = (char) (pairs[i] & ENTRY_MASK);
+        }
+        sections[index] = cells;
+        sparseSections[index] = null;
+    }
+
+    /**
+     * Put block into the store (block object is not retained).
+     *
+     * @param block block to put
+     * @return success (false if palette is full)
+     */
+    public boolean put(Block block) {
+        int entry = paletteEntry(block.getTexId(), block.primaryColor);
+        if (entry == AIR) {
+            return false;
+        }
+        int gx = grid(block.pos.x);
+        int gy = grid(block.pos.y);
+        int gz = grid(block.pos.z);
+        long key = sectionKey(gx, gy, gz);
+        int index = sectionMap.get(key);
+        if (index == VoxelMap.NONE) {
+            if (sectionNum == sections.length) {
+                sections = Arrays.copyOf(sections, sectionNum << 1);
+                sparseSections = Arrays.copyOf(sparseSections, sectionNum << 1);
+                sectionKeys = Arrays.copyOf(sectionKeys, sectionNum << 1);
+                sectionCounts = Arrays.copyOf(sectionCounts, sectionNum << 1);
+            }
+            index = sectionNum++;
+            sections[index] = null;
+            sparseSections[index] = new int[8];
+            sectionKeys[index] = key;
+            sectionCounts[index] = 0;
+            sectionMap.put(key, index);
+        }
+        int local = localIndex(gx, gy, gz);
+        if (sections[index] == null) {
+            int at = sparseSearch(index, local);
+            if (at >= 0) {
+                sparseSections[index][at] = (local << 16) | entry;
+                return true;
+            }
+            if (sectionCounts[index] == SPARSE_MAX) {
+                promote(index);
+            } else {
+                int[] pairs = sparseSections[index];
+                int count = sectionCounts[index];
+                if (count == pairs.length) {
+                    pairs = Arrays.copyOf(pairs, count << 1);
+                    sparseSections[index] = pairs;
+                }
+                at = -(at + 1);
+                System.arraycopy(pairs, at, pairs, at + 1, count - at);
+                pairs[at] = (local << 16) | entry;
+                sectionCounts[index]++;
+                size++;
+                return true;
+            }
+        }
+        char[] cells = sections[index];
+        if (cells[local] == AIR) {
+            sectionCounts[index]++;
+            size++;
+        }
+        cells[local] = (char) entry;
+        return true;
+    }
+
+    /**
+     * Remove block at the position from the store.
+     *
+     * @param pos block position
+     * @return was block present
+     */
+    public boolean remove(Vector3f pos) {
+        int gx = grid(pos.x);
+        int gy = grid(pos.y);
+        int gz = grid(pos.z);
+        long key = sectionKey(gx, gy, gz);
+        int index = sectionMap.get(key);
+        if (index == VoxelMap.NONE) {
+            return false;
+        }
+        int local = localIndex(gx, gy, gz);
+        char[] cells = sections[index];
+        if (cells != null) {
+            if (cells[local] == AIR) {
+                return false;
+            }
+            cells[local] = AIR;
+        } else {
+            int at = sparseSearch(index, local);
+            if (at < 0) {
+                return false;
+            }
+            int[] pairs = sparseSections[index];
+            System.arraycopy(pairs, at + 1, pairs, at, sectionCounts[index] - at - 1);
+        }
+        size--;
+        if (--sectionCounts[index] == 0) {
+            // move the last section into the hole
+            sectionMap.remove(key);
+            int last = --sectionNum;
+            if (index != last) {
+                sections[index] = sections[last];
+                sparseSections[index] = sparseSections[last];
+                sectionKeys[index] = sectionKeys[last];
+                sectionCounts[index] = sectionCounts[last];
+                sectionMap.put(sectionKeys[index], index);
+            }
+            sections[last] = null;
+            sparseSections[last] = null;
+        }
+        return true;
+    }
+
+    /**
+     * Get neighbor bits of the cell from the cells of this store.
+     * [LEFT, RIGHT, BOTTOM, TOP, BACK, FRONT]. Neighbors within the same
+     * dense section are resolved by index offsets only.
+     *
+     * @param gx grid x (position x / 2)
+     * @param gy grid y (position y / 2)
+     * @param gz grid z (position z / 2)
+     * @return 6-bit neighbor bits
+     */
+    public int neighborMask(int gx, int gy, int gz) {
+        int index = sectionMap.get(sectionKey(gx, gy, gz));
+        if (index == VoxelMap.NONE) {
+            return 0;
+        }
+        char[] cells = sections[index];
+        if (cells == null) {
+            return ((cell(gx - 1, gy, gz) != AIR) ? 1 << Block.LEFT : 0)
+                    | ((cell(gx + 1, gy, gz) != AIR) ? 1 << Block.RIGHT : 0)
+                    | ((cell(gx, gy - 1, gz) != AIR) ? 1 << Block.BOTTOM : 0)
+                    | ((cell(gx, gy + 1, gz) != AIR) ? 1 << Block.TOP : 0)
+                    | ((cell(gx, gy, gz - 1) != AIR) ? 1 << Block.BACK : 0)
+                    | ((cell(gx, gy, gz + 1) != AIR) ? 1 << Block.FRONT : 0);
+        }
+        int lx = gx & LOCAL_MASK;
+        int ly = gy & LOCAL_MASK;
+        int lz = gz & LOCAL_MASK;
+        int local = localIndex(gx, gy, gz);
+        final int dy = 1 << (2 * SECTION_BITS);
+        final int dz = 1 << SECTION_BITS;
+
+        int bits = 0;
+        if ((lx > 0) ? cells[local - 1] != AIR : cell(gx - 1, gy, gz) != AIR) {
+            bits |= 1 << Block.LEFT;
+        }
+        if ((lx < LOCAL_MASK) ? cells[local + 1] != AIR : cell(gx + 1, gy, gz) != AIR) {
+            bits |= 1 << Block.RIGHT;
+        }
+        if ((ly > 0) ? cells[local - dy] != AIR : cell(gx, gy - 1, gz) != AIR) {
+            bits |= 1 << Block.BOTTOM;
+        }
+        if ((ly < LOCAL_MASK) ? cells[local + dy] != AIR : cell(gx, gy + 1, gz) != AIR) {
+            bits |= 1 << Block.TOP;
+        }
+        if ((lz > 0) ? cells[local - dz] != AIR : cell(gx, gy, gz - 1) != AIR) {
+            bits |= 1 << Block.BACK;
+        }
+        if ((lz < LOCAL_MASK) ? cells[local + dz] != AIR : cell(gx, gy, gz + 1) != AIR) {
+            bits |= 1 << Block.FRONT;
+        }
+        return bits;
+    }
+
+    //--------------------------------------------------------------------------
+    private Block materialize(int entry, int gx, int gy, int gz) {
+        String texName = LevelContainer.texName(VoxelMap.value(paletteTexIds[entry], 0));
+        Vector3f pos = new Vector3f(gx << 1, gy << 1, gz << 1);
+        Vector3f color = new Vector3f(paletteColors[3 * entry], paletteColors[3 * entry + 1], paletteColors[3 * entry + 2]);
+        return new Block(texName, pos, color, solid);
+    }
+
+    /**
+     * Materialize block at the position (new block object is created).
+     *
+     * @param pos block position
+     * @return block or null if not present
+     */
+    public Block getBlock(Vector3f pos) {
+        int gx = grid(pos.x);
+        int gy = grid(pos.y);
+        int gz = grid(pos.z);
+        int entry = cell(gx, gy, gz);
+        return (entry == AIR) ? null : materialize(entry, gx, gy, gz);
+    }
+
+    /**
+     * Materialize all the blocks of the store. Face bits are set from the
+     * neighbor mask within the store, neighbors outside of the chunk with
+     * given id are looked up in the level container map.
+     *
+     * @param chunkId chunk id of this store
+     * @return list of new block objects
+     */
+    public List<Block> toBlockList(int chunkId) {
+        VoxelMap map = solid ? LevelContainer.ALL_SOLID_MAP : LevelContainer.ALL_FLUID_MAP;
+        List<Block> result = new BigList<>();
+        for (int i = 0; i < sectionNum; i++) {
+            char[] cells = sections[i];
+            int[] pairs = sparseSections[i];
+            int bx = VoxelMap.unpackX(sectionKeys[i]) << (SECTION_BITS - 1);
+            int by = VoxelMap.unpackY(sectionKeys[i]) << (SECTION_BITS - 1);
+            int bz = VoxelMap.unpackZ(sectionKeys[i]) << (SECTION_BITS - 1);
+            // dense section visits every cell, sparse one only its pairs
+            final int cellNum = (cells != null) ? SECTION_VOLUME : sectionCounts[i];
+            for (int c = 0; c < cellNum; c++) {
+                int local = (cells != null) ? c : pairs[c] >>> 16;
+                int entry = (cells != null) ? cells[local] : pairs[c] & ENTRY_MASK;
+                if (entry == AIR) {
+                    continue;
+                }
+                int gx = bx + (local & LOCAL_MASK);
+                int gy = by + (local >> (2 * SECTION_BITS));
+                int gz = bz + ((local >> SECTION_BITS) & LOCAL_MASK);
+                int bits = neighborMask(gx, gy, gz);
+                // sideways neighbors may belong to the other chunk
+                for (int j = Block.LEFT; j <= Block.FRONT; j++) {
+                    if (j == Block.BOTTOM || j == Block.TOP || (bits & (1 << j)) != 0) {
+                        continue;
+                    }
+                    int ax = (gx + ((j == Block.LEFT) ? -1 : (j == Block.RIGHT) ? 1 : 0)) << 1;
+                    int az = (gz + ((j == Block.BACK) ? -1 : (j == Block.FRONT) ? 1 : 0)) << 1;
+                    if (Chunk.chunkFunc(ax, az) != chunkId && map.containsKey(VoxelMap.key(ax, gy << 1, az))) {
+                        bits |= 1 << j;
+                    }
+                }
+                Block block = materialize(entry, gx, gy, gz);
+                block.setFaceBits(~bits & 63);
+                result.add(block);
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(paletteTable, AIR);
+        paletteSize = 1;
+        sectionMap.clear();
+        Arrays.fill(sections, null);
+        Arrays.fill(sparseSections, null);
+        sectionNum = 0;
+        size = 0;
+    }
+
+    public boolean isSolid() {
+        return solid;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getPaletteSize() {
+        return paletteSize;
+    }
+
+    public int getSectionNum() {
+        return sectionNum;
+    }
+
+    public int getDenseSectionNum() {
+        int result = 0;
+        for (int i = 0; i < sectionNum; i++) {
+            if (sections[i] != null) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+}
@@ -19,14 +19,16 @@ package rs.alexanderstojanovich.evgl.models;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.function.Predicate;
-import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL15;
+import rs.alexanderstojanovich.evgl.core.Frustum;
 import rs.alexanderstojanovich.evgl.level.LightSource;
 import rs.alexanderstojanovich.evgl.level.LightSources;
 import rs.alexanderstojanovich.evgl.shaders.ShaderProgram;
+import rs.alexanderstojanovich.evgl.texture.Texture;
 
 /**
  *
@@ -37,35 +39,76 @@ public class Tuple extends Blocks { // tuple is distinct rendering object for in
     // like model matrices, color and texture name, and enabled faces in 6-bit represenation
 
     protected final String name;
+    // parts of the name (resolved once, name is not parsed while rendering)
+    protected final int texId;
+    protected final String texName;
+    protected final int faceBits;
+    // sort key, orders tuples same as their names (texture name, then face bits)
+    protected final int key;
 
     protected FloatBuffer fb;
     protected int vbo = 0;
 
     protected final IntBuffer intBuff;
     protected int ibo = 0;
-    protected final List<Vertex> vertices = new ArrayList<>();
+    // own copy of the shared block vertices, made only for animated (fluid) tuples
+    protected List<Vertex> vertices = null;
     protected final int indicesNum;
 
+    // bounds of the blocks (for frustum culling), recalculated when dirty
+    protected final BoundingBox bounds = new BoundingBox();
+
     public static final Comparator<Tuple> TUPLE_COMP = new Comparator<Tuple>() {
         @Override
         public int compare(Tuple o1, Tuple o2) {
-            return o1.getName().compareTo(o2.getName());
+            return Integer.compare(o1.key, o2.key);
         }
     };
 
-    public Tuple(String texName, int faceEnBits) {
-        this.name = String.format("%s%02d", texName, faceEnBits);
-        Block.deepCopyTo(vertices, texName);
-        Block.setFaceBits(vertices, faceEnBits);
-        this.intBuff = Block.createIntBuffer(faceEnBits);
-        int numberOfOnes = 0;
-        for (int j = Block.LEFT; j <= Block.FRONT; j++) {
-            int mask = 1 << j;
-            if ((faceEnBits & mask) != 0) {
-                numberOfOnes++;
-            }
+    // alphabetical rank of the world textures (texture id -> rank)
+    private static final int[] TEX_RANK = new int[Texture.WORLD_TEX_NUM];
+
+    static {
+        String[] sorted = Texture.TEX_WORLD.clone();
+        Arrays.sort(sorted);
+        for (int rank = 0; rank < sorted.length; rank++) {
+            TEX_RANK[Texture.worldTexId(sorted[rank])] = rank;
         }
-        this.indicesNum = 6 * numberOfOnes;
+    }
+
+    /**
+     * Sort key of the tuple with given texture and face bits. Keys are
+     * ordered same as tuple names.
+     *
+     * @param texId world texture id
+     * @param faceBits face bits [0, 63]
+     * @return tuple key
+     */
+    public static int key(int texId, int faceBits) {
+        return (TEX_RANK[texId] << 6) | faceBits;
+    }
+
+    public Tuple(String texName, int faceEnBits) {
+        this(Texture.worldTexId(texName), faceEnBits);
+    }
+
+    public Tuple(int texId, int faceEnBits) {
+        this.texId = texId;
+        this.texName = Texture.worldTexName(texId);
+        this.faceBits = faceEnBits;
+        this.key = key(texId, faceEnBits);
+        this.name = texName + (faceEnBits < 10 ? "0" : "") + faceEnBits;
+        this.intBuff = BlockMesh.indexBuffer(faceEnBits);
+        this.indicesNum = BlockMesh.indicesNum(faceEnBits);
+    }
+
+    /**
+     * Get shared mesh of the tuple (by texture, face bits & vertex order).
+     *
+     * @return shared mesh
+     */
+    public BlockMesh getMesh() {
+        return BlockMesh.get(texId, faceBits, verticesReversed);
     }
 
     // renderer does this stuff prior to any rendering
@@ -73,50 +116,34 @@ public class Tuple extends Blocks { // tuple is distinct rendering object for in
     public void bufferAll() {
         bufferVertices();
         bufferIndices();
+        bounds.markDirty();
         buffered = true;
     }
 
     public void bufferVertices() {
-        fb = BufferUtils.createFloatBuffer(vertices.size() * Vertex.SIZE);
-        for (Vertex vertex : vertices) {
-            if (vertex.isEnabled()) {
-                fb.put(vertex.getPos().x);
-                fb.put(vertex.getPos().y);
-                fb.put(vertex.getPos().z);
-
-                fb.put(vertex.getNormal().x);
-                fb.put(vertex.getNormal().y);
-                fb.put(vertex.getNormal().z);
-
-                fb.put(vertex.getUv().x);
-                fb.put(vertex.getUv().y);
-            }
+        // not animated tuples use shared vertex buffer
+        final FloatBuffer buffer;
+        if (vertices == null) {
+            buffer = getMesh().getVertexBuffer();
+        } else {
+            fb = BlockMesh.createVertexBuffer(vertices);
+            buffer = fb;
         }
-        fb.flip();
 
         if (vbo == 0) {
             vbo = GL15.glGenBuffers();
         }
         GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
-        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, fb, GL15.GL_STATIC_DRAW);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
         GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
     }
 
     public void updateVertices() {
-        for (Vertex vertex : vertices) {
-            if (vertex.isEnabled()) {
-                fb.put(vertex.getPos().x);
-                fb.put(vertex.getPos().y);
-                fb.put(vertex.getPos().z);
-
-                fb.put(vertex.getNormal().x);
-                fb.put(vertex.getNormal().y);
-                fb.put(vertex.getNormal().z);
-
-                fb.put(vertex.getUv().x);
-                fb.put(vertex.getUv().y);
-            }
+        if (vertices == null || fb == null) {
+            bufferVertices();
+            return;
         }
+        BlockMesh.putVertices(fb, vertices);
         fb.flip();
 
         GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
@@ -145,9 +172,7 @@ public class Tuple extends Blocks { // tuple is distinct rendering object for in
     public void render(ShaderProgram shaderProgram, LightSources lightSrc) {
         // if tuple has any blocks to be rendered and
         // if face bits are greater than zero, i.e. tuple has something to be 
-        String texName = name.substring(0, 5);
-        int faceEnBits = Integer.parseInt(name.substring(5));
-        if (buffered && !blockList.isEmpty() && faceEnBits > 0) {
+        if (buffered && !blockList.isEmpty() && faceBits > 0) {
             Block.render(blockList, texName, vbo, ibo, indicesNum, lightSrc, shaderProgram);
         }
     }
@@ -156,41 +181,59 @@ public class Tuple extends Blocks { // tuple is distinct rendering object for in
     public void renderIf(ShaderProgram shaderProgram, LightSources lightSrc, Predicate<Block> predicate) {
         // if tuple has any blocks to be rendered and
         // if face bits are greater than zero, i.e. tuple has something to be rendered
-        String texName = name.substring(0, 5);
-        int faceEnBits = Integer.parseInt(name.substring(5));
-        if (buffered && !blockList.isEmpty() && faceEnBits > 0) {
+        if (buffered && !blockList.isEmpty() && faceBits > 0) {
             Block.renderIf(blockList, texName, vbo, ibo, indicesNum, lightSrc, shaderProgram, predicate);
         }
     }
 
+    /**
+     * Test tuple bounds against the view frustum.
+     *
+     * @param frustum view frustum
+     * @return Frustum.OUTSIDE, Frustum.INTERSECT or Frustum.INSIDE
+     */
+    public int intersect(Frustum frustum) {
+        bounds.update(blockList);
+        return bounds.intersect(frustum);
+    }
+
     @Override
     public void prepare(boolean cameraInFluid) {
         if (Boolean.logicalXor(cameraInFluid, verticesReversed)) {
-            Block.reverseFaceVertexOrder(vertices);
+            if (vertices != null) {
+                Block.reverseFaceVertexOrder(vertices);
+            }
             verticesReversed = !verticesReversed;
+            if (vertices == null && vbo != 0) {
+                bufferVertices(); // switch to the other shared variant
+            }
         }
     }
 
     @Override
     public void animate() {
-        Block.animate(vertices, Block.INDICES);
-        if (fb == null) {
-            bufferVertices();
-        } else {
-            updateVertices();
+        if (vertices == null) {
+            vertices = new ArrayList<>(Block.VERTEX_COUNT);
+            getMesh().copyTo(vertices);
         }
+        Block.animate(vertices, Block.INDICES);
+        updateVertices();
     }
 
     public String texName() {
-        return name.substring(0, 5);
+        return texName;
+    }
+
+    public int texId() {
+        return texId;
     }
 
     public int faceBits() {
-        return Integer.parseInt(name.substring(5));
+        return faceBits;
     }
 
     public List<Vertex> getVertices() {
-        return vertices;
+        return (vertices != null) ? vertices : getMesh().getVertices();
     }
 
     public FloatBuffer getFb() {
@@ -209,10 +252,18 @@ public class Tuple extends Blocks { // tuple is distinct rendering object for in
         return name;
     }
 
+    public int getKey() {
+        return key;
+    }
+
     public IntBuffer getIntBuff() {
         return intBuff;
     }
 
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
     @Override
     public String toString() {
         return "Tuple{" + "name=" + name + '}';
@@ -66,6 +66,9 @@ public class Texture {
     public static final int TEX_SIZE = Configuration.getInstance().getTextureSize();
 
     public static final String[] TEX_WORLD = {"crate", "doom0", "stone", "water", "reflc"};
+    // world texture name -> texture id (index in TEX_WORLD & in the world atlas)
+    private static final Map<String, Integer> TEX_WORLD_IDS = new HashMap<>();
+    public static final int WORLD_TEX_NUM = TEX_WORLD.length;
     public static final int GRID_SIZE_WORLD = 3;
     public static final Texture WORLD = Texture.buildTextureAtlas(Game.WORLD_ENTRY, TEX_WORLD, GRID_SIZE_WORLD);
     public static final Texture DECAL = new Texture(Game.WORLD_ENTRY, "decal.png");
@@ -83,8 +86,16 @@ public class Texture {
     public static final String[] TEX_PLAYER = {"pistol", "assault_rifle", "shotgun", "sub_machine_gun", "machine_gun", "sniper_rifle"};
     public static final int GRID_SIZE_PLAYER = 3;
     public static final Map<String, Pair<Texture, Integer>> TEX_MAP = new HashMap<>();
+    // single (not atlased) world textures, built on demand, used where texture must repeat
+    private static final Map<String, Texture> WORLD_TILES = new HashMap<>();
     public static final Texture PLAYER = Texture.buildTextureAtlas(Game.PLAYER_ENTRY, TEX_PLAYER, GRID_SIZE_PLAYER);
 
+    static {
+        for (int texId = 0; texId < TEX_WORLD.length; texId++) {
+            TEX_WORLD_IDS.put(TEX_WORLD[texId], texId);
+        }
+    }
+
     static {
         // interface stuff
         TEX_MAP.put("logox", new Pair<>(LOGO, -1));
@@ -194,6 +205,44 @@ public class Texture {
         PLAYER.bufferAll();
     }
 
+    /**
+     * Gets world texture id (index in the world atlas) of the texture name.
+     *
+     * @param texName world texture name
+     * @return texture id (-1 if not world texture)
+     */
+    public static int worldTexId(String texName) {
+        Integer texId = TEX_WORLD_IDS.get(texName);
+        return (texId == null) ? -1 : texId;
+    }
+
+    /**
+     * Gets world texture name of the texture id (interned instance).
+     *
+     * @param texId world texture id
+     * @return world texture name
+     */
+    public static String worldTexName(int texId) {
+        return TEX_WORLD[texId];
+    }
+
+    /**
+     * Gets single world texture (which can repeat, unlike atlas part). It's
+     * built and buffered on first use, so call it from the renderer.
+     *
+     * @param texName world texture name
+     * @return world texture tile
+     */
+    public static Texture getWorldTile(String texName) {
+        Texture tile = WORLD_TILES.get(texName);
+        if (tile == null) {
+            tile = Texture.buildTextureAtlas(Game.WORLD_ENTRY, new String[]{texName}, 1);
+            tile.bufferAll();
+            WORLD_TILES.put(texName, tile);
+        }
+        return tile;
+    }
+
     private void loadTexture() {
         textureID = GL11.glGenTextures();
         GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureID);
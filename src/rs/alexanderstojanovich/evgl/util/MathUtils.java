@@ -154,4 +154,118 @@ public class MathUtils {
         return noise;
     }
 
+    /**
+     * Scale the noise from [-1, 1] into [low, high] (same as the end of
+     * noise2/noise3).
+     *
+     * @param noise noise in [-1, 1]
+     * @param low minimum output
+     * @param high maximum output
+     * @return scaled noise
+     */
+    public static float normalize(float noise, float low, float high) {
+        return noise * (high - low) / 2.0f + (high + low) / 2.0f;
+    }
+
+    /**
+     * Fill the tile (heightmap) with 2D noise in one call. Octaves are the
+     * outer loop, amplitude & frequency are computed once per octave and the
+     * inner loop runs over the plain array (nothing is allocated). Values are
+     * identical to noise2 of each point.
+     *
+     * @param dest destination, dest[i * depth + j] is noise at (x0 + i * step,
+     * y0 + j * step)
+     * @param width number of points on x
+     * @param depth number of points on y
+     * @param x0 x-coord of the first point
+     * @param y0 y-coord of the first point
+     * @param step distance between the points
+     * @param numOfOctaves iterations num
+     * @param persistence amplitude multiplier
+     * @param scale scale
+     * @param low minimum output
+     * @param high maximum output
+     * @param lacunarity frequency multiplier
+     */
+    public static void noise2Tile(float[] dest, int width, int depth, float x0, float y0, float step,
+            int numOfOctaves, float persistence, float scale, float low, float high, float lacunarity) {
+        final int n = width * depth;
+        for (int i = 0; i < n; i++) {
+            dest[i] = 0.0f;
+        }
+
+        float maxAmp = 0.0f;
+        float amp = 1.0f;
+        float freq = scale;
+        for (int o = 0; o < numOfOctaves; o++) {
+            for (int i = 0, index = 0; i < width; i++) {
+                final float fx = (x0 + i * step) * freq;
+                for (int j = 0; j < depth; j++, index++) {
+                    dest[index] += SimplexNoise.noise(fx, (y0 + j * step) * freq) * amp;
+                }
+            }
+            maxAmp += amp;
+            amp *= persistence;
+            freq *= lacunarity;
+        }
+
+        final float k = (high - low) / 2.0f;
+        final float c = (high + low) / 2.0f;
+        for (int i = 0; i < n; i++) {
+            dest[i] = (dest[i] / maxAmp) * k + c;
+        }
+    }
+
+    /**
+     * Fill the 3D grid (density) with 3D noise in one call. Same layout of
+     * the loops as noise2Tile. Values are identical to noise3 of each point.
+     *
+     * @param dest destination, dest[(i * height + j) * depth + k] is noise at
+     * (x0 + i * step, y0 + j * step, z0 + k * step)
+     * @param width number of points on x
+     * @param height number of points on y
+     * @param depth number of points on z
+     * @param x0 x-coord of the first point
+     * @param y0 y-coord of the first point
+     * @param z0 z-coord of the first point
+     * @param step distance between the points
+     * @param numOfOctaves iterations num
+     * @param persistence amplitude multiplier
+     * @param scale scale
+     * @param low minimum output
+     * @param high maximum output
+     * @param lacunarity frequency multiplier
+     */
+    public static void noise3Grid(float[] dest, int width, int height, int depth, float x0, float y0, float z0, float step,
+            int numOfOctaves, float persistence, float scale, float low, float high, float lacunarity) {
+        final int n = width * height * depth;
+        for (int i = 0; i < n; i++) {
+            dest[i] = 0.0f;
+        }
+
+        float maxAmp = 0.0f;
+        float amp = 1.0f;
+        float freq = scale;
+        for (int o = 0; o < numOfOctaves; o++) {
+            for (int i = 0, index = 0; i < width; i++) {
+                final float fx = (x0 + i * step) * freq;
+                for (int j = 0; j < height; j++) {
+                    final float fy = (y0 + j * step) * freq;
+                    for (int k = 0; k < depth; k++, index++) {
+                        dest[index] += SimplexNoise.noise(fx, fy, (z0 + k * step) * freq) * amp;
+                    }
+                }
+            }
+            maxAmp += amp;
+            amp *= persistence;
+            freq *= lacunarity;
+        }
+
+        final float k = (high - low) / 2.0f;
+        final float c = (high + low) / 2.0f;
+        for (int i = 0; i < n; i++) {
+            dest[i] = (dest[i] / maxAmp) * k + c;
+        }
+    }
+
 }
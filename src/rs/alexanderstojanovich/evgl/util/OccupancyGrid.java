@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.util;
+
+import org.joml.Random;
+import org.joml.Vector3f;
+
+/**
+ * Occupancy of the block cells in cubic region [posMin, posMax] (cells are at
+ * even coordinates). One bit per cell, free cell count is kept per page of
+ * 4096 cells, so uniformly random free cell is found without rejection: page
+ * by the counts, word by the bit counts and then the bit itself.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class OccupancyGrid {
+
+    // words per page (64 x 64 = 4096 cells)
+    public static final int PAGE_WORDS = 64;
+
+    private final int posMin;
+    private final int posMax;
+    private final int side; // cells per axis
+    private final int cells;
+    private final long[] occupied;
+    private final int[] pageFree;
+    private int free;
+
+    /**
+     * Create grid over the region, all cells are free.
+     *
+     * @param posMin region minimum (even)
+     * @param posMax region maximum (even)
+     */
+    public OccupancyGrid(int posMin, int posMax) {
+        this.posMin = posMin;
+        this.posMax = posMax;
+        this.side = Math.max(0, (posMax - posMin) / 2 + 1);
+        this.cells = side * side * side;
+        this.occupied = new long[(cells + 63) >>> 6];
+        this.pageFree = new int[(occupied.length + PAGE_WORDS - 1) / PAGE_WORDS];
+        for (int i = 0; i < cells; i++) {
+            pageFree[(i >>> 6) / PAGE_WORDS]++;
+        }
+        this.free = cells;
+    }
+
+    // index of the cell (must be contained)
+    private int index(int x, int y, int z) {
+        return (((x - posMin) >> 1) * side + ((y - posMin) >> 1)) * side + ((z - posMin) >> 1);
+    }
+
+    /**
+     * Is the cell within the region.
+     *
+     * @param x x-coord (even)
+     * @param y y-coord (even)
+     * @param z z-coord (even)
+     * @return is contained
+     */
+    public boolean contains(int x, int y, int z) {
+        return x >= posMin && x <= posMax
+                && y >= posMin && y <= posMax
+                && z >= posMin && z <= posMax;
+    }
+
+    public boolean contains(Vector3f pos) {
+        return contains(Math.round(pos.x), Math.round(pos.y), Math.round(pos.z));
+    }
+
+    // cell must be contained
+    public boolean isOccupied(int x, int y, int z) {
+        int i = index(x, y, z);
+        return (occupied[i >>> 6] & (1L << i)) != 0L;
+    }
+
+    /**
+     * Mark cell as occupied (if it's contained).
+     *
+     * @param x x-coord (even)
+     * @param y y-coord (even)
+     * @param z z-coord (even)
+     * @return was free before
+     */
+    public boolean occupy(int x, int y, int z) {
+        if (!contains(x, y, z)) {
+            return false;
+        }
+        int i = index(x, y, z);
+        long bit = 1L << i;
+        if ((occupied[i >>> 6] & bit) != 0L) {
+            return false;
+        }
+        occupied[i >>> 6] |= bit;
+        pageFree[(i >>> 6) / PAGE_WORDS]--;
+        free--;
+        return true;
+    }
+
+    public boolean occupy(Vector3f pos) {
+        return occupy(Math.round(pos.x), Math.round(pos.y), Math.round(pos.z));
+    }
+
+    /**
+     * Mark cell as free (if it's contained).
+     *
+     * @param x x-coord (even)
+     * @param y y-coord (even)
+     * @param z z-coord (even)
+     * @return was occupied before
+     */
+    public boolean release(int x, int y, int z) {
+        if (!contains(x, y, z)) {
+            return false;
+        }
+        int i = index(x, y, z);
+        long bit = 1L << i;
+        if ((occupied[i >>> 6] & bit) == 0L) {
+            return false;
+        }
+        occupied[i >>> 6] &= ~bit;
+        pageFree[(i >>> 6) / PAGE_WORDS]++;
+        free++;
+        return true;
+    }
+
+    /**
+     * Sample uniformly random free cell.
+     *
+     * @param random random generator
+     * @param dest destination position
+     * @return false if there's no free cell
+     */
+    public boolean sampleFree(Random random, Vector3f dest) {
+        if (free == 0) {
+            return false;
+        }
+        int r = random.nextInt(free);
+        int page = 0;
+        while (r >= pageFree[page]) {
+            r -= pageFree[page++];
+        }
+        int word = page * PAGE_WORDS;
+        while (true) {
+            int wordFree = 64 - Long.bitCount(occupied[word]);
+            if (word == occupied.length - 1) {
+                wordFree -= (occupied.length << 6) - cells; // bits past the last cell
+            }
+            if (r < wordFree) {
+                break;
+            }
+            r -= wordFree;
+            word++;
+        }
+        // r-th zero bit of the word
+        long zeros = ~occupied[word];
+        for (int k = 0; k < r; k++) {
+            zeros &= zeros - 1L;
+        }
+        int i = (word << 6) + Long.numberOfTrailingZeros(zeros);
+        int zi = i % side;
+        int yi = (i / side) % side;
+        int xi = i / (side * side);
+        dest.set(posMin + 2 * xi, posMin + 2 * yi, posMin + 2 * zi);
+        return true;
+    }
+
+    /**
+     * Random set bit of the mask (like random free face of face bits).
+     *
+     * @param random random generator
+     * @param mask bit mask (not zero)
+     * @return bit number
+     */
+    public static int randomBit(Random random, int mask) {
+        int r = random.nextInt(Integer.bitCount(mask));
+        for (int k = 0; k < r; k++) {
+            mask &= mask - 1;
+        }
+        return Integer.numberOfTrailingZeros(mask);
+    }
+
+    public int getFree() {
+        return free;
+    }
+
+    public int getCells() {
+        return cells;
+    }
+
+    public int getPosMin() {
+        return posMin;
+    }
+
+    public int getPosMax() {
+        return posMax;
+    }
+
+}
@@ -70,4 +70,30 @@ public class Vector3fUtils {
         String result = guidStr.substring(0, 8) + guidStr.substring(24, 36);
         return result;
     }
+
+    // spreads lower 21 bits of the value so there are two zero bits between each
+    private static long spreadBits(long v) {
+        v &= 0x1FFFFFL;
+        v = (v | (v << 32)) & 0x001F00000000FFFFL;
+        v = (v | (v << 16)) & 0x001F0000FF0000FFL;
+        v = (v | (v << 8)) & 0x100F00F00F00F00FL;
+        v = (v | (v << 4)) & 0x10C30C30C30C30C3L;
+        v = (v | (v << 2)) & 0x1249249249249249L;
+        return v;
+    }
+
+    /**
+     * Morton (Z-order) code of the even-aligned position. Positions close in
+     * space get close codes. Comparing codes is plain long comparison.
+     *
+     * @param vector (block) position
+     * @return 63-bit morton code
+     */
+    public static long float3ToMortonCode(Vector3f vector) {
+        final int bias = 1 << 20;
+        long x = (Math.round(vector.x) >> 1) + bias;
+        long y = (Math.round(vector.y) >> 1) + bias;
+        long z = (Math.round(vector.z) >> 1) + bias;
+        return (spreadBits(x) << 2) | (spreadBits(y) << 1) | spreadBits(z);
+    }
 }
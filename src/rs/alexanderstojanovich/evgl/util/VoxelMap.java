@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.util;
+
+import java.util.Arrays;
+import org.joml.Vector3f;
+
+/**
+ * Open addressing (linear probing) map of block positions. Key is even-aligned
+ * integer position (x, y, z) packed into one long. Value is texture id and 6
+ * neighbor bits packed into one int. None of the get/put/remove calls
+ * allocate.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class VoxelMap {
+
+    public static final int NONE = -1; // returned when key is not present
+
+    private static final long EMPTY = -1L; // packed keys are never negative
+    private static final int COORD_BITS = 21;
+    private static final long COORD_MASK = (1L << COORD_BITS) - 1L;
+    private static final int COORD_BIAS = 1 << (COORD_BITS - 1);
+    private static final int X_SHIFT = 2 * COORD_BITS;
+    private static final int Y_SHIFT = COORD_BITS;
+
+    private static final int NEIGHBOR_BITS = 63;
+    private static final int TEX_SHIFT = 8;
+    private static final int TEX_MASK = 0xFF;
+
+    // key deltas for [LEFT, RIGHT, BOTTOM, TOP, BACK, FRONT] (same order as in Block)
+    private static final long[] ADJACENT_DELTA = {
+        -(1L << X_SHIFT), (1L << X_SHIFT),
+        -(1L << Y_SHIFT), (1L << Y_SHIFT),
+        -1L, 1L
+    };
+
+    private static final float MAX_LOAD = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+    private int mask;
+    private int threshold;
+
+    public VoxelMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity * MAX_LOAD < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+        threshold = (int) (capacity * MAX_LOAD);
+    }
+
+    //--------------------------------------------------------------------------
+    /**
+     * Pack even-aligned integer position into the key.
+     *
+     * @param x x-coord (even)
+     * @param y y-coord (even)
+     * @param z z-coord (even)
+     * @return packed key
+     */
+    public static long key(int x, int y, int z) {
+        return (((long) ((x >> 1) + COORD_BIAS) & COORD_MASK) << X_SHIFT)
+                | (((long) ((y >> 1) + COORD_BIAS) & COORD_MASK) << Y_SHIFT)
+                | ((long) ((z >> 1) + COORD_BIAS) & COORD_MASK);
+    }
+
+    /**
+     * Pack block position into the key. Position is expected to be aligned
+     * already (like the block positions are).
+     *
+     * @param pos block position
+     * @return packed key
+     */
+    public static long key(Vector3f pos) {
+        return key(Math.round(pos.x), Math.round(pos.y), Math.round(pos.z));
+    }
+
+    /**
+     * Key of the adjacent position (the one at distance of one block).
+     *
+     * @param key packed key
+     * @param faceNum face number [LEFT, RIGHT, BOTTOM, TOP, BACK, FRONT]
+     * @return packed key of the neighbor
+     */
+    public static long adjacentKey(long key, int faceNum) {
+        return key + ADJACENT_DELTA[faceNum];
+    }
+
+    public static int unpackX(long key) {
+        return ((int) ((key >>> X_SHIFT) & COORD_MASK) - COORD_BIAS) << 1;
+    }
+
+    public static int unpackY(long key) {
+        return ((int) ((key >>> Y_SHIFT) & COORD_MASK) - COORD_BIAS) << 1;
+    }
+
+    public static int unpackZ(long key) {
+        return ((int) (key & COORD_MASK) - COORD_BIAS) << 1;
+    }
+
+    /**
+     * Pack texture id and neighbor bits into the value.
+     *
+     * @param texId texture id (index in the world texture atlas)
+     * @param neighborBits 6-bit neighbor bits
+     * @return packed value
+     */
+    public static int value(int texId, int neighborBits) {
+        return ((texId & TEX_MASK) << TEX_SHIFT) | (neighborBits & NEIGHBOR_BITS);
+    }
+
+    public static int texId(int value) {
+        return (value >>> TEX_SHIFT) & TEX_MASK;
+    }
+
+    public static int neighborBits(int value) {
+        return value & NEIGHBOR_BITS;
+    }
+
+    //--------------------------------------------------------------------------
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int indexOf(long key) {
+        int index = hash(key) & mask;
+        while (true) {
+            long candidate = keys[index];
+            if (candidate == key) {
+                return index;
+            } else if (candidate == EMPTY) {
+                return -1;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Get value of the key.
+     *
+     * @param key packed key
+     * @return packed value or NONE if not present
+     */
+    public int get(long key) {
+        int index = indexOf(key);
+        return (index == -1) ? NONE : values[index];
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) != -1;
+    }
+
+    public boolean containsKey(Vector3f pos) {
+        return indexOf(key(pos)) != -1;
+    }
+
+    /**
+     * Get neighbor bits of the key.
+     *
+     * @param key packed key
+     * @return 6-bit neighbor bits (zero if not present)
+     */
+    public int neighborMask(long key) {
+        int index = indexOf(key);
+        return (index == -1) ? 0 : (values[index] & NEIGHBOR_BITS);
+    }
+
+    /**
+     * Set or clear one neighbor bit of the key (if present).
+     *
+     * @param key packed key
+     * @param faceNum face number [LEFT, RIGHT, BOTTOM, TOP, BACK, FRONT]
+     * @param set set the bit (true) or clear it (false)
+     * @return is key present
+     */
+    public boolean setNeighborBit(long key, int faceNum, boolean set) {
+        int index = indexOf(key);
+        if (index == -1) {
+            return false;
+        }
+        if (set) {
+            values[index] |= 1 << faceNum;
+        } else {
+            values[index] &= ~(1 << faceNum);
+        }
+        return true;
+    }
+
+    /**
+     * Put value for the key.
+     *
+     * @param key packed key
+     * @param value packed value
+     * @return previous value or NONE
+     */
+    public int put(long key, int value) {
+        int index = hash(key) & mask;
+        while (true) {
+            long candidate = keys[index];
+            if (candidate == key) {
+                int prev = values[index];
+                values[index] = value;
+                return prev;
+            } else if (candidate == EMPTY) {
+                keys[index] = key;
+                values[index] = value;
+                if (++size > threshold) {
+                    rehash(keys.length << 1);
+                }
+                return NONE;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Remove the key. Uses backward shift so no tombstones are left behind.
+     *
+     * @param key packed key
+     * @return removed value or NONE
+     */
+    public int remove(long key) {
+        int index = indexOf(key);
+        if (index == -1) {
+            return NONE;
+        }
+        int removed = values[index];
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = hash(keys[next]) & mask;
+            // move entry back if its home slot is not in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        size--;
+        return removed;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY) {
+                int index = hash(key) & mask;
+                while (keys[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+}
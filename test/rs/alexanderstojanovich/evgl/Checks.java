@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl;
+
+import java.lang.reflect.InvocationTargetException;
+import rs.alexanderstojanovich.evgl.core.VoxelRayCheck;
+import rs.alexanderstojanovich.evgl.core.VoxelSweepCheck;
+import rs.alexanderstojanovich.evgl.level.CacheModuleCheck;
+import rs.alexanderstojanovich.evgl.models.GreedyMesherCheck;
+import rs.alexanderstojanovich.evgl.util.NoiseKernelCheck;
+import rs.alexanderstojanovich.evgl.util.OccupancyGridCheck;
+
+/**
+ * Runner of the headless checks (no GL context, no JUnit). Each check class
+ * has public static run() method which uses the assertion below and prints
+ * its measurements. All of them are run with "ant check" from the project
+ * directory (textures are read from src). Exits with error if any check
+ * failed.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class Checks {
+
+    private static final Class<?>[] CHECKS = {
+        VoxelSweepCheck.class,
+        VoxelRayCheck.class,
+        OccupancyGridCheck.class,
+        NoiseKernelCheck.class,
+        GreedyMesherCheck.class,
+        CacheModuleCheck.class
+    };
+
+    /**
+     * Shared assertion of the checks.
+     *
+     * @param condition condition which must hold
+     * @param message failure message
+     */
+    public static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void main(String[] args) throws ReflectiveOperationException {
+        int failed = 0;
+        for (Class<?> checkClass : CHECKS) {
+            try {
+                checkClass.getMethod("run").invoke(null);
+                System.out.println(checkClass.getSimpleName() + " OK");
+            } catch (InvocationTargetException ex) {
+                failed++;
+                System.out.println(checkClass.getSimpleName() + " FAILED");
+                ex.getCause().printStackTrace(System.out);
+            }
+        }
+        System.out.println((CHECKS.length - failed) + " of " + CHECKS.length + " checks passed");
+        if (failed != 0) {
+            System.exit(1);
+        }
+    }
+
+}
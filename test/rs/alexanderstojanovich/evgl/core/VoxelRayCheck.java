@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.core;
+
+import org.joml.Random;
+import org.joml.Vector3f;
+import rs.alexanderstojanovich.evgl.Checks;
+import rs.alexanderstojanovich.evgl.models.Block;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
+
+/**
+ * Ray picking: hit face, distance, hit & adjacent positions, and comparison
+ * of the grid walk with small step marching over random blocks.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class VoxelRayCheck {
+
+    private static final float TOLERANCE = 1E-3f;
+
+    private static boolean near(float a, float b) {
+        return Math.abs(a - b) <= TOLERANCE;
+    }
+
+    private static int cellOf(float x) {
+        return (int) Math.floor((x + 1.0f) * 0.5f);
+    }
+
+    // reference: march with small steps, returns distance of the first hit (or -1)
+    private static float march(VoxelMap map, Vector3f origin, Vector3f dir, float maxDistance, Vector3f hitPos) {
+        Vector3f d = new Vector3f(dir).normalize();
+        int ox = cellOf(origin.x), oy = cellOf(origin.y), oz = cellOf(origin.z);
+        final float dt = 1E-3f;
+        for (float t = 0.0f; t <= maxDistance; t += dt) {
+            int cx = cellOf(origin.x + d.x * t);
+            int cy = cellOf(origin.y + d.y * t);
+            int cz = cellOf(origin.z + d.z * t);
+            if ((cx != ox || cy != oy || cz != oz) && map.containsKey(VoxelMap.key(2 * cx, 2 * cy, 2 * cz))) {
+                hitPos.set(2 * cx, 2 * cy, 2 * cz);
+                return t;
+            }
+        }
+        return -1.0f;
+    }
+
+    public static void run() {
+        VoxelMap map = new VoxelMap(64);
+        map.put(VoxelMap.key(6, 0, 0), 0);
+        map.put(VoxelMap.key(0, 0, 0), 0);
+        map.put(VoxelMap.key(4, 4, 0), 0);
+
+        VoxelRay ray = new VoxelRay();
+        Vector3f temp = new Vector3f();
+
+        // along +x from the block at the origin (origin cell is skipped)
+        Checks.check(ray.cast(map, new Vector3f(0.0f, 0.0f, 0.0f), new Vector3f(1.0f, 0.0f, 0.0f), 20.0f), "+x ray must hit");
+        Checks.check(ray.isHit() && ray.getFace() == Block.LEFT, "+x ray must enter through LEFT face");
+        Checks.check(near(ray.getDistance(), 5.0f), "wrong +x distance " + ray.getDistance());
+        Checks.check(ray.getHitPos(temp).equals(6.0f, 0.0f, 0.0f), "wrong +x hit position " + temp);
+        Checks.check(ray.getAdjacentPos(temp).equals(4.0f, 0.0f, 0.0f), "wrong +x free position " + temp);
+        Checks.check(ray.getAdjacentPos(Block.TOP, temp).equals(6.0f, 2.0f, 0.0f), "wrong TOP adjacent position " + temp);
+        Checks.check(ray.getAdjacentPos(Block.BACK, temp).equals(6.0f, 0.0f, -2.0f), "wrong BACK adjacent position " + temp);
+
+        // max distance & unnormalized direction
+        Checks.check(!ray.cast(map, new Vector3f(0.0f, 0.0f, 0.0f), new Vector3f(10.0f, 0.0f, 0.0f), 4.0f), "short ray must miss");
+        Checks.check(!ray.isHit() && ray.getFace() == -1, "missed ray must have no face");
+        Checks.check(!ray.cast(map, new Vector3f(), new Vector3f(), 10.0f), "zero direction must miss");
+
+        // down onto the block at the origin
+        Checks.check(ray.cast(map, new Vector3f(0.0f, 10.0f, 0.0f), new Vector3f(0.0f, -1.0f, 0.0f), 20.0f), "-y ray must hit");
+        Checks.check(ray.getFace() == Block.TOP && near(ray.getDistance(), 9.0f), "-y ray must enter through TOP face");
+        Checks.check(ray.getAdjacentPos(temp).equals(0.0f, 2.0f, 0.0f), "wrong -y free position " + temp);
+
+        // towards -z and diagonal
+        Checks.check(ray.cast(map, new Vector3f(0.0f, 0.0f, 8.0f), new Vector3f(0.0f, 0.0f, -1.0f), 20.0f), "-z ray must hit");
+        Checks.check(ray.getFace() == Block.FRONT && near(ray.getDistance(), 7.0f), "-z ray must enter through FRONT face");
+        Checks.check(ray.cast(map, new Vector3f(0.5f, 0.2f, 0.0f), new Vector3f(1.0f, 1.0f, 0.0f), 20.0f), "diagonal ray must hit");
+        Checks.check(ray.getHitPos(temp).equals(4.0f, 4.0f, 0.0f), "wrong diagonal hit position " + temp);
+
+        // random blocks & rays against marching
+        Random random = new Random(0x5EEDL);
+        VoxelMap randomMap = new VoxelMap(1024);
+        for (int i = 0; i < 400; i++) {
+            int x = 2 * (random.nextInt(16) - 8);
+            int y = 2 * (random.nextInt(16) - 8);
+            int z = 2 * (random.nextInt(16) - 8);
+            randomMap.put(VoxelMap.key(x, y, z), 0);
+        }
+        Vector3f origin = new Vector3f();
+        Vector3f dir = new Vector3f();
+        Vector3f expected = new Vector3f();
+        int hits = 0;
+        for (int i = 0; i < 500; i++) {
+            origin.set(random.nextFloat() * 20.0f - 10.0f, random.nextFloat() * 20.0f - 10.0f, random.nextFloat() * 20.0f - 10.0f);
+            dir.set(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+            float t = march(randomMap, origin, dir, 30.0f, expected);
+            boolean hit = ray.cast(randomMap, origin, dir, 30.0f);
+            if (t < 0.0f) {
+                Checks.check(!hit || ray.getDistance() > 30.0f - 0.01f, "ray " + i + " must miss");
+                continue;
+            }
+            Checks.check(hit, "ray " + i + " must hit");
+            hits++;
+            Checks.check(Math.abs(ray.getDistance() - t) < 0.01f, "ray " + i + " distance " + ray.getDistance() + " vs " + t);
+            Checks.check(ray.getHitPos(temp).equals(expected), "ray " + i + " hit " + temp + " vs " + expected);
+            // free cell is the hit cell moved out through the hit face
+            ray.getAdjacentPos(ray.getFace(), expected);
+            Checks.check(ray.getAdjacentPos(temp).equals(expected), "ray " + i + " free cell must be in front of hit face");
+        }
+        Checks.check(hits > 100, "too few random hits " + hits);
+
+        System.out.println(hits + " random hits of the grid walk match marching");
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.core;
+
+import org.joml.Vector3f;
+import rs.alexanderstojanovich.evgl.Checks;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
+
+/**
+ * Swept box collision: time of impact & contact normal against walls and
+ * floor, sliding along the hit face and embedded start.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class VoxelSweepCheck {
+
+    private static final float TOLERANCE = 1E-3f;
+
+    private static boolean near(float a, float b) {
+        return Math.abs(a - b) <= TOLERANCE;
+    }
+
+    public static void run() {
+        VoxelMap map = new VoxelMap(64);
+        // wall at x = 4 (covers x [3, 5]) & floor at y = -4 (covers y [-5, -3])
+        for (int z = -8; z <= 16; z += 2) {
+            map.put(VoxelMap.key(4, 0, z), 0);
+            map.put(VoxelMap.key(4, 2, z), 0);
+        }
+        for (int x = -8; x <= 2; x += 2) {
+            for (int z = -8; z <= 8; z += 2) {
+                map.put(VoxelMap.key(x, -4, z), 0);
+            }
+        }
+
+        VoxelSweep sweep = new VoxelSweep();
+
+        // head-on hit of the wall
+        Checks.check(sweep.sweep(map, 0.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, 4.0f, 0.0f, 0.0f), "wall must be hit");
+        Checks.check(near(sweep.getToi(), 0.5f), "wrong wall toi " + sweep.getToi());
+        Checks.check(sweep.getNormalAxis() == 0 && sweep.getNormalSign() == -1, "wall normal must be -x");
+        Checks.check(sweep.getNormal(0) == -1 && sweep.getNormal(1) == 0 && sweep.getNormal(2) == 0, "wrong wall normal vector");
+        Checks.check(sweep.getHitBlockPos(new Vector3f()).x == 4.0f, "wrong hit block");
+
+        // falling onto the floor
+        Checks.check(sweep.sweep(map, 0.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, 0.0f, -10.0f, 0.0f), "floor must be hit");
+        Checks.check(near(sweep.getToi(), 0.2f), "wrong floor toi " + sweep.getToi());
+        Checks.check(sweep.getNormalAxis() == 1 && sweep.getNormalSign() == 1, "floor normal must be +y");
+
+        // moving along the wall & away from it
+        Checks.check(!sweep.sweep(map, 0.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, 0.0f, 0.0f, 6.0f), "parallel move must be free");
+        Checks.check(!sweep.sweep(map, 0.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, -3.0f, 0.0f, 0.0f), "move away must be free");
+        // touching box is not inside the wall
+        Checks.check(!sweep.sweep(map, 2.0f, 0.0f, 0.0f, 1.0f, 1.0f, 1.0f, 0.0f, 0.0f, 2.0f), "touching box must slide free");
+        Checks.check(!sweep.isHit() && sweep.getToi() == 1.0f, "free sweep must report no hit");
+
+        // embedded box can move out, not further in
+        Checks.check(sweep.sweep(map, 4.0f, 0.0f, 0.0f, 0.5f, 0.5f, 0.5f, 0.0f, 0.0f, 0.0f), "embedded box must hit");
+        Checks.check(sweep.getToi() == 0.0f && sweep.getNormalAxis() == -1, "embedded hit has no normal");
+        Checks.check(!sweep.sweep(map, 4.0f, 0.0f, 0.0f, 0.5f, 0.5f, 0.5f, -4.0f, 0.0f, 0.0f), "embedded box must move out");
+
+        // slide keeps motion along the wall
+        Vector3f boxPos = new Vector3f(0.0f, 0.0f, 0.0f);
+        Vector3f displacement = new Vector3f(4.0f, 0.0f, 4.0f);
+        Checks.check(sweep.slide(map, boxPos, 1.0f, 1.0f, 1.0f, displacement), "slide must collide");
+        Checks.check(near(displacement.x, 2.0f - VoxelSweep.SKIN), "slide must stop at the wall, x = " + displacement.x);
+        Checks.check(near(displacement.z, 4.0f), "slide must keep z motion, z = " + displacement.z);
+        Checks.check(displacement.y == 0.0f, "slide must not move y");
+
+        // slide into the corner of wall & floor
+        displacement.set(4.0f, -4.0f, 0.0f);
+        Checks.check(sweep.slide(map, boxPos, 1.0f, 1.0f, 1.0f, displacement), "corner slide must collide");
+        Checks.check(near(displacement.x, 2.0f - VoxelSweep.SKIN) && near(displacement.y, -2.0f + VoxelSweep.SKIN),
+                "corner slide must stop at both faces " + displacement);
+
+        // broken input is no motion
+        displacement.set(Float.NaN, 0.0f, 1.0f);
+        Checks.check(!sweep.slide(map, boxPos, 1.0f, 1.0f, 1.0f, displacement) && displacement.lengthSquared() == 0.0f,
+                "NaN displacement must be zeroed");
+
+        // no tunnelling through thin wall with large displacement
+        Checks.check(sweep.sweep(map, 0.0f, 0.0f, 0.0f, 0.25f, 0.25f, 0.25f, 100.0f, 0.0f, 0.0f), "fast box must hit");
+        Checks.check(near(sweep.getToi() * 100.0f, 2.75f), "wrong fast toi " + sweep.getToi());
+
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.level;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.joml.Random;
+import org.joml.Vector3f;
+import rs.alexanderstojanovich.evgl.Checks;
+import rs.alexanderstojanovich.evgl.models.Block;
+
+/**
+ * Chunk cache round trip: chunks written over the memory tier budget spill
+ * to the store file, every chunk reads back the same blocks (from memory tier
+ * or disk, also after the store file is compacted) and is no longer cached
+ * after reading. Calls are made on the main thread in place of the I/O
+ * thread. Store file is created in a temporary directory (deleted at the
+ * end).
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class CacheModuleCheck {
+
+    private static final int BLOCKS_PER_CHUNK = 1500;
+    private static final String[] TEXTURES = {"crate", "doom0", "stone"};
+
+    private static List<Block> randomChunk(Random random, boolean solid) {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < BLOCKS_PER_CHUNK; i++) {
+            Vector3f pos = new Vector3f(2 * (random.nextInt(64) - 32), 2 * (random.nextInt(64) - 32), 2 * (random.nextInt(64) - 32));
+            Vector3f color = new Vector3f(random.nextFloat(), random.nextFloat(), random.nextFloat());
+            String tex = solid ? TEXTURES[random.nextInt(TEXTURES.length)] : "water";
+            blocks.add(new Block(tex, pos, color, solid));
+        }
+        return blocks;
+    }
+
+    private static void checkSame(List<Block> expected, Block[] actual, int id) {
+        Checks.check(actual.length == expected.size(), "chunk " + id + " has " + actual.length + " blocks, not " + expected.size());
+        Block[] sorted = expected.toArray(new Block[expected.size()]);
+        Arrays.sort(sorted, Block.MORTON_COMP);
+        for (int i = 0; i < sorted.length; i++) {
+            Block a = sorted[i];
+            Block b = actual[i];
+            if (!a.getPos().equals(b.getPos()) || !a.getTexName().equals(b.getTexName())
+                    || a.isSolid() != b.isSolid() || a.getPrimaryColor().distance(b.getPrimaryColor()) >= 1E-2f) {
+                throw new AssertionError("chunk " + id + " block " + i + " differs: " + b + " vs " + a);
+            }
+        }
+    }
+
+    public static void run() throws IOException {
+        CacheModule.setCacheDir(Files.createTempDirectory("dsynergy-cache").toFile());
+        Random random = new Random(0x5EEDL);
+        // few distinct chunks, written under many ids (so memory tier is filled fast)
+        List<List<Block>> contents = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            contents.add(randomChunk(random, i % 4 != 3));
+        }
+
+        // write until memory tier spilled, then some more
+        int chunks = 0;
+        int extra = -1;
+        long maxTierBytes = 0L;
+        long t0 = System.nanoTime();
+        while (extra != 0) {
+            List<Block> blocks = contents.get(chunks % contents.size());
+            boolean solid = blocks.get(0).isSolid();
+            long before = CacheModule.getMemoryTierBytes();
+            CacheModule.writeChunk(CacheModule.cacheKey(chunks, solid), chunks, blocks, chunks % 2 == 0);
+            Checks.check(CacheModule.isCached(chunks, solid), "written chunk " + chunks + " must be cached");
+            long after = CacheModule.getMemoryTierBytes();
+            maxTierBytes = Math.max(maxTierBytes, after);
+            if (extra == -1 && after < before) {
+                extra = chunks / 2; // spilled
+            } else if (extra > 0) {
+                extra--;
+            }
+            chunks++;
+            Checks.check(chunks < 1_000_000, "memory tier never spilled");
+        }
+        long t1 = System.nanoTime();
+        Checks.check(maxTierBytes <= CacheModule.MEMORY_TIER_BUDGET, "memory tier over budget " + maxTierBytes);
+        File storeFile = CacheModule.getStoreFile();
+        final long spilledBytes = storeFile.length();
+        Checks.check(spilledBytes > 0L, "store file must be written");
+
+        // read back in write order (oldest are on the disk)
+        long readNanos = 0L;
+        for (int id = 0; id < chunks; id++) {
+            List<Block> blocks = contents.get(id % contents.size());
+            boolean solid = blocks.get(0).isSolid();
+            long start = System.nanoTime();
+            Block[] actual = CacheModule.readChunk(CacheModule.cacheKey(id, solid), solid);
+            readNanos += System.nanoTime() - start;
+            checkSame(blocks, actual, id);
+            Checks.check(!CacheModule.isCached(id, solid), "read chunk " + id + " must not be cached");
+        }
+        Checks.check(CacheModule.getHits() + CacheModule.getMisses() == chunks, "every read is hit or miss");
+        Checks.check(CacheModule.getMisses() > 0 && CacheModule.getHits() > 0, "both memory tier & disk must be read");
+        Checks.check(CacheModule.getMemoryTierBytes() == 0L, "memory tier must be empty");
+        Checks.check(storeFile.length() < spilledBytes, "store file must be compacted");
+
+        // missing entry reads as empty chunk
+        Checks.check(CacheModule.readChunk(CacheModule.cacheKey(chunks, true), true).length == 0, "missing chunk must be empty");
+
+        CacheModule.deleteCache();
+        Checks.check(!storeFile.exists(), "store file must be deleted");
+        System.out.printf("%d chunks (%d from disk, %d KB spilled): write %.3f ms, read %.3f ms (per chunk of %d blocks)%n",
+                chunks, CacheModule.getMisses(), spilledBytes >> 10, (t1 - t0) / 1E6 / chunks, readNanos / 1E6 / chunks, BLOCKS_PER_CHUNK);
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.models;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.joml.Random;
+import org.joml.Vector3f;
+import rs.alexanderstojanovich.evgl.Checks;
+import rs.alexanderstojanovich.evgl.util.VoxelMap;
+
+/**
+ * Greedy mesher quads must cover every visible face of the group exactly
+ * once (nothing more), face the outside and be split by texture & color.
+ * Reports quad reduction & build time on random terrain.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class GreedyMesherCheck {
+
+    private static final Vector3f WHITE = new Vector3f(1.0f, 1.0f, 1.0f);
+    private static final Vector3f RED = new Vector3f(1.0f, 0.0f, 0.0f);
+
+    // sets face bits of the blocks from their neighbors (any texture & color)
+    private static void setFaceBits(List<Block> blocks) {
+        Set<Long> keys = new HashSet<>();
+        for (Block block : blocks) {
+            keys.add(VoxelMap.key(block.getPos()));
+        }
+        for (Block block : blocks) {
+            long key = VoxelMap.key(block.getPos());
+            int bits = 0;
+            for (int j = Block.LEFT; j <= Block.FRONT; j++) {
+                if (!keys.contains(VoxelMap.adjacentKey(key, j))) {
+                    bits |= 1 << j;
+                }
+            }
+            block.setFaceBits(bits);
+        }
+    }
+
+    /**
+     * Verify the mesh against the visible faces of the blocks of its group.
+     *
+     * @return number of quads
+     */
+    private static int verify(GreedyMesh mesh, List<Block> blocks) {
+        FloatBuffer fb = mesh.getFb();
+        IntBuffer ib = mesh.getIntBuff();
+        Checks.check(mesh.getIndicesNum() % 6 == 0 && ib.limit() == mesh.getIndicesNum(), "wrong index count");
+        final int quads = mesh.getIndicesNum() / 6;
+        Checks.check(fb.limit() == quads * 4 * Vertex.SIZE, "wrong vertex count");
+
+        float[][] min = new float[quads][3];
+        float[][] max = new float[quads][3];
+        float[][] normal = new float[quads][3];
+        float area = 0.0f;
+        for (int q = 0; q < quads; q++) {
+            for (int a = 0; a < 3; a++) {
+                min[q][a] = Float.POSITIVE_INFINITY;
+                max[q][a] = Float.NEGATIVE_INFINITY;
+                normal[q][a] = fb.get(4 * q * Vertex.SIZE + 3 + a);
+            }
+            for (int c = 0; c < 4; c++) {
+                for (int a = 0; a < 3; a++) {
+                    float x = fb.get((4 * q + c) * Vertex.SIZE + a);
+                    min[q][a] = Math.min(min[q][a], x);
+                    max[q][a] = Math.max(max[q][a], x);
+                }
+            }
+            float quadArea = 1.0f;
+            for (int a = 0; a < 3; a++) {
+                if (normal[q][a] == 0.0f) {
+                    quadArea *= max[q][a] - min[q][a];
+                } else {
+                    Checks.check(min[q][a] == max[q][a], "quad " + q + " is not flat");
+                }
+            }
+            area += quadArea;
+            // both triangles face the outside (counter-clockwise)
+            for (int t = 0; t < 2; t++) {
+                Vector3f p0 = corner(fb, ib.get(6 * q + 3 * t));
+                Vector3f p1 = corner(fb, ib.get(6 * q + 3 * t + 1));
+                Vector3f p2 = corner(fb, ib.get(6 * q + 3 * t + 2));
+                Vector3f cross = p1.sub(p0).cross(p2.sub(p0));
+                Checks.check(cross.dot(normal[q][0], normal[q][1], normal[q][2]) > 0.0f, "quad " + q + " faces inside");
+            }
+        }
+
+        int faces = 0;
+        for (Block block : blocks) {
+            for (int j = Block.LEFT; j <= Block.FRONT; j++) {
+                if ((block.getFaceBits() & (1 << j)) == 0) {
+                    continue;
+                }
+                faces++;
+                float[] center = {block.getPos().x, block.getPos().y, block.getPos().z};
+                float[] n = new float[3];
+                n[j >> 1] = ((j & 1) == 0) ? -1.0f : 1.0f;
+                center[j >> 1] += n[j >> 1];
+                int covered = 0;
+                for (int q = 0; q < quads; q++) {
+                    if (normal[q][0] == n[0] && normal[q][1] == n[1] && normal[q][2] == n[2]
+                            && center[0] >= min[q][0] && center[0] <= max[q][0]
+                            && center[1] >= min[q][1] && center[1] <= max[q][1]
+                            && center[2] >= min[q][2] && center[2] <= max[q][2]) {
+                        covered++;
+                    }
+                }
+                Checks.check(covered == 1, "face " + j + " of " + block.getPos() + " covered " + covered + " times");
+            }
+        }
+        Checks.check(area == 4.0f * faces, "quads cover more than visible faces, area " + area + " vs " + 4 * faces);
+        return quads;
+    }
+
+    private static Vector3f corner(FloatBuffer fb, int index) {
+        int offset = index * Vertex.SIZE;
+        return new Vector3f(fb.get(offset), fb.get(offset + 1), fb.get(offset + 2));
+    }
+
+    // blocks of the same texture & color as the mesh
+    private static List<Block> group(List<Block> blocks, GreedyMesh mesh) {
+        List<Block> result = new ArrayList<>();
+        for (Block block : blocks) {
+            if (block.getTexName().equals(mesh.getTexName()) && block.getPrimaryColor().equals(mesh.getColor())) {
+                result.add(block);
+            }
+        }
+        return result;
+    }
+
+    public static void run() {
+        // solid box 4 x 3 x 2 is one quad per side
+        List<Block> box = new ArrayList<>();
+        for (int x = 0; x < 4; x++) {
+            for (int y = 0; y < 3; y++) {
+                for (int z = 0; z < 2; z++) {
+                    box.add(new Block("stone", new Vector3f(2 * x, 2 * y, 2 * z), new Vector3f(WHITE), true));
+                }
+            }
+        }
+        setFaceBits(box);
+        List<GreedyMesh> meshes = GreedyMesher.build(box);
+        Checks.check(meshes.size() == 1, "box must be one mesh");
+        Checks.check(verify(meshes.get(0), box) == 6, "box must be six quads");
+
+        // colors & textures are split into own meshes (faces between them are hidden)
+        for (Block block : box) {
+            if (block.getPos().x >= 4.0f) {
+                block.getPrimaryColor().set(RED);
+            }
+            if (block.getPos().z == 0.0f && block.getPos().y == 0.0f) {
+                block.setTexName("crate");
+            }
+        }
+        meshes = GreedyMesher.build(box);
+        Checks.check(meshes.size() == 4, "box must be split into four meshes, not " + meshes.size());
+        for (GreedyMesh mesh : meshes) {
+            verify(mesh, group(box, mesh));
+        }
+
+        // blocks without visible faces are not meshed
+        for (Block block : box) {
+            block.setFaceBits(0);
+        }
+        Checks.check(GreedyMesher.build(box).isEmpty(), "hidden blocks must give no mesh");
+
+        // random terrain (heightmap with holes & few colored blocks)
+        Random random = new Random(0x5EEDL);
+        List<Block> terrain = new ArrayList<>();
+        for (int x = 0; x < 48; x++) {
+            for (int z = 0; z < 48; z++) {
+                int height = 1 + random.nextInt(4) + (x + z) / 16;
+                for (int y = 0; y < height; y++) {
+                    if (random.nextFloat() < 0.03f) {
+                        continue;
+                    }
+                    Vector3f color = random.nextFloat() < 0.05f ? new Vector3f(RED) : new Vector3f(WHITE);
+                    String tex = random.nextFloat() < 0.5f ? "stone" : "crate";
+                    terrain.add(new Block(tex, new Vector3f(2 * x, 2 * y, 2 * z), color, true));
+                }
+            }
+        }
+        setFaceBits(terrain);
+        int faces = 0;
+        for (Block block : terrain) {
+            faces += Integer.bitCount(block.getFaceBits());
+        }
+        long t0 = System.nanoTime();
+        meshes = GreedyMesher.build(terrain);
+        long t1 = System.nanoTime();
+        int quads = 0;
+        for (GreedyMesh mesh : meshes) {
+            quads += verify(mesh, group(terrain, mesh));
+        }
+        Checks.check(quads < faces, "greedy meshing must merge faces");
+        System.out.printf("terrain: %d blocks, %d faces -> %d quads in %d meshes, built in %.3f ms%n",
+                terrain.size(), faces, quads, meshes.size(), (t1 - t0) / 1E6);
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.util;
+
+import rs.alexanderstojanovich.evgl.Checks;
+
+/**
+ * Batched noise kernels noise2Tile & noise3Grid must give bit identical
+ * values to noise2 & noise3 of each point (generated terrain must not
+ * change). Benchmark compares tile with per point calls.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class NoiseKernelCheck {
+
+    // same parameters as the random level generator
+    private static final int OCTAVES = 16;
+    private static final float PERSISTENCE = 0.5f;
+    private static final float SCALE = 0.007f;
+    private static final float LACUNARITY = 2.0f;
+
+    private static void checkTile(int width, int depth, float x0, float y0, float step, float low, float high) {
+        float[] tile = new float[width * depth];
+        MathUtils.noise2Tile(tile, width, depth, x0, y0, step, OCTAVES, PERSISTENCE, SCALE, low, high, LACUNARITY);
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < depth; j++) {
+                float expected = MathUtils.noise2(OCTAVES, x0 + i * step, y0 + j * step, PERSISTENCE, SCALE, low, high, LACUNARITY);
+                float actual = tile[i * depth + j];
+                Checks.check(Float.floatToIntBits(actual) == Float.floatToIntBits(expected),
+                        "noise2Tile differs at (" + i + ", " + j + "): " + actual + " vs " + expected);
+            }
+        }
+    }
+
+    private static void checkGrid(int width, int height, int depth, float x0, float y0, float z0, float step, float low, float high) {
+        float[] grid = new float[width * height * depth];
+        MathUtils.noise3Grid(grid, width, height, depth, x0, y0, z0, step, OCTAVES, PERSISTENCE, SCALE, low, high, LACUNARITY);
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                for (int k = 0; k < depth; k++) {
+                    float expected = MathUtils.noise3(OCTAVES, x0 + i * step, y0 + j * step, z0 + k * step, PERSISTENCE, SCALE, low, high, LACUNARITY);
+                    float actual = grid[(i * height + j) * depth + k];
+                    Checks.check(Float.floatToIntBits(actual) == Float.floatToIntBits(expected),
+                            "noise3Grid differs at (" + i + ", " + j + ", " + k + "): " + actual + " vs " + expected);
+                }
+            }
+        }
+    }
+
+    public static void run() {
+        checkTile(1, 64, -128.0f, -128.0f, 2.0f, -1.0f, 1.0f);
+        checkTile(16, 48, 126.0f, -96.0f, 2.0f, -1.0f, 1.0f);
+        checkTile(7, 9, 0.5f, -3.25f, 0.75f, -20.0f, 36.0f);
+        checkGrid(1, 40, 1, -10.0f, 2.0f, 34.0f, 2.0f, 5.0f, 60.0f);
+        checkGrid(5, 6, 7, 100.0f, -40.0f, -2.0f, 2.0f, -1.0f, 1.0f);
+
+        // benchmark: one tile (16 rows of 256) vs noise2 per point
+        final int width = 16;
+        final int depth = 256;
+        final int rounds = 20;
+        float[] tile = new float[width * depth];
+        float sum = 0.0f;
+        // warm up both paths (checks above ran only small sizes)
+        for (int r = 0; r < rounds; r++) {
+            MathUtils.noise2Tile(tile, width, depth, 0.0f, 0.0f, 2.0f, OCTAVES, PERSISTENCE, SCALE, -1.0f, 1.0f, LACUNARITY);
+            sum += MathUtils.noise2(OCTAVES, r, 0.0f, PERSISTENCE, SCALE, -1.0f, 1.0f, LACUNARITY);
+        }
+        long t0 = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            MathUtils.noise2Tile(tile, width, depth, -256.0f + r, -256.0f, 2.0f, OCTAVES, PERSISTENCE, SCALE, -1.0f, 1.0f, LACUNARITY);
+            sum += tile[r];
+        }
+        long t1 = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < width; i++) {
+                for (int j = 0; j < depth; j++) {
+                    tile[i * depth + j] = MathUtils.noise2(OCTAVES, -256.0f + r + i * 2.0f, -256.0f + j * 2.0f, PERSISTENCE, SCALE, -1.0f, 1.0f, LACUNARITY);
+                }
+            }
+            sum += tile[r];
+        }
+        long t2 = System.nanoTime();
+        System.out.printf("noise2Tile: %.3f ms, noise2 per point: %.3f ms (per %dx%d tile, checksum %.3f)%n",
+                (t1 - t0) / 1E6 / rounds, (t2 - t1) / 1E6 / rounds, width, depth, sum);
+    }
+
+}
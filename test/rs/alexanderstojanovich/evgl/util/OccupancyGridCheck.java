@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2022 Alexander Stojanovich <coas91@rocketmail.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rs.alexanderstojanovich.evgl.util;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.joml.Random;
+import org.joml.Vector3f;
+import rs.alexanderstojanovich.evgl.Checks;
+
+/**
+ * Occupancy grid sampling fills every free cell exactly once, samples are
+ * uniform over the free cells and random bit is uniform over the mask.
+ * Benchmark compares sampling with rejection sampling on a nearly full
+ * region.
+ *
+ * @author Alexander Stojanovich <coas91@rocketmail.com>
+ */
+public class OccupancyGridCheck {
+
+    private static long key(Vector3f pos) {
+        return VoxelMap.key(Math.round(pos.x), Math.round(pos.y), Math.round(pos.z));
+    }
+
+    public static void run() {
+        Random random = new Random(0x5EEDL);
+        Vector3f pos = new Vector3f();
+
+        // region side is not multiple of 64 cells (last word is partial)
+        OccupancyGrid grid = new OccupancyGrid(-38, 38);
+        final int cells = 39 * 39 * 39;
+        Checks.check(grid.getCells() == cells && grid.getFree() == cells, "wrong cell count");
+        Checks.check(grid.occupy(0, 0, 0) && !grid.occupy(0, 0, 0), "occupy must report previous state");
+        Checks.check(!grid.occupy(40, 0, 0) && !grid.contains(40, 0, 0), "cell outside must be ignored");
+        Checks.check(grid.occupy(-38, -38, -38) && grid.occupy(38, 38, 38), "corners must be contained");
+        Checks.check(grid.release(38, 38, 38) && !grid.release(38, 38, 38), "release must report previous state");
+        Checks.check(grid.getFree() == cells - 2, "wrong free count");
+
+        // every free cell is sampled once, then there's none
+        Set<Long> sampled = new HashSet<>();
+        while (grid.sampleFree(random, pos)) {
+            Checks.check(grid.contains(pos), "sample outside of region " + pos);
+            Checks.check(!grid.isOccupied(Math.round(pos.x), Math.round(pos.y), Math.round(pos.z)), "occupied cell sampled " + pos);
+            Checks.check(sampled.add(key(pos)), "cell sampled twice " + pos);
+            grid.occupy(pos);
+        }
+        Checks.check(sampled.size() == cells - 2 && grid.getFree() == 0, "not all free cells sampled " + sampled.size());
+        Checks.check(!sampled.contains(VoxelMap.key(0, 0, 0)), "occupied cell must not be sampled");
+
+        // uniform over the free cells (chi-square, 26 free cells)
+        OccupancyGrid small = new OccupancyGrid(0, 4);
+        small.occupy(2, 2, 2);
+        final int samples = 260000;
+        int[] counts = new int[27];
+        for (int i = 0; i < samples; i++) {
+            Checks.check(small.sampleFree(random, pos), "free cell must be found");
+            counts[(Math.round(pos.x) / 2 * 3 + Math.round(pos.y) / 2) * 3 + Math.round(pos.z) / 2]++;
+        }
+        Checks.check(counts[13] == 0, "occupied center sampled");
+        double expected = samples / 26.0;
+        double chi2 = 0.0;
+        for (int i = 0; i < counts.length; i++) {
+            if (i != 13) {
+                chi2 += (counts[i] - expected) * (counts[i] - expected) / expected;
+            }
+        }
+        // 25 degrees of freedom, p = 0.001 critical value is 52.6
+        Checks.check(chi2 < 52.6, "samples are not uniform, chi2 = " + chi2);
+
+        // random bit is one of the mask bits, uniform
+        int[] bitCounts = new int[6];
+        for (int i = 0; i < 60000; i++) {
+            bitCounts[OccupancyGrid.randomBit(random, 0b101101)]++;
+        }
+        Checks.check(bitCounts[1] == 0 && bitCounts[4] == 0, "bit outside of mask");
+        for (int bit : new int[]{0, 2, 3, 5}) {
+            Checks.check(Math.abs(bitCounts[bit] - 15000) < 600, "random bit not uniform " + bitCounts[bit]);
+        }
+
+        // benchmark: nearly full region, sampling vs rejection (random cell until free)
+        OccupancyGrid full = new OccupancyGrid(-38, 38);
+        int left = 0;
+        for (int x = -38; x <= 38; x += 2) {
+            for (int y = -38; y <= 38; y += 2) {
+                for (int z = -38; z <= 38; z += 2) {
+                    if (random.nextFloat() < 0.99f) {
+                        full.occupy(x, y, z);
+                    } else {
+                        left++;
+                    }
+                }
+            }
+        }
+        Checks.check(full.getFree() == left, "wrong free count of full region");
+        final int picks = 20000;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < picks; i++) {
+            full.sampleFree(random, pos);
+        }
+        long t1 = System.nanoTime();
+        for (int i = 0; i < picks; i++) {
+            int x, y, z;
+            do {
+                x = 2 * random.nextInt(39) - 38;
+                y = 2 * random.nextInt(39) - 38;
+                z = 2 * random.nextInt(39) - 38;
+            } while (full.isOccupied(x, y, z));
+        }
+        long t2 = System.nanoTime();
+        System.out.printf("sample free: %.3f us, rejection: %.3f us (per pick, %d of %d cells free)%n",
+                (t1 - t0) / 1E3 / picks, (t2 - t1) / 1E3 / picks, left, cells);
+    }
+
+}